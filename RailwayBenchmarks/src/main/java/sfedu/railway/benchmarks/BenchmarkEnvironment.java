@@ -0,0 +1,81 @@
+package sfedu.railway.benchmarks;
+
+import sfedu.railway.api.*;
+
+import java.nio.file.*;
+import java.sql.Connection;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Источник данных, заполненный синтетическим набором: CSV файлы во временном каталоге
+ * или локальный экземпляр PostgreSQL. Закрытие освобождает провайдер и удаляет данные.
+ */
+public class BenchmarkEnvironment implements AutoCloseable {
+
+    private final IDataProvider dataProvider;
+    private final Path directory;
+    private final EmbeddedDatabase database;
+
+    private BenchmarkEnvironment(IDataProvider dataProvider, Path directory, EmbeddedDatabase database) {
+        this.dataProvider = dataProvider;
+        this.directory = directory;
+        this.database = database;
+    }
+
+    /**
+     * Подготовка источника данных
+     * @param provider название источника ({@link DataProviderFactory#CSV} или {@link DataProviderFactory#POSTGRESQL})
+     * @param dataset сгенерированный набор данных
+     * @param cached провайдер создается фабрикой вместе с кешем маршрутов, как в приложении
+     * @return готовое окружение
+     * @throws Exception
+     */
+    public static BenchmarkEnvironment start(String provider, SyntheticDataset dataset, boolean cached) throws Exception {
+        if (DataProviderFactory.POSTGRESQL.equalsIgnoreCase(provider)) {
+            EmbeddedDatabase database = EmbeddedDatabase.start();
+            try {
+                IDataProvider dataProvider = create(DataProviderFactory.POSTGRESQL, cached);
+                try (Connection connection = database.getConnection()) {
+                    dataset.writePostgres(connection);
+                }
+                return new BenchmarkEnvironment(dataProvider, null, database);
+            } catch (Exception e) {
+                database.close();
+                throw e;
+            }
+        }
+        Path directory = Files.createTempDirectory("railway-bench");
+        dataset.writeCsv(directory);
+        IDataProvider dataProvider = create(DataProviderFactory.CSV, cached);
+        dataset.bookTickets(dataProvider);
+        return new BenchmarkEnvironment(dataProvider, directory, null);
+    }
+
+    private static IDataProvider create(String provider, boolean cached) throws Exception {
+        if (cached) {
+            return DataProviderFactory.create(provider);
+        }
+        IDataProvider dataProvider = DataProviderFactory.POSTGRESQL.equals(provider)
+                ? new DataProviderPSQL() : new DataProviderCsv();
+        dataProvider.initDataSource();
+        return dataProvider;
+    }
+
+    public IDataProvider getDataProvider() {
+        return dataProvider;
+    }
+
+    @Override
+    public void close() throws Exception {
+        dataProvider.close();
+        if (database != null) {
+            database.close();
+        }
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package sfedu.railway.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Запуск бенчмарков с сохранением результатов в JSON.
+ * Принимает обычные аргументы JMH; без явного формата результаты пишутся
+ * в jmh-result.json, без фильтра запускаются все бенчмарки провайдера данных.
+ * <pre>
+ * java -jar target/benchmarks.jar
+ * java -jar target/benchmarks.jar searchRoutes -p tickets=1000000 -rff before.json
+ * java -jar target/benchmarks.jar -p provider=PostgreSQL
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(RESULT_FILE);
+        }
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(DataProviderBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package sfedu.railway.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import sfedu.railway.api.*;
+import sfedu.railway.models.*;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Замеры основных операций провайдера данных на синтетическом наборе данных.
+ * Размер набора задается параметрами, например {@code -p trains=500 -p tickets=1000000};
+ * источник данных - параметром {@code -p provider=PostgreSQL}, для него запускается
+ * локальный экземпляр PostgreSQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Dlog4j.configuration=benchmark-log4j.properties"})
+public class DataProviderBenchmark {
+
+    // Вход проверяется по небольшому кругу пользователей, которые входят один раз при подготовке:
+    // полная проверка пароля намеренно дорогая, в рабочем режиме повторные входы обслуживает кеш проверок
+    private static final int LOGIN_USERS = 100;
+
+    @Param({DataProviderFactory.CSV})
+    public String provider;
+
+    @Param({"50"})
+    public int stations;
+
+    @Param({"100"})
+    public int trains;
+
+    @Param({"10"})
+    public int wagonsPerTrain;
+
+    @Param({"40"})
+    public int seatsPerWagon;
+
+    @Param({"30"})
+    public int days;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"50000"})
+    public int tickets;
+
+    private SyntheticDataset dataset;
+    private BenchmarkEnvironment environment;
+    private IDataProvider dataProvider;
+    private final AtomicLong ticketSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataset = new SyntheticDataset(stations, trains, wagonsPerTrain, seatsPerWagon, days, users, tickets, 42)
+                .generate();
+        environment = BenchmarkEnvironment.start(provider, dataset, false);
+        dataProvider = environment.getDataProvider();
+        for (int i = 0; i < Math.min(LOGIN_USERS, dataset.userCount()); i++) {
+            dataProvider.authenticateUser(SyntheticDataset.email(i), SyntheticDataset.PASSWORD);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        environment.close();
+    }
+
+    @Benchmark
+    public List<RouteInfo> searchRoutes() throws Exception {
+        Route route = randomRoute();
+        return dataProvider.searchRoutes(dataset.departureCity(route), dataset.arrivalCity(route), route.getDepartureTime());
+    }
+
+    @Benchmark
+    public List<Seat> getAvailableSeats() throws Exception {
+        return dataProvider.getAvailableSeats(randomRoute().getId());
+    }
+
+    @Benchmark
+    public RouteInfo getRouteDetails() throws Exception {
+        return dataProvider.getRouteDetails(randomRoute().getId());
+    }
+
+    @Benchmark
+    public User authenticateUser() throws Exception {
+        int index = ThreadLocalRandom.current().nextInt(Math.min(LOGIN_USERS, dataset.userCount()));
+        return dataProvider.authenticateUser(SyntheticDataset.email(index), SyntheticDataset.PASSWORD);
+    }
+
+    @Benchmark
+    public List<Ticket> getUserTickets() throws Exception {
+        return dataProvider.getUserTickets(dataset.user(ThreadLocalRandom.current().nextInt(dataset.userCount())).getId());
+    }
+
+    /**
+     * Бронирование свободного места. Места берутся из запаса набора данных по кругу
+     */
+    @Benchmark
+    public boolean createTicket() throws Exception {
+        return dataProvider.createTicket(dataset.nextFreeTicket(ticketSequence));
+    }
+
+    private Route randomRoute() {
+        return dataset.route(ThreadLocalRandom.current().nextInt(dataset.routeCount()));
+    }
+}
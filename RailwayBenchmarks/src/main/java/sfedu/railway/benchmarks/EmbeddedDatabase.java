@@ -0,0 +1,77 @@
+package sfedu.railway.benchmarks;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import sfedu.railway.api.DataProviderPSQL;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+
+/**
+ * Локальный экземпляр PostgreSQL во временном каталоге, не требующий установленного сервера.
+ * Создает базу с основными таблицами и направляет на нее {@link DataProviderPSQL}
+ * через системные свойства db.url, db.user и db.password.
+ */
+public class EmbeddedDatabase implements AutoCloseable {
+
+    private static final String DATABASE = "railway_tickets";
+    private static final String USER = "postgres";
+
+    private final EmbeddedPostgres postgres;
+
+    private EmbeddedDatabase(EmbeddedPostgres postgres) {
+        this.postgres = postgres;
+    }
+
+    /**
+     * Запуск сервера на свободном порту и создание схемы
+     * @return запущенная база
+     * @throws IOException если сервер не удалось запустить
+     * @throws SQLException если схему не удалось создать
+     */
+    public static EmbeddedDatabase start() throws IOException, SQLException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.builder().start();
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE " + DATABASE);
+        }
+        EmbeddedDatabase database = new EmbeddedDatabase(postgres);
+        try (Connection connection = database.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : readSchema().split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+        System.setProperty("db.url", postgres.getJdbcUrl(USER, DATABASE));
+        System.setProperty("db.user", USER);
+        System.setProperty("db.password", USER);
+        return database;
+    }
+
+    /**
+     * Отдельное от пула провайдера соединение с базой
+     * @return соединение
+     * @throws SQLException
+     */
+    public Connection getConnection() throws SQLException {
+        return postgres.getDatabase(USER, DATABASE).getConnection();
+    }
+
+    private static String readSchema() throws IOException {
+        try (InputStream input = EmbeddedDatabase.class.getClassLoader().getResourceAsStream("schema.sql")) {
+            if (input == null) {
+                throw new FileNotFoundException("schema.sql");
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8)
+                    .replaceAll("(?m)^--.*$", "");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        DataProviderPSQL.closeDataSource();
+        postgres.close();
+    }
+}
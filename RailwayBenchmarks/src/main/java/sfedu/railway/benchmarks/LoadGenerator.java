@@ -0,0 +1,329 @@
+package sfedu.railway.benchmarks;
+
+import org.HdrHistogram.*;
+import sfedu.railway.api.*;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Status;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Генератор нагрузки, воспроизводящий пиковый спрос на билеты. Каждый виртуальный пользователь
+ * в своем потоке повторяет сценарий: вход, поиск маршрута, выбор места, бронирование, затем
+ * оплата или (с заданной вероятностью) отмена, с паузами на размышление между шагами.
+ * Маршруты выбираются по закону Ципфа, поэтому нагрузка сосредоточена на популярных рейсах.
+ * Модель замкнутая: задержка операции измеряется от начала до конца вызова провайдера.
+ * <p>
+ * Отчет содержит пропускную способность, процентили задержек по операциям, долю ошибок,
+ * количество конфликтов бронирования и перепродаж: перепродажей считается успешное
+ * бронирование места, на которое уже есть действующий билет.
+ * <pre>
+ * java -cp target/benchmarks.jar sfedu.railway.benchmarks.LoadGenerator --users 500 --duration 120
+ *     --think 20 --zipf 1.2 --cancel 0.15 --provider PostgreSQL
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final String PAYMENT_METHOD = "Банковская карта";
+
+    /**
+     * Операции сценария
+     */
+    enum Operation {
+        LOGIN, SEARCH, SEATS, BOOK, PAY, CANCEL
+    }
+
+    private final IDataProvider dataProvider;
+    private final SyntheticDataset dataset;
+    private final Settings settings;
+    private final ZipfSampler routes;
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final LongAdder journeys = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder soldOut = new LongAdder();
+    private final LongAdder oversells = new LongAdder();
+    // Количество действующих билетов, выданных генератору, по паре маршрут-место
+    private final ConcurrentHashMap<String, AtomicInteger> activeTickets = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataProvider провайдер данных, заполненный набором
+     * @param dataset набор данных
+     * @param settings параметры нагрузки
+     */
+    public LoadGenerator(IDataProvider dataProvider, SyntheticDataset dataset, Settings settings) {
+        this.dataProvider = dataProvider;
+        this.dataset = dataset;
+        this.settings = settings;
+        this.routes = new ZipfSampler(dataset.routeCount(), settings.zipf, settings.seed);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Настройка логирования читается при создании первого логгера, поэтому задается до работы с провайдером
+        if (System.getProperty("log4j.configuration") == null) {
+            System.setProperty("log4j.configuration", "benchmark-log4j.properties");
+        }
+        Settings settings = Settings.parse(args);
+        System.out.println("Generating dataset: " + settings.trains + " trains, " + settings.days + " days, "
+                + settings.accounts + " accounts, " + settings.tickets + " sold tickets");
+        SyntheticDataset dataset = new SyntheticDataset(settings.stations, settings.trains, settings.wagons,
+                settings.seats, settings.days, settings.accounts, settings.tickets, settings.seed).generate();
+        try (BenchmarkEnvironment environment = BenchmarkEnvironment.start(settings.provider, dataset, true)) {
+            LoadGenerator generator = new LoadGenerator(environment.getDataProvider(), dataset, settings);
+            long elapsedNanos = generator.run();
+            generator.report(System.out, elapsedNanos);
+        }
+        // Пулы провайдеров и сервисные потоки не должны задерживать завершение
+        System.exit(0);
+    }
+
+    /**
+     * Прогон нагрузки заданной длительности
+     * @return фактическая длительность в наносекундах
+     * @throws InterruptedException
+     */
+    public long run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(settings.users);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+        for (int i = 0; i < settings.users; i++) {
+            int number = i;
+            pool.execute(() -> simulateUser(number, deadline));
+        }
+        pool.shutdown();
+        if (!pool.awaitTermination(settings.durationSeconds + 60, TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Сценарий одного виртуального пользователя до окончания прогона
+     */
+    private void simulateUser(int number, long deadline) {
+        Random random = new Random(settings.seed + number);
+        String email = SyntheticDataset.email(number % dataset.userCount());
+        while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+            User user = call(Operation.LOGIN, () -> dataProvider.authenticateUser(email, SyntheticDataset.PASSWORD));
+            if (user == null || user.getId() == null) {
+                think(random);
+                continue;
+            }
+            think(random);
+
+            Route route = dataset.route(routes.next(random));
+            call(Operation.SEARCH, () -> dataProvider.searchRoutes(
+                    dataset.departureCity(route), dataset.arrivalCity(route), route.getDepartureTime()));
+            think(random);
+
+            List<Seat> seats = call(Operation.SEATS, () -> dataProvider.getAvailableSeats(route.getId()));
+            if (seats == null) {
+                continue;
+            }
+            if (seats.isEmpty()) {
+                soldOut.increment();
+                think(random);
+                continue;
+            }
+            think(random);
+
+            Seat seat = seats.get(random.nextInt(seats.size()));
+            Ticket ticket = new Ticket(user.getId(), route.getId(), seat.getId(),
+                    route.getBasePrice() * seat.getPriceMultiplier());
+            Boolean booked = call(Operation.BOOK, () -> dataProvider.createTicket(ticket));
+            if (booked == null) {
+                continue;
+            }
+            if (!booked) {
+                // Место заняли между просмотром и бронированием: ожидаемый исход при ажиотаже
+                conflicts.increment();
+                continue;
+            }
+            AtomicInteger active = activeTickets.computeIfAbsent(route.getId() + ":" + seat.getId(), key -> new AtomicInteger());
+            if (active.incrementAndGet() > 1) {
+                oversells.increment();
+            }
+            think(random);
+
+            if (random.nextDouble() < settings.cancelRate) {
+                // Счетчик уменьшается до отмены: после нее место сразу может купить другой пользователь
+                active.decrementAndGet();
+                Boolean canceled = call(Operation.CANCEL, () -> dataProvider.updateTicketStatus(ticket.getId(), Status.CANCELED));
+                if (!Boolean.TRUE.equals(canceled)) {
+                    active.incrementAndGet();
+                    if (canceled != null) {
+                        errors.get(Operation.CANCEL).increment();
+                    }
+                }
+            } else {
+                Boolean paid = call(Operation.PAY, () -> dataProvider.createTransaction(
+                        new Transaction(ticket.getId(), ticket.getPrice(), PAYMENT_METHOD)));
+                if (Boolean.FALSE.equals(paid)) {
+                    errors.get(Operation.PAY).increment();
+                }
+            }
+            journeys.increment();
+            think(random);
+        }
+    }
+
+    /**
+     * Вызов операции с замером задержки
+     * @return результат или null, если операция завершилась исключением
+     */
+    private <T> T call(Operation operation, Callable<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.call();
+        } catch (Exception e) {
+            errors.get(operation).increment();
+            return null;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            latencies.get(operation).recordValue(Math.min(micros, HIGHEST_LATENCY_MICROS));
+        }
+    }
+
+    /**
+     * Пауза на размышление: равномерно от 0 до удвоенного среднего значения
+     */
+    private void think(Random random) {
+        if (settings.thinkMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep((long) (random.nextDouble() * 2 * settings.thinkMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Вывод отчета
+     * @param out поток вывода
+     * @param elapsedNanos длительность прогона
+     */
+    public void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%nLoad: %d users, %.1f s, provider %s, think %d ms, zipf %.2f, cancel rate %.2f%n",
+                settings.users, seconds, settings.provider, settings.thinkMillis, settings.zipf, settings.cancelRate);
+        out.printf("%-8s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long totalCount = 0;
+        long totalErrors = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            long count = histogram.getTotalCount();
+            long failed = errors.get(operation).sum();
+            totalCount += count;
+            totalErrors += failed;
+            out.printf("%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", operation, count, failed, count / seconds,
+                    millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0);
+        }
+        out.printf("Journeys: %d (%.1f/s), booking conflicts: %d, sold out: %d, oversells: %d, error rate: %.3f%%%n",
+                journeys.sum(), journeys.sum() / seconds, conflicts.sum(), soldOut.sum(), oversells.sum(),
+                totalCount == 0 ? 0.0 : 100.0 * totalErrors / totalCount);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Параметры нагрузки и набора данных из аргументов вида {@code --имя значение}
+     */
+    public static class Settings {
+        String provider = DataProviderFactory.CSV;
+        int users = 200;
+        int durationSeconds = 60;
+        long thinkMillis = 50;
+        double zipf = 1.0;
+        double cancelRate = 0.1;
+        int stations = 50;
+        int trains = 100;
+        int wagons = 10;
+        int seats = 40;
+        int days = 30;
+        int accounts = 10_000;
+        int tickets = 50_000;
+        long seed = 42;
+
+        /**
+         * @param args аргументы командной строки
+         * @return параметры
+         * @throws IllegalArgumentException если аргумент или источник данных неизвестен либо аргумент не содержит значения
+         */
+        public static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Expected --name value, got " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i].substring(2)) {
+                    case "provider":
+                        if (value.equalsIgnoreCase(DataProviderFactory.CSV)) {
+                            settings.provider = DataProviderFactory.CSV;
+                        } else if (value.equalsIgnoreCase(DataProviderFactory.POSTGRESQL)) {
+                            settings.provider = DataProviderFactory.POSTGRESQL;
+                        } else {
+                            throw new IllegalArgumentException("Unknown provider " + value + ", expected "
+                                    + DataProviderFactory.CSV + " or " + DataProviderFactory.POSTGRESQL);
+                        }
+                        break;
+                    case "users":
+                        settings.users = Integer.parseInt(value);
+                        break;
+                    case "duration":
+                        settings.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "think":
+                        settings.thinkMillis = Long.parseLong(value);
+                        break;
+                    case "zipf":
+                        settings.zipf = Double.parseDouble(value);
+                        break;
+                    case "cancel":
+                        settings.cancelRate = Double.parseDouble(value);
+                        break;
+                    case "stations":
+                        settings.stations = Integer.parseInt(value);
+                        break;
+                    case "trains":
+                        settings.trains = Integer.parseInt(value);
+                        break;
+                    case "wagons":
+                        settings.wagons = Integer.parseInt(value);
+                        break;
+                    case "seats":
+                        settings.seats = Integer.parseInt(value);
+                        break;
+                    case "days":
+                        settings.days = Integer.parseInt(value);
+                        break;
+                    case "accounts":
+                        settings.accounts = Integer.parseInt(value);
+                        break;
+                    case "tickets":
+                        settings.tickets = Integer.parseInt(value);
+                        break;
+                    case "seed":
+                        settings.seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package sfedu.railway.benchmarks;
+
+import sfedu.railway.api.*;
+import sfedu.railway.auth.Authenticator;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Constants;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Синтетический набор данных заданного размера: станции в нескольких городах, поезда
+ * с вагонами и местами, ежедневные маршруты каждого поезда, пользователи и проданные билеты.
+ * Состав и связи записей определяются зерном генератора (случайны только идентификаторы),
+ * поэтому прогоны на одном размере сравнимы.
+ * Каждый поезд ходит один раз в день между случайной парой станций из разных городов;
+ * билеты занимают места маршрутов по порядку, оставшиеся места служат запасом для бронирования.
+ */
+public class SyntheticDataset {
+
+    public static final String PASSWORD = "password";
+
+    private static final String[] CITIES = {
+            "Москва", "Санкт-Петербург", "Ростов-на-Дону", "Краснодар", "Казань", "Нижний Новгород",
+            "Екатеринбург", "Новосибирск", "Самара", "Воронеж", "Волгоград", "Сочи"
+    };
+    private static final String[] WAGON_TYPES = {"ECONOMY", "BUSINESS", "FIRST_CLASS"};
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final int stationCount;
+    private final int trainCount;
+    private final int wagonsPerTrain;
+    private final int seatsPerWagon;
+    private final int days;
+    private final int userCount;
+    private final int ticketCount;
+    private final Random random;
+
+    private final List<Station> stations = new ArrayList<>();
+    private final List<Train> trains = new ArrayList<>();
+    private final List<Wagon> wagons = new ArrayList<>();
+    private final List<Seat> seats = new ArrayList<>();
+    private final List<Route> routes = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+    private final List<Ticket> tickets = new ArrayList<>();
+    private final Map<String, Station> stationsById = new HashMap<>();
+    // Места поезда по порядку вагонов и номеров, по индексу поезда
+    private final List<List<Seat>> trainSeats = new ArrayList<>();
+    private final Map<String, Integer> trainIndex = new HashMap<>();
+    // Количество проданных мест каждого маршрута: места с этого номера свободны
+    private int[] bookedPerRoute;
+
+    /**
+     * @param stationCount количество станций
+     * @param trainCount количество поездов
+     * @param wagonsPerTrain количество вагонов в поезде
+     * @param seatsPerWagon количество мест в вагоне
+     * @param days количество дней расписания
+     * @param userCount количество пользователей
+     * @param ticketCount количество проданных билетов
+     * @param seed зерно генератора
+     */
+    public SyntheticDataset(int stationCount, int trainCount, int wagonsPerTrain, int seatsPerWagon,
+                            int days, int userCount, int ticketCount, long seed) {
+        this.stationCount = Math.max(2, stationCount);
+        this.trainCount = trainCount;
+        this.wagonsPerTrain = wagonsPerTrain;
+        this.seatsPerWagon = seatsPerWagon;
+        this.days = days;
+        this.userCount = userCount;
+        this.ticketCount = ticketCount;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Генерация всех записей в памяти
+     * @return этот набор данных
+     */
+    public SyntheticDataset generate() {
+        for (int i = 0; i < stationCount; i++) {
+            Station station = new Station("Вокзал " + (i + 1), CITIES[i % CITIES.length], "ул. Вокзальная, " + (i + 1));
+            stations.add(station);
+            stationsById.put(station.getId(), station);
+        }
+        for (int t = 0; t < trainCount; t++) {
+            Train train = new Train(String.format("%03dА", t + 1), t % 2 == 0 ? "Скорый" : "Пассажирский", wagonsPerTrain);
+            trains.add(train);
+            trainIndex.put(train.getId(), t);
+            List<Seat> ownSeats = new ArrayList<>();
+            for (int w = 0; w < wagonsPerTrain; w++) {
+                String type = WAGON_TYPES[w % WAGON_TYPES.length];
+                Wagon wagon = new Wagon(train.getId(), String.valueOf(w + 1), type, seatsPerWagon);
+                wagons.add(wagon);
+                for (int s = 0; s < seatsPerWagon; s++) {
+                    Seat seat = new Seat(wagon.getId(), String.valueOf(s + 1), 1.0 + (w % WAGON_TYPES.length) * 0.5);
+                    seats.add(seat);
+                    ownSeats.add(seat);
+                }
+            }
+            trainSeats.add(ownSeats);
+        }
+        long firstDay = startOfDay(System.currentTimeMillis() + DAY_MILLIS);
+        for (Train train : trains) {
+            Station from = stations.get(random.nextInt(stations.size()));
+            Station to;
+            do {
+                to = stations.get(random.nextInt(stations.size()));
+            } while (to.getCity().equals(from.getCity()));
+            long departureOffset = (5 + random.nextInt(18)) * 60 * 60 * 1000L;
+            long duration = (2 + random.nextInt(20)) * 60 * 60 * 1000L;
+            double price = 500 + random.nextInt(50) * 100;
+            for (int d = 0; d < days; d++) {
+                long departure = firstDay + d * DAY_MILLIS + departureOffset;
+                routes.add(new Route(from.getId(), to.getId(), train.getId(),
+                        new Date(departure), new Date(departure + duration), price));
+            }
+        }
+        for (int u = 0; u < userCount; u++) {
+            users.add(new User("Пользователь" + u, "Тест", String.format("+7900%07d", u), email(u), PASSWORD));
+        }
+        bookedPerRoute = new int[routes.size()];
+        int seatsPerTrain = wagonsPerTrain * seatsPerWagon;
+        for (int i = 0; i < ticketCount && !routes.isEmpty(); i++) {
+            int routeIndex = random.nextInt(routes.size());
+            if (bookedPerRoute[routeIndex] >= seatsPerTrain) {
+                continue;
+            }
+            Route route = routes.get(routeIndex);
+            Seat seat = trainSeats.get(trainIndex.get(route.getTrainId())).get(bookedPerRoute[routeIndex]++);
+            User user = users.get(random.nextInt(users.size()));
+            tickets.add(new Ticket(user.getId(), route.getId(), seat.getId(), route.getBasePrice() * seat.getPriceMultiplier()));
+        }
+        return this;
+    }
+
+    /**
+     * Запись набора в CSV файлы каталога. Пути файлов в {@link Constants} переключаются
+     * на этот каталог, поэтому провайдер нужно создавать после вызова.
+     * Билеты записываются отдельно через провайдер, чтобы места были заняты в его хранилище
+     * @param directory каталог данных
+     * @throws Exception
+     */
+    public void writeCsv(Path directory) throws Exception {
+        Constants.csvUserFilePath = directory.resolve("users.csv").toString();
+        Constants.csvStationFilePath = directory.resolve("stations.csv").toString();
+        Constants.csvTrainFilePath = directory.resolve("trains.csv").toString();
+        Constants.csvRouteFilePath = directory.resolve("routes.csv").toString();
+        Constants.csvWagonFilePath = directory.resolve("wagons.csv").toString();
+        Constants.csvSeatFilePath = directory.resolve("seats.csv").toString();
+        Constants.csvTicketFilePath = directory.resolve("tickets.csv").toString();
+        Constants.csvTransactionFilePath = directory.resolve("transactions.csv").toString();
+        Constants.csvSeatStateFilePath = directory.resolve("route_seats.dat").toString();
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        List<String[]> rows = new ArrayList<>();
+        for (Station station : stations) {
+            rows.add(new String[]{station.getId(), station.getName(), station.getCity(), station.getAddress()});
+        }
+        DataProviderCsv.writeToCsv(rows, Constants.csvStationFilePath);
+        rows = new ArrayList<>();
+        for (Train train : trains) {
+            rows.add(new String[]{train.getId(), train.getNumber(), train.getType(), String.valueOf(train.getTotalWagons())});
+        }
+        DataProviderCsv.writeToCsv(rows, Constants.csvTrainFilePath);
+        rows = new ArrayList<>();
+        for (Wagon wagon : wagons) {
+            rows.add(new String[]{wagon.getId(), wagon.getTrainId(), wagon.getNumber(), wagon.getType(),
+                    String.valueOf(wagon.getTotalSeats())});
+        }
+        DataProviderCsv.writeToCsv(rows, Constants.csvWagonFilePath);
+        rows = new ArrayList<>();
+        for (Seat seat : seats) {
+            rows.add(new String[]{seat.getId(), seat.getWagonId(), seat.getNumber(), "true",
+                    String.valueOf(seat.getPriceMultiplier())});
+        }
+        DataProviderCsv.writeToCsv(rows, Constants.csvSeatFilePath);
+        rows = new ArrayList<>();
+        for (Route route : routes) {
+            rows.add(new String[]{route.getId(), route.getDepartureStationId(), route.getArrivalStationId(),
+                    route.getTrainId(), format.format(route.getDepartureTime()), format.format(route.getArrivalTime()),
+                    String.valueOf(route.getBasePrice())});
+        }
+        DataProviderCsv.writeToCsv(rows, Constants.csvRouteFilePath);
+        // Хеш пароля считается один раз: у всех пользователей одинаковый пароль
+        String password = new Authenticator().toStored(PASSWORD, null);
+        rows = new ArrayList<>();
+        for (User user : users) {
+            rows.add(new String[]{user.getId(), user.getSurname(), user.getName(), user.getPhoneNumber(),
+                    user.getEmail(), password});
+        }
+        DataProviderCsv.writeToCsv(rows, Constants.csvUserFilePath);
+    }
+
+    /**
+     * Запись набора в базу PostgreSQL пакетными вставками. Служебные таблицы провайдера
+     * должны быть уже созданы ({@link IDataProvider#initDataSource()})
+     * @param connection соединение с базой данных
+     * @throws SQLException
+     */
+    public void writePostgres(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        batch(connection, Constants.insertStation, stations, (ps, station) -> {
+            ps.setString(1, station.getId());
+            ps.setString(2, station.getName());
+            ps.setString(3, station.getCity());
+            ps.setString(4, station.getAddress());
+        });
+        batch(connection, Constants.insertTrain, trains, (ps, train) -> {
+            ps.setString(1, train.getId());
+            ps.setString(2, train.getNumber());
+            ps.setString(3, train.getType());
+            ps.setInt(4, train.getTotalWagons());
+        });
+        batch(connection, Constants.insertWagon, wagons, (ps, wagon) -> {
+            ps.setString(1, wagon.getId());
+            ps.setString(2, wagon.getTrainId());
+            ps.setString(3, wagon.getNumber());
+            ps.setString(4, wagon.getType());
+            ps.setInt(5, wagon.getTotalSeats());
+        });
+        batch(connection, Constants.insertSeat, seats, (ps, seat) -> {
+            ps.setString(1, seat.getId());
+            ps.setString(2, seat.getWagonId());
+            ps.setString(3, seat.getNumber());
+            ps.setBoolean(4, true);
+            ps.setDouble(5, seat.getPriceMultiplier());
+        });
+        batch(connection, Constants.insertRoute, routes, (ps, route) -> {
+            ps.setString(1, route.getId());
+            ps.setString(2, route.getDepartureStationId());
+            ps.setString(3, route.getArrivalStationId());
+            ps.setString(4, route.getTrainId());
+            ps.setTimestamp(5, new Timestamp(route.getDepartureTime().getTime()));
+            ps.setTimestamp(6, new Timestamp(route.getArrivalTime().getTime()));
+            ps.setDouble(7, route.getBasePrice());
+        });
+        String password = new Authenticator().toStored(PASSWORD, null);
+        batch(connection, Constants.insertUser, users, (ps, user) -> {
+            ps.setString(1, user.getId());
+            ps.setString(2, user.getSurname());
+            ps.setString(3, user.getName());
+            ps.setString(4, user.getPhoneNumber());
+            ps.setString(5, user.getEmail());
+            ps.setString(6, password);
+        });
+        batch(connection, Constants.insertTicket, tickets, (ps, ticket) -> {
+            ps.setString(1, ticket.getId());
+            ps.setString(2, ticket.getUserId());
+            ps.setString(3, ticket.getRouteId());
+            ps.setString(4, ticket.getSeatId());
+            ps.setTimestamp(5, new Timestamp(ticket.getBookingDate().getTime()));
+            ps.setString(6, ticket.getStatus().toString());
+            ps.setDouble(7, ticket.getPrice());
+        });
+        batch(connection, Constants.claimRouteSeat, tickets, (ps, ticket) -> {
+            ps.setString(1, ticket.getRouteId());
+            ps.setString(2, ticket.getSeatId());
+        });
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    /**
+     * Продажа билетов набора через провайдер
+     * @param dataProvider провайдер данных
+     * @throws Exception если место уже занято
+     */
+    public void bookTickets(IDataProvider dataProvider) throws Exception {
+        for (Ticket ticket : tickets) {
+            if (!dataProvider.createTicket(ticket)) {
+                throw new IllegalStateException("Cannot book seat " + ticket.getSeatId() + " on route " + ticket.getRouteId());
+            }
+        }
+    }
+
+    /**
+     * Новый билет на еще не проданное место. Места выдаются по кругу по всем маршрутам;
+     * когда свободные места закончатся, билеты начнут повторяться и бронирование будет отклоняться
+     * @param sequence счетчик выданных билетов
+     * @return билет для бронирования
+     */
+    public Ticket nextFreeTicket(AtomicLong sequence) {
+        long number = sequence.getAndIncrement();
+        int routeIndex = (int) (number % routes.size());
+        Route route = routes.get(routeIndex);
+        List<Seat> ownSeats = trainSeats.get(trainIndex.get(route.getTrainId()));
+        int seatIndex = (int) ((bookedPerRoute[routeIndex] + number / routes.size()) % ownSeats.size());
+        Seat seat = ownSeats.get(seatIndex);
+        User user = users.get((int) (number % users.size()));
+        return new Ticket(user.getId(), route.getId(), seat.getId(), route.getBasePrice() * seat.getPriceMultiplier());
+    }
+
+    public Route route(int index) {
+        return routes.get(index);
+    }
+
+    public int routeCount() {
+        return routes.size();
+    }
+
+    public String departureCity(Route route) {
+        return stationsById.get(route.getDepartureStationId()).getCity();
+    }
+
+    public String arrivalCity(Route route) {
+        return stationsById.get(route.getArrivalStationId()).getCity();
+    }
+
+    public User user(int index) {
+        return users.get(index);
+    }
+
+    public int userCount() {
+        return users.size();
+    }
+
+    public int ticketCount() {
+        return tickets.size();
+    }
+
+    public static String email(int index) {
+        return "user" + index + "@bench.local";
+    }
+
+    private static long startOfDay(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private static <T> void batch(Connection connection, String sql, List<T> items, Binder<T> binder) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (T item : items) {
+                binder.bind(ps, item);
+                ps.addBatch();
+                if (++pending == 1000) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Заполнение параметров запроса значениями записи
+     */
+    private interface Binder<T> {
+        void bind(PreparedStatement ps, T item) throws SQLException;
+    }
+}
@@ -0,0 +1,61 @@
+package sfedu.railway.benchmarks;
+
+import java.util.*;
+
+/**
+ * Выбор индекса из {@code [0, n)} с распределением Ципфа: вероятность ранга k
+ * пропорциональна 1 / k^s. Ранги сопоставлены индексам случайной перестановкой,
+ * чтобы популярные элементы не совпадали с началом списка. Выборка - двоичный поиск
+ * по заранее посчитанной функции распределения, безопасна для многих потоков.
+ */
+public class ZipfSampler {
+
+    private final double[] cumulative;
+    private final int[] indexByRank;
+
+    /**
+     * @param n количество элементов
+     * @param exponent показатель s; 0 - равномерное распределение, чем больше, тем сильнее перекос
+     * @param seed зерно перестановки рангов
+     */
+    public ZipfSampler(int n, double exponent, long seed) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= sum;
+        }
+        List<Integer> indexes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            indexes.add(i);
+        }
+        Collections.shuffle(indexes, new Random(seed));
+        indexByRank = new int[n];
+        for (int rank = 0; rank < n; rank++) {
+            indexByRank[rank] = indexes.get(rank);
+        }
+    }
+
+    /**
+     * @param random источник случайных чисел вызывающего потока
+     * @return выбранный индекс
+     */
+    public int next(Random random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (rank < 0) {
+            rank = -rank - 1;
+        }
+        return indexByRank[Math.min(rank, indexByRank.length - 1)];
+    }
+
+    /**
+     * @param rank ранг популярности, 0 - самый популярный
+     * @return индекс элемента этого ранга
+     */
+    public int indexOfRank(int rank) {
+        return indexByRank[rank];
+    }
+}
@@ -3,25 +3,42 @@ package sfedu.railway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sfedu.railway.api.*;
+import sfedu.railway.exceptions.BookingException;
+import sfedu.railway.metrics.*;
 import sfedu.railway.models.*;
+import sfedu.railway.payment.*;
+import sfedu.railway.server.*;
+import sfedu.railway.service.*;
+import sfedu.railway.utils.Constants;
 import sfedu.railway.utils.Status;
 
-import java.sql.Connection;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class RunApplication {
     private static final Logger logger = LoggerFactory.getLogger(RunApplication.class);
     private static Scanner sc = new Scanner(System.in);
-    private static String dataSource = "PostgreSQL"; // По умолчанию используем PostgreSQL
-    private static DataProviderPSQL dataProviderPSQL;
-    private static DataProviderCsv dataProviderCsv;
+    private static String dataSource = DataProviderFactory.POSTGRESQL; // По умолчанию используем PostgreSQL
+    private static IDataProvider dataProvider;
+    private static PaymentProcessor paymentProcessor;
+    private static HoldExpiryScheduler holdExpiry;
+    private static BookingService bookingService;
+    private static MetricsReporter metricsReporter;
     private static User currentUser = null;
 
+    // Аргументы серверного режима: --server [порт] [--source PostgreSQL|CSV]
+    private static final String SERVER_ARGUMENT = "--server";
+    private static final String SOURCE_ARGUMENT = "--source";
+    private static final String SERVER_USAGE = "Использование: --server [порт] [--source PostgreSQL|CSV]";
+
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains(SERVER_ARGUMENT)) {
+            runServer(args);
+            return;
+        }
         try {
-            initializeDataProviders();
             showWelcomeScreen();
+            initializeDataProvider();
             
             // Основной цикл приложения
             boolean exit = false;
@@ -41,31 +58,133 @@ public class RunApplication {
             logger.error("Ошибка при запуске приложения: " + e.getMessage());
             System.out.println("Произошла ошибка при запуске приложения. Подробности в логах.");
         } finally {
-            // Закрываем сканнер перед выходом
+            // Закрываем сканнер и источник данных перед выходом
             if (sc != null) {
                 sc.close();
             }
+            if (holdExpiry != null) {
+                holdExpiry.close();
+            }
+            if (paymentProcessor != null) {
+                paymentProcessor.close();
+            }
+            if (dataProvider != null) {
+                dataProvider.close();
+            }
+            if (metricsReporter != null) {
+                metricsReporter.close();
+            }
         }
     }
     
     /**
-     * Инициализация провайдеров данных
+     * Запуск в серверном режиме. Операции доступны по HTTP, состояние каждого пользователя
+     * хранится в его сессии на сервере, поэтому один процесс обслуживает много пользователей
+     * @param args аргументы командной строки
+     */
+    private static void runServer(String[] args) {
+        int port = Constants.serverPort;
+        String source = dataSource;
+        for (int i = 0; i < args.length; i++) {
+            if (SERVER_ARGUMENT.equals(args[i]) && i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                port = Integer.parseInt(args[++i]);
+            } else if (SOURCE_ARGUMENT.equals(args[i])) {
+                String value = i + 1 < args.length ? args[++i] : "";
+                if (value.equalsIgnoreCase(DataProviderFactory.CSV)) {
+                    source = DataProviderFactory.CSV;
+                } else if (value.equalsIgnoreCase(DataProviderFactory.POSTGRESQL)) {
+                    source = DataProviderFactory.POSTGRESQL;
+                } else {
+                    System.out.println("Неизвестный источник данных: " + value);
+                    System.out.println(SERVER_USAGE);
+                    System.exit(2);
+                }
+            }
+        }
+        try {
+            IDataProvider provider = DataProviderFactory.create(source);
+            PaymentProcessor payments = createPaymentProcessor(provider);
+            HoldExpiryScheduler holds = createHoldExpiry(provider, payments);
+            MetricsReporter metrics = startMetrics();
+            BookingServer server = new BookingServer(new BookingService(provider, payments, holds),
+                    new SessionManager(Constants.sessionTtlMillis), port,
+                    Constants.serverThreads, Constants.serverQueueSize);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(5);
+                holds.close();
+                payments.close();
+                provider.close();
+                if (metrics != null) {
+                    metrics.close();
+                }
+            }));
+            server.start();
+            System.out.println("Сервер запущен на порту " + server.getPort() + ", источник данных: " + source);
+        } catch (Exception e) {
+            logger.error("Ошибка при запуске сервера: " + e.getMessage());
+            System.out.println("Не удалось запустить сервер. Подробности в логах.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Инициализация провайдера данных для выбранного источника
      */
-    private static void initializeDataProviders() {
+    private static void initializeDataProvider() {
         try {
-            // Инициализируем провайдеры данных
-            Connection connection = DataProviderPSQL.getConnection();
-            dataProviderPSQL = new DataProviderPSQL();
-            dataProviderCsv = new DataProviderCsv();
-            
-            logger.info("Провайдеры данных успешно инициализированы");
+            dataProvider = DataProviderFactory.create(dataSource);
+            paymentProcessor = createPaymentProcessor(dataProvider);
+            holdExpiry = createHoldExpiry(dataProvider, paymentProcessor);
+            bookingService = new BookingService(dataProvider, paymentProcessor, holdExpiry);
+            metricsReporter = startMetrics();
+            logger.info("Провайдер данных успешно инициализирован");
         } catch (Exception e) {
-            logger.error("Ошибка при инициализации провайдеров данных: " + e.getMessage());
-            System.out.println("Ошибка при подключении к базе данных. Подробности в логах.");
+            logger.error("Ошибка при инициализации провайдера данных: " + e.getMessage());
+            System.out.println("Ошибка при подключении к источнику данных. Подробности в логах.");
             System.exit(1);
         }
     }
     
+    /**
+     * Обработчик платежей с локальной заглушкой платежного шлюза
+     * @param provider провайдер данных для записи транзакций
+     * @return обработчик платежей
+     */
+    private static PaymentProcessor createPaymentProcessor(IDataProvider provider) {
+        return new PaymentProcessor(provider, new StubPaymentGateway(Constants.paymentStubDelayMillis),
+                Constants.paymentThreads, Constants.paymentQueueSize, Constants.paymentTimeoutMillis,
+                Constants.paymentMaxAttempts, Constants.paymentRetryDelayMillis);
+    }
+
+    /**
+     * Запуск автоматической отмены неоплаченных броней
+     * @param provider провайдер данных
+     * @param payments обработчик платежей: брони с оплатой в процессе не отменяются
+     * @return запущенный планировщик
+     * @throws Exception если существующие брони не удалось прочитать
+     */
+    private static HoldExpiryScheduler createHoldExpiry(IDataProvider provider, PaymentProcessor payments) throws Exception {
+        HoldExpiryScheduler holds = new HoldExpiryScheduler(provider, Constants.ticketHoldMillis,
+                Constants.holdWheelTickMillis, payments::isPending);
+        holds.start();
+        return holds;
+    }
+
+    /**
+     * Публикация метрик в JMX и запуск периодической записи текстового отчета
+     * @return запущенный отчет или null, если отчет отключен
+     */
+    private static MetricsReporter startMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.registerMBean(Constants.metricsObjectName);
+        if (Constants.metricsDumpIntervalMillis <= 0) {
+            return null;
+        }
+        MetricsReporter reporter = new MetricsReporter(registry, Constants.metricsDumpFilePath);
+        reporter.start(Constants.metricsDumpIntervalMillis);
+        return reporter;
+    }
+
     /**
      * Отображение приветственного экрана
      */
@@ -85,14 +204,14 @@ public class RunApplication {
         
         switch (choice) {
             case 1:
-                dataSource = "PostgreSQL";
+                dataSource = DataProviderFactory.POSTGRESQL;
                 break;
             case 2:
-                dataSource = "CSV";
+                dataSource = DataProviderFactory.CSV;
                 break;
             default:
                 System.out.println("Неверный выбор. Используем PostgreSQL по умолчанию.");
-                dataSource = "PostgreSQL";
+                dataSource = DataProviderFactory.POSTGRESQL;
         }
         
         System.out.println("Выбран источник данных: " + dataSource);
@@ -140,11 +259,7 @@ public class RunApplication {
         String password = sc.nextLine();
         
         try {
-            if (dataSource.equals("PostgreSQL")) {
-                currentUser = dataProviderPSQL.authenticateUser(email, password);
-            } else {
-                currentUser = dataProviderCsv.authenticateUser(email, password);
-            }
+            currentUser = dataProvider.authenticateUser(email, password);
             
             System.out.println("Успешный вход в систему. Добро пожаловать, " + currentUser.getName() + "!");
         } catch (Exception e) {
@@ -177,12 +292,7 @@ public class RunApplication {
         User user = new User(surname, name, phoneNumber, email, password);
         
         try {
-            boolean success = false;
-            if (dataSource.equals("PostgreSQL")) {
-                success = dataProviderPSQL.createUser(user);
-            } else {
-                success = dataProviderCsv.createUser(user);
-            }
+            boolean success = dataProvider.createUser(user);
             
             if (success) {
                 System.out.println("Регистрация успешно завершена! Теперь вы можете войти в систему.");
@@ -249,12 +359,7 @@ public class RunApplication {
             Date date = new SimpleDateFormat("dd.MM.yyyy").parse(dateStr);
             
             // Ищем маршруты
-            List<RouteInfo> routes;
-            if (dataSource.equals("PostgreSQL")) {
-                routes = dataProviderPSQL.searchRoutes(departureCity, arrivalCity, date);
-            } else {
-                routes = dataProviderCsv.searchRoutes(departureCity, arrivalCity, date);
-            }
+            List<RouteInfo> routes = dataProvider.searchRoutes(departureCity, arrivalCity, date);
             
             if (routes.isEmpty()) {
                 System.out.println("Маршруты не найдены. Попробуйте изменить параметры поиска.");
@@ -306,12 +411,7 @@ public class RunApplication {
         
         try {
             // Получаем доступные места
-            List<Seat> availableSeats;
-            if (dataSource.equals("PostgreSQL")) {
-                availableSeats = dataProviderPSQL.getAvailableSeats(route.getId());
-            } else {
-                availableSeats = dataProviderCsv.getAvailableSeats(route.getId());
-            }
+            List<Seat> availableSeats = dataProvider.getAvailableSeats(route.getId());
             
             if (availableSeats.isEmpty()) {
                 System.out.println("К сожалению, нет доступных мест на этот маршрут.");
@@ -342,56 +442,42 @@ public class RunApplication {
             if (seatChoice > 0 && seatChoice <= availableSeats.size()) {
                 // Пользователь выбрал место
                 Seat selectedSeat = availableSeats.get(seatChoice - 1);
-                double price = route.getPrice() * selectedSeat.getPriceMultiplier();
                 
-                // Создаем билет
-                Ticket ticket = new Ticket(currentUser.getId(), route.getId(), selectedSeat.getId(), price);
+                // Бронируем место; неоплаченная бронь будет отменена автоматически
+                Ticket ticket = bookingService.bookTicket(currentUser, route.getId(), selectedSeat.getId());
                 
-                boolean success = false;
-                if (dataSource.equals("PostgreSQL")) {
-                    success = dataProviderPSQL.createTicket(ticket);
-                } else {
-                    success = dataProviderCsv.createTicket(ticket);
-                }
+                System.out.println("\nБилет успешно забронирован!");
+                System.out.println("Номер билета: " + ticket.getId());
+                System.out.println("Статус: ЗАБРОНИРОВАН");
+                System.out.println("\nЧтобы завершить покупку, выберите способ оплаты:");
+                System.out.println("1. Банковская карта");
+                System.out.println("2. Электронный кошелек");
+                System.out.println("3. Отложить оплату");
+                System.out.print("Ваш выбор: ");
                 
-                if (success) {
-                    System.out.println("\nБилет успешно забронирован!");
-                    System.out.println("Номер билета: " + ticket.getId());
-                    System.out.println("Статус: ЗАБРОНИРОВАН");
-                    System.out.println("\nЧтобы завершить покупку, выберите способ оплаты:");
-                    System.out.println("1. Банковская карта");
-                    System.out.println("2. Электронный кошелек");
-                    System.out.println("3. Отложить оплату");
-                    System.out.print("Ваш выбор: ");
-                    
-                    int paymentChoice = getIntInput();
+                int paymentChoice = getIntInput();
+                
+                if (paymentChoice == 1 || paymentChoice == 2) {
+                    String paymentMethod = paymentChoice == 1 ? "Банковская карта" : "Электронный кошелек";
                     
-                    if (paymentChoice == 1 || paymentChoice == 2) {
-                        String paymentMethod = paymentChoice == 1 ? "Банковская карта" : "Электронный кошелек";
-                        
-                        // Имитация процесса оплаты
-                        System.out.println("\nОбработка платежа...");
-                        Thread.sleep(1500);
-                        
-                        // Создаем транзакцию
-                        Transaction transaction = new Transaction(ticket.getId(), price, paymentMethod);
-                        
-                        if (dataSource.equals("PostgreSQL")) {
-                            dataProviderPSQL.createTransaction(transaction);
-                        } else {
-                            dataProviderCsv.createTransaction(transaction);
-                        }
-                        
-                        System.out.println("\nПлатеж успешно обработан!");
-                        System.out.println("Билет оплачен. Статус изменен на ОПЛАЧЕН.");
-                        System.out.println("Номер транзакции: " + transaction.getId());
+                    if (submitPayment(ticket, paymentMethod)) {
+                        System.out.println("\nПлатеж принят в обработку.");
+                        System.out.println("Статус билета изменится на ОПЛАЧЕН после подтверждения платежа.");
                     } else {
-                        System.out.println("\nОплата отложена. Не забудьте оплатить билет до отправления поезда.");
+                        System.out.println("\nОшибка при обработке платежа. Оплатите билет позже в разделе \"Мои билеты\".");
                     }
                 } else {
-                    System.out.println("\nОшибка при бронировании билета. Попробуйте еще раз.");
+                    System.out.println("\nОплата отложена. Неоплаченная бронь будет отменена через "
+                            + Constants.ticketHoldMillis / 60_000 + " мин.");
                 }
             }
+        } catch (BookingException e) {
+            logger.error("Ошибка при бронировании билета: " + e.getMessage());
+            if (e.getReason() == BookingException.Reason.CONFLICT) {
+                System.out.println("\nМесто уже занято. Выберите другое место.");
+            } else {
+                System.out.println("\nОшибка при бронировании билета. Попробуйте еще раз.");
+            }
         } catch (Exception e) {
             logger.error("Ошибка при бронировании билета: " + e.getMessage());
             System.out.println("Ошибка при бронировании билета.");
@@ -416,13 +502,8 @@ public class RunApplication {
         System.out.println("\n--- Мои билеты ---");
         
         try {
-            // Получаем билеты пользователя
-            List<Ticket> tickets;
-            if (dataSource.equals("PostgreSQL")) {
-                tickets = dataProviderPSQL.getUserTickets(currentUser.getId());
-            } else {
-                tickets = dataProviderCsv.getUserTickets(currentUser.getId());
-            }
+            // Получаем билеты пользователя вместе с информацией о маршрутах и местах
+            List<TicketDetails> tickets = dataProvider.getUserTicketsWithRouteDetails(currentUser.getId());
             
             if (tickets.isEmpty()) {
                 System.out.println("У вас пока нет забронированных или купленных билетов.");
@@ -435,15 +516,8 @@ public class RunApplication {
                 System.out.println("----------------------------------------------------------------------");
                 
                 for (int i = 0; i < tickets.size(); i++) {
-                    Ticket ticket = tickets.get(i);
-                    
-                    // Получаем информацию о маршруте
-                    RouteInfo routeInfo;
-                    if (dataSource.equals("PostgreSQL")) {
-                        routeInfo = dataProviderPSQL.getRouteDetails(ticket.getRouteId());
-                    } else {
-                        routeInfo = dataProviderCsv.getRouteDetails(ticket.getRouteId());
-                    }
+                    Ticket ticket = tickets.get(i).getTicket();
+                    RouteInfo routeInfo = tickets.get(i).getRoute();
                     
                     String routeStr = routeInfo.getDepartureStation() + " -> " + routeInfo.getArrivalStation();
                     String dateStr = routeInfo.getDepartureTime();
@@ -462,7 +536,7 @@ public class RunApplication {
                 
                 if (ticketChoice > 0 && ticketChoice <= tickets.size()) {
                     // Пользователь выбрал билет
-                    Ticket selectedTicket = tickets.get(ticketChoice - 1);
+                    TicketDetails selectedTicket = tickets.get(ticketChoice - 1);
                     showTicketActions(selectedTicket);
                 }
             }
@@ -472,26 +546,22 @@ public class RunApplication {
         }
     }
     
-/**
+    /**
      * Действия с билетом
-     * @param ticket выбранный билет
+     * @param details выбранный билет с информацией о маршруте и месте
      */
-    private static void showTicketActions(Ticket ticket) {
+    private static void showTicketActions(TicketDetails details) {
         System.out.println("\n--- Действия с билетом ---");
         
-        // Получаем информацию о маршруте
         try {
-            RouteInfo routeInfo;
-            if (dataSource.equals("PostgreSQL")) {
-                routeInfo = dataProviderPSQL.getRouteDetails(ticket.getRouteId());
-            } else {
-                routeInfo = dataProviderCsv.getRouteDetails(ticket.getRouteId());
-            }
+            Ticket ticket = details.getTicket();
+            RouteInfo routeInfo = details.getRoute();
             
             System.out.println("Билет №: " + ticket.getId());
             System.out.println("Статус: " + ticket.getStatus());
             System.out.println("Маршрут: " + routeInfo.getDepartureStation() + " -> " + routeInfo.getArrivalStation());
             System.out.println("Отправление: " + routeInfo.getDepartureTime());
+            System.out.println("Вагон " + details.getWagonNumber() + ", место " + details.getSeatNumber());
             System.out.println("Цена: " + ticket.getPrice() + " руб.");
             
             System.out.println("\nДоступные действия:");
@@ -534,6 +604,23 @@ public class RunApplication {
         }
     }
     
+    /**
+     * Отправка оплаты билета в обработку через {@link BookingService}. Пользователь не ждет
+     * ответа платежного шлюза: билет станет оплаченным после подтверждения
+     * @param ticket билет
+     * @param paymentMethod способ оплаты
+     * @return true, если платеж принят в обработку
+     */
+    private static boolean submitPayment(Ticket ticket, String paymentMethod) {
+        try {
+            bookingService.payTicket(currentUser, ticket.getId(), paymentMethod);
+            return true;
+        } catch (BookingException e) {
+            logger.error("Ошибка при оплате билета: " + e.getMessage());
+            return false;
+        }
+    }
+    
     /**
      * Оплата билета
      * @param ticket билет для оплаты
@@ -551,31 +638,11 @@ public class RunApplication {
         if (paymentChoice == 1 || paymentChoice == 2) {
             String paymentMethod = paymentChoice == 1 ? "Банковская карта" : "Электронный кошелек";
             
-            try {
-                // Имитация процесса оплаты
-                System.out.println("\nОбработка платежа...");
-                Thread.sleep(1500);
-                
-                // Создаем транзакцию
-                Transaction transaction = new Transaction(ticket.getId(), ticket.getPrice(), paymentMethod);
-                
-                boolean success = false;
-                if (dataSource.equals("PostgreSQL")) {
-                    success = dataProviderPSQL.createTransaction(transaction);
-                } else {
-                    success = dataProviderCsv.createTransaction(transaction);
-                }
-                
-                if (success) {
-                    System.out.println("\nПлатеж успешно обработан!");
-                    System.out.println("Билет оплачен. Статус изменен на ОПЛАЧЕН.");
-                    System.out.println("Номер транзакции: " + transaction.getId());
-                } else {
-                    System.out.println("\nОшибка при обработке платежа. Попробуйте еще раз.");
-                }
-            } catch (Exception e) {
-                logger.error("Ошибка при оплате билета: " + e.getMessage());
-                System.out.println("Ошибка при оплате билета.");
+            if (submitPayment(ticket, paymentMethod)) {
+                System.out.println("\nПлатеж принят в обработку.");
+                System.out.println("Статус билета изменится на ОПЛАЧЕН после подтверждения платежа.");
+            } else {
+                System.out.println("\nОшибка при обработке платежа. Попробуйте еще раз.");
             }
         }
     }
@@ -593,24 +660,18 @@ public class RunApplication {
         
         if (choice == 1) {
             try {
-                boolean success = false;
-                if (dataSource.equals("PostgreSQL")) {
-                    success = dataProviderPSQL.updateTicketStatus(ticket.getId(), Status.CANCELED);
-                } else {
-                    success = dataProviderCsv.updateTicketStatus(ticket.getId(), Status.CANCELED);
+                bookingService.cancelTicket(currentUser, ticket.getId());
+                System.out.println("\nБилет успешно отменен.");
+                if (ticket.getStatus() == Status.PAID) {
+                    System.out.println("Средства будут возвращены на счет в течение 3-5 рабочих дней.");
                 }
-                
-                if (success) {
-                    System.out.println("\nБилет успешно отменен.");
-                    if (ticket.getStatus() == Status.PAID) {
-                        System.out.println("Средства будут возвращены на счет в течение 3-5 рабочих дней.");
-                    }
+            } catch (BookingException e) {
+                logger.error("Ошибка при отмене билета: " + e.getMessage());
+                if (e.getReason() == BookingException.Reason.CONFLICT) {
+                    System.out.println("\nБилет не может быть отменен: его оплата еще обрабатывается или статус уже изменился.");
                 } else {
                     System.out.println("\nОшибка при отмене билета. Попробуйте еще раз.");
                 }
-            } catch (Exception e) {
-                logger.error("Ошибка при отмене билета: " + e.getMessage());
-                System.out.println("Ошибка при отмене билета.");
             }
         }
     }
@@ -676,12 +737,7 @@ public class RunApplication {
         }
         
         try {
-            boolean success = false;
-            if (dataSource.equals("PostgreSQL")) {
-                success = dataProviderPSQL.updateUser(currentUser);
-            } else {
-                success = dataProviderCsv.updateUser(currentUser);
-            }
+            boolean success = dataProvider.updateUser(currentUser);
             
             if (success) {
                 System.out.println("\nПрофиль успешно обновлен!");
@@ -0,0 +1,136 @@
+package sfedu.railway.api;
+
+import org.slf4j.*;
+import sfedu.railway.cache.LruCache;
+import sfedu.railway.metrics.MetricsRegistry;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Constants;
+import sfedu.railway.utils.Status;
+
+/**
+ * Кеширующий провайдер данных: маршруты и детали маршрутов читаются из источника
+ * один раз и затем отдаются из кеша до истечения времени жизни записи.
+ * Данные маршрута после публикации не меняются, поэтому кеш сбрасывается только
+ * при создании маршрута и при изменении состояния мест на нем (детали маршрута
+ * содержат количество свободных мест).
+ * Возвращаемые объекты разделяются между вызовами и не должны изменяться.
+ */
+public class CachingDataProvider extends ForwardingDataProvider {
+
+    Logger logger = LoggerFactory.getLogger(CachingDataProvider.class);
+
+    private final LruCache<String, Route> routes;
+    private final LruCache<String, RouteInfo> routeDetails;
+
+    public CachingDataProvider(IDataProvider delegate) {
+        this(delegate, Constants.routeCacheMaxSize, Constants.routeCacheTtlMillis);
+    }
+
+    /**
+     * @param delegate провайдер-источник данных
+     * @param maxSize максимальное количество записей в каждом кеше
+     * @param ttlMillis время жизни записи в миллисекундах
+     */
+    public CachingDataProvider(IDataProvider delegate, int maxSize, long ttlMillis) {
+        super(delegate);
+        this.routes = new LruCache<>(maxSize, ttlMillis);
+        this.routeDetails = new LruCache<>(maxSize, ttlMillis);
+        routes.registerMetrics(MetricsRegistry.getDefault(), "cache.routes");
+        routeDetails.registerMetrics(MetricsRegistry.getDefault(), "cache.routeDetails");
+    }
+
+    public LruCache<String, Route> getRouteCache() {
+        return routes;
+    }
+
+    public LruCache<String, RouteInfo> getRouteDetailsCache() {
+        return routeDetails;
+    }
+
+    @Override
+    public Route readRoute(String id) throws Exception {
+        Route route = routes.get(id);
+        if (route == null) {
+            // Версия запоминается до чтения: сброс во время чтения отменяет сохранение в кеш
+            long stamp = routes.stamp(id);
+            route = delegate.readRoute(id);
+            routes.putIfUnchanged(id, route, stamp);
+        }
+        return route;
+    }
+
+    @Override
+    public RouteInfo getRouteDetails(String routeId) throws Exception {
+        RouteInfo routeInfo = routeDetails.get(routeId);
+        if (routeInfo == null) {
+            long stamp = routeDetails.stamp(routeId);
+            routeInfo = delegate.getRouteDetails(routeId);
+            // Пустой результат для неизвестного маршрута не кешируем
+            if (routeInfo.getId() != null) {
+                routeDetails.putIfUnchanged(routeId, routeInfo, stamp);
+            }
+        }
+        return routeInfo;
+    }
+
+    @Override
+    public boolean createRoute(Route route) throws Exception {
+        boolean created = delegate.createRoute(route);
+        if (route != null) {
+            routes.invalidate(route.getId());
+            routeDetails.invalidate(route.getId());
+        }
+        return created;
+    }
+
+    @Override
+    public boolean createTicket(Ticket ticket) throws Exception {
+        boolean created = delegate.createTicket(ticket);
+        if (created) {
+            routeDetails.invalidate(ticket.getRouteId());
+        }
+        return created;
+    }
+
+    @Override
+    public boolean bookAndPay(Ticket ticket, Transaction transaction) throws Exception {
+        boolean booked = delegate.bookAndPay(ticket, transaction);
+        if (booked) {
+            routeDetails.invalidate(ticket.getRouteId());
+        }
+        return booked;
+    }
+
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status status) throws Exception {
+        boolean updated = delegate.updateTicketStatus(ticketId, status);
+        ticketStatusChanged(ticketId, status, updated);
+        return updated;
+    }
+
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status expected, Status status) throws Exception {
+        boolean updated = delegate.updateTicketStatus(ticketId, expected, status);
+        ticketStatusChanged(ticketId, status, updated);
+        return updated;
+    }
+
+    private void ticketStatusChanged(String ticketId, Status status, boolean updated) {
+        // Место освобождается только при отмене
+        if (updated && status == Status.CANCELED) {
+            try {
+                routeDetails.invalidate(delegate.readTicket(ticketId).getRouteId());
+            } catch (Exception e) {
+                logger.error("Cannot invalidate route details for ticket {}: {}", ticketId, e.getMessage());
+                routeDetails.invalidateAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        logger.info("Route cache: {} hits, {} misses; route details cache: {} hits, {} misses",
+                routes.hitCount(), routes.missCount(), routeDetails.hitCount(), routeDetails.missCount());
+        super.close();
+    }
+}
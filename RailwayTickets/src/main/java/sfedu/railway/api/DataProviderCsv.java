@@ -3,7 +3,9 @@ package sfedu.railway.api;
 import com.opencsv.*;
 import com.opencsv.exceptions.CsvException;
 import org.slf4j.*;
+import sfedu.railway.auth.Authenticator;
 import sfedu.railway.models.*;
+import sfedu.railway.storage.*;
 import sfedu.railway.utils.Constants;
 import sfedu.railway.utils.Status;
 
@@ -11,64 +13,70 @@ import java.io.*;
 import java.nio.file.*;
 import java.text.*;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-public class DataProviderCsv {
+public class DataProviderCsv implements IDataProvider {
 
     Logger logger = LoggerFactory.getLogger(DataProviderCsv.class);
 
+    private final CsvStore store = new CsvStore();
+    private final CsvCompactor compactor = new CsvCompactor(store.tables());
+    private final RouteSearchEngine searchEngine = new RouteSearchEngine(store);
+    private final Authenticator authenticator = new Authenticator();
+
     /**
-     * Запись данных в CSV файл
-     * @param data данные для записи
-     * @param csvFilePath путь к файлу
-     * @throws IOException
+     * Запуск фонового переноса журналов изменений в CSV файлы
      */
-    public static void writeToCsv(List<String[]> data, String csvFilePath) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(csvFilePath));
-             CSVWriter csvWriter = new CSVWriter(writer)) {
-            csvWriter.writeAll(data);
+    @Override
+    public void initDataSource() {
+        compactor.start(Constants.csvCompactionIntervalSeconds);
+    }
+
+    /**
+     * Остановка фонового переноса с переносом накопленных изменений и закрытие файла состояний мест
+     */
+    @Override
+    public void close() {
+        compactor.stop();
+        try {
+            store.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage());
         }
     }
 
     /**
-     * Чтение данных из CSV файла
+     * Запись данных в CSV файл. Файл заменяется атомарно через временный файл
+     * @param data данные для записи
      * @param csvFilePath путь к файлу
-     * @return список строк данных
      * @throws IOException
-     * @throws CsvException
      */
-    public List<String[]> readFromCsv(String csvFilePath) throws IOException, CsvException {
-        List<String[]> data = new ArrayList<>();
-        if (Files.exists(Paths.get(csvFilePath))) {
-            try (BufferedReader reader = Files.newBufferedReader(Paths.get(csvFilePath));
-                 CSVReader csvReader = new CSVReader(reader)) {
-                data = csvReader.readAll();
-            }
-        }
-        return data;
+    public static void writeToCsv(List<String[]> data, String csvFilePath) throws IOException {
+        CsvStreams.writeAtomically(Paths.get(csvFilePath), data);
     }
 
     /**
-     * Создание записи пользователя в CSV
+     * Создание записи пользователя в CSV. Пароль сохраняется в виде хеша
      * @param user объект пользователя
      * @return успешность операции
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean createUser(User user) throws IOException, CsvException {
         if(user == null){
             return false;
         }
         try {
-            List<String[]> data = readFromCsv(Constants.csvUserFilePath);
-            data.add(new String[]{
+            store.users().append(new String[]{
                     user.getId(),
                     user.getSurname(),
                     user.getName(),
                     user.getPhoneNumber(),
                     user.getEmail(),
-                    user.getPassword()
+                    authenticator.toStored(user.getPassword(), null)
             });
-            writeToCsv(data, Constants.csvUserFilePath);
             return true;
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
@@ -83,20 +91,19 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public User readUser(String id) throws IOException, CsvException {
         User user = new User();
         try {
-            List<String[]> data = readFromCsv(Constants.csvUserFilePath);
-            for (String[] row : data) {
-                if(row[0].equals(id)) {
-                    user.setId(row[0]);
-                    user.setSurname(row[1]);
-                    user.setName(row[2]);
-                    user.setPhoneNumber(row[3]);
-                    user.setEmail(row[4]);
-                    user.setPassword(row[5]);
-                    return user;
-                }
+            String[] row = store.users().findById(id);
+            if (row != null) {
+                user.setId(row[0]);
+                user.setSurname(row[1]);
+                user.setName(row[2]);
+                user.setPhoneNumber(row[3]);
+                user.setEmail(row[4]);
+                user.setPassword(row[5]);
+                return user;
             }
             throw new CsvException("Cannot find user with id " + id);
         } catch (CsvException | IOException e) {
@@ -106,19 +113,31 @@ public class DataProviderCsv {
     }
 
     /**
-     * Поиск пользователя по email и паролю
+     * Поиск пользователя по email и паролю. Пользователь находится по индексу email в памяти,
+     * пароль проверяется по хешу. Пароль, сохраненный в открытом виде, после успешного входа
+     * заменяется хешем
      * @param email почта пользователя
      * @param password пароль пользователя
      * @return объект пользователя
      * @throws IOException
-     * @throws CsvException
+     * @throws CsvException если пароль неверный или вход временно заблокирован
      */
+    @Override
     public User authenticateUser(String email, String password) throws IOException, CsvException {
         User user = new User();
         try {
-            List<String[]> data = readFromCsv(Constants.csvUserFilePath);
-            for (String[] row : data) {
-                if(row[4].equals(email) && row[5].equals(password)) {
+            if (authenticator.isBlocked(email)) {
+                throw new CsvException("Too many failed login attempts for " + email);
+            }
+            List<String[]> rows = store.users().findBy(CsvStore.USER_EMAIL, email);
+            if (rows.isEmpty()) {
+                authenticator.unknownUser(email);
+            }
+            for (String[] row : rows) {
+                if (authenticator.verify(email, password, row[5])) {
+                    if (authenticator.needsRehash(row[5])) {
+                        row = upgradePassword(row, password);
+                    }
                     user.setId(row[0]);
                     user.setSurname(row[1]);
                     user.setName(row[2]);
@@ -136,35 +155,59 @@ public class DataProviderCsv {
     }
 
     /**
-     * Обновление данных пользователя в CSV
+     * Замена сохраненного пароля новым хешем после успешного входа. Хеш считается вне блокировки
+     * таблицы, а записывается, только если пароль в строке не изменился с момента проверки:
+     * изменения, сделанные updateUser после чтения строки, не перезаписываются
+     * @param row строка пользователя, по которой проверен пароль
+     * @param password проверенный пароль
+     * @return строка пользователя с новым хешем или исходная строка, если пароль уже изменился
+     * или запись не удалась
+     */
+    private String[] upgradePassword(String[] row, String password) {
+        String rehashed = authenticator.rehash(password);
+        String[][] upgraded = new String[1][];
+        try {
+            store.users().compute(row[0], current -> {
+                if (current == null || !current[5].equals(row[5])) {
+                    return null;
+                }
+                upgraded[0] = current.clone();
+                upgraded[0][5] = rehashed;
+                return upgraded[0];
+            }, previous -> { });
+            return upgraded[0] != null ? upgraded[0] : row;
+        } catch (CsvException | IOException e) {
+            logger.error(e.getMessage());
+            return row;
+        }
+    }
+
+    /**
+     * Обновление данных пользователя в CSV. Пароль, отличающийся от сохраненного, сохраняется в виде хеша
      * @param user объект пользователя с обновленными данными
      * @return успешность операции
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean updateUser(User user) throws IOException, CsvException {
         if (user == null) {
             throw new CsvException("User object must not be null");
         }
         try {
-            List<String[]> data = readFromCsv(Constants.csvUserFilePath);
-            boolean found = false;
-            for (int i = 0; i < data.size(); i++) {
-                if (data.get(i)[0].equals(user.getId())) {
-                    data.set(i, new String[]{
-                            user.getId(),
-                            user.getSurname(),
-                            user.getName(),
-                            user.getPhoneNumber(),
-                            user.getEmail(),
-                            user.getPassword()
-                    });
-                    found = true;
-                    break;
-                }
+            String[] current = store.users().findById(user.getId());
+            if (current == null) {
+                return false;
             }
-            writeToCsv(data, Constants.csvUserFilePath);
-            return found;
+            store.users().upsert(new String[]{
+                    user.getId(),
+                    user.getSurname(),
+                    user.getName(),
+                    user.getPhoneNumber(),
+                    user.getEmail(),
+                    authenticator.toStored(user.getPassword(), current[5])
+            });
+            return true;
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
             return false;
@@ -178,14 +221,13 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean deleteUser(String id) throws IOException, CsvException {
         if(id == null){
             return false;
         }
         try {
-            List<String[]> data = readFromCsv(Constants.csvUserFilePath);
-            data.removeIf(row -> row[0].equals(id));
-            writeToCsv(data, Constants.csvUserFilePath);
+            store.users().delete(id);
             return true;
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
@@ -200,13 +242,13 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean createRoute(Route route) throws IOException, CsvException {
         if(route == null){
             return false;
         }
         try {
-            List<String[]> data = readFromCsv(Constants.csvRouteFilePath);
-            data.add(new String[]{
+            String[] row = new String[]{
                     route.getId(),
                     route.getDepartureStationId(),
                     route.getArrivalStationId(),
@@ -214,10 +256,11 @@ public class DataProviderCsv {
                     new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(route.getDepartureTime()),
                     new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(route.getArrivalTime()),
                     String.valueOf(route.getBasePrice())
-            });
-            writeToCsv(data, Constants.csvRouteFilePath);
+            };
+            store.routes().append(row);
+            searchEngine.addRoute(row);
             return true;
-        } catch (CsvException | IOException e) {
+        } catch (CsvException | IOException | ParseException e) {
             logger.error(e.getMessage());
             return false;
         }
@@ -230,21 +273,20 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public Route readRoute(String id) throws IOException, CsvException, ParseException {
         Route route = new Route();
         try {
-            List<String[]> data = readFromCsv(Constants.csvRouteFilePath);
-            for (String[] row : data) {
-                if(row[0].equals(id)) {
-                    route.setId(row[0]);
-                    route.setDepartureStationId(row[1]);
-                    route.setArrivalStationId(row[2]);
-                    route.setTrainId(row[3]);
-                    route.setDepartureTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[4]));
-                    route.setArrivalTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[5]));
-                    route.setBasePrice(Double.parseDouble(row[6]));
-                    return route;
-                }
+            String[] row = store.routes().findById(id);
+            if (row != null) {
+                route.setId(row[0]);
+                route.setDepartureStationId(row[1]);
+                route.setArrivalStationId(row[2]);
+                route.setTrainId(row[3]);
+                route.setDepartureTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[4]));
+                route.setArrivalTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[5]));
+                route.setBasePrice(Double.parseDouble(row[6]));
+                return route;
             }
             throw new CsvException("Cannot find route with id " + id);
         } catch (CsvException | IOException | ParseException e) {
@@ -262,85 +304,12 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public List<RouteInfo> searchRoutes(String departureCity, String arrivalCity, java.util.Date date) throws IOException, CsvException {
         List<RouteInfo> routes = new ArrayList<>();
         
         try {
-            // Получаем маршруты
-            List<String[]> routeData = readFromCsv(Constants.csvRouteFilePath);
-            List<String[]> stationData = readFromCsv(Constants.csvStationFilePath);
-            List<String[]> trainData = readFromCsv(Constants.csvTrainFilePath);
-            
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            String searchDate = dateFormat.format(date);
-            
-            for (String[] routeRow : routeData) {
-                String routeId = routeRow[0];
-                String departureStationId = routeRow[1];
-                String arrivalStationId = routeRow[2];
-                String trainId = routeRow[3];
-                String departureTimeStr = routeRow[4];
-                String arrivalTimeStr = routeRow[5];
-                double basePrice = Double.parseDouble(routeRow[6]);
-                
-                // Проверяем дату отправления
-                Date departureTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(departureTimeStr);
-                if (!dateFormat.format(departureTime).equals(searchDate)) {
-                    continue;
-                }
-                
-                // Находим информацию о станциях
-                String departureStationName = "";
-                String arrivalStationName = "";
-                String departureStationCity = "";
-                String arrivalStationCity = "";
-                
-                for (String[] stationRow : stationData) {
-                    if (stationRow[0].equals(departureStationId)) {
-                        departureStationName = stationRow[1];
-                        departureStationCity = stationRow[2];
-                    }
-                    if (stationRow[0].equals(arrivalStationId)) {
-                        arrivalStationName = stationRow[1];
-                        arrivalStationCity = stationRow[2];
-                    }
-                }
-                
-                // Проверяем соответствие городам
-                if (!departureStationCity.toLowerCase().contains(departureCity.toLowerCase()) || 
-                    !arrivalStationCity.toLowerCase().contains(arrivalCity.toLowerCase())) {
-                    continue;
-                }
-                
-                // Находим информацию о поезде
-                String trainNumber = "";
-                for (String[] trainRow : trainData) {
-                    if (trainRow[0].equals(trainId)) {
-                        trainNumber = trainRow[1];
-                        break;
-                    }
-                }
-                
-                // Создаем объект RouteInfo
-                RouteInfo routeInfo = new RouteInfo();
-                routeInfo.setId(routeId);
-                routeInfo.setDepartureStation(departureStationName);
-                routeInfo.setArrivalStation(arrivalStationName);
-                routeInfo.setDepartureCity(departureStationCity);
-                routeInfo.setArrivalCity(arrivalStationCity);
-                routeInfo.setTrainNumber(trainNumber);
-                
-                SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-                routeInfo.setDepartureTime(timeFormat.format(departureTime));
-                routeInfo.setArrivalTime(timeFormat.format(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(arrivalTimeStr)));
-                
-                routeInfo.setPrice(basePrice);
-                
-                // Подсчет доступных мест
-                routeInfo.setAvailableSeats(calculateAvailableSeats(routeId));
-                
-                routes.add(routeInfo);
-            }
+            routes = searchEngine.search(departureCity, arrivalCity, date);
         } catch (Exception e) {
             logger.error("Error searching routes: {}", e.getMessage());
         }
@@ -358,41 +327,14 @@ public class DataProviderCsv {
     private int calculateAvailableSeats(String routeId) throws IOException, CsvException {
         try {
             // Получаем маршрут
-            List<String[]> routeData = readFromCsv(Constants.csvRouteFilePath);
-            String trainId = "";
-            
-            for (String[] routeRow : routeData) {
-                if (routeRow[0].equals(routeId)) {
-                    trainId = routeRow[3];
-                    break;
-                }
-            }
+            String[] routeRow = store.routes().findById(routeId);
+            String trainId = routeRow != null ? routeRow[3] : "";
             
             if (trainId.isEmpty()) {
                 return 0;
             }
             
-            // Получаем вагоны для поезда
-            List<String[]> wagonData = readFromCsv(Constants.csvWagonFilePath);
-            List<String> wagonIds = new ArrayList<>();
-            
-            for (String[] wagonRow : wagonData) {
-                if (wagonRow[1].equals(trainId)) {
-                    wagonIds.add(wagonRow[0]);
-                }
-            }
-            
-            // Подсчитываем доступные места
-            List<String[]> seatData = readFromCsv(Constants.csvSeatFilePath);
-            int availableSeats = 0;
-            
-            for (String[] seatRow : seatData) {
-                if (wagonIds.contains(seatRow[1]) && seatRow[3].equals("true")) {
-                    availableSeats++;
-                }
-            }
-            
-            return availableSeats;
+            return searchEngine.countAvailableSeats(routeId, trainId);
         } catch (Exception e) {
             logger.error("Error calculating available seats: {}", e.getMessage());
             return 0;
@@ -406,13 +348,20 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean createTicket(Ticket ticket) throws IOException, CsvException {
         if(ticket == null){
             return false;
         }
+        boolean claimed = false;
         try {
-            List<String[]> data = readFromCsv(Constants.csvTicketFilePath);
-            data.add(new String[]{
+            // Сначала занимаем место на маршруте: если его уже продали, билет не создается
+            claimed = claimRouteSeat(ticket.getRouteId(), ticket.getSeatId());
+            if (!claimed) {
+                logger.error("Seat {} is already taken on route {}", ticket.getSeatId(), ticket.getRouteId());
+                return false;
+            }
+            store.tickets().append(new String[]{
                     ticket.getId(),
                     ticket.getUserId(),
                     ticket.getRouteId(),
@@ -421,47 +370,57 @@ public class DataProviderCsv {
                     ticket.getStatus().toString(),
                     String.valueOf(ticket.getPrice())
             });
-            writeToCsv(data, Constants.csvTicketFilePath);
-            
-            // Обновляем доступность места
-            updateSeatAvailability(ticket.getSeatId(), false);
-            
             return true;
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
+            if (claimed) {
+                releaseRouteSeat(ticket.getRouteId(), ticket.getSeatId());
+            }
             return false;
         }
     }
     
     /**
-     * Обновление доступности места
+     * Бронирование места на маршруте. Проверка состояния и запись выполняются атомарно,
+     * поэтому одно место на маршруте не может быть продано дважды, а места на разных
+     * маршрутах одного поезда продаются независимо
+     * @param routeId идентификатор маршрута
      * @param seatId идентификатор места
-     * @param isAvailable доступность
-     * @return успешность операции
+     * @return было ли место свободно и занято этим вызовом
      * @throws IOException
      * @throws CsvException
      */
-    private boolean updateSeatAvailability(String seatId, boolean isAvailable) throws IOException, CsvException {
+    private boolean claimRouteSeat(String routeId, String seatId) throws IOException, CsvException {
+        String[] routeRow = store.routes().findById(routeId);
+        if (routeRow == null) {
+            return false;
+        }
+        // Быстрая проверка по карте мест: место должно принадлежать поезду маршрута и быть свободным.
+        // Окончательное решение принимается атомарно в файле состояний мест
+        if (!searchEngine.isSeatFree(routeId, routeRow[3], seatId)) {
+            return false;
+        }
+        boolean claimed = store.seatStates().claim(routeId, seatId);
+        if (claimed) {
+            searchEngine.seatClaimed(routeId, seatId);
+        }
+        return claimed;
+    }
+    
+    /**
+     * Освобождение места на маршруте
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     * @return было ли место занято
+     */
+    private boolean releaseRouteSeat(String routeId, String seatId) {
         try {
-            List<String[]> data = readFromCsv(Constants.csvSeatFilePath);
-            boolean found = false;
-            
-            for (int i = 0; i < data.size(); i++) {
-                if (data.get(i)[0].equals(seatId)) {
-                    String[] row = data.get(i);
-                    row[3] = String.valueOf(isAvailable);
-                    data.set(i, row);
-                    found = true;
-                    break;
-                }
-            }
-            
-            if (found) {
-                writeToCsv(data, Constants.csvSeatFilePath);
+            boolean released = store.seatStates().release(routeId, seatId);
+            if (released) {
+                searchEngine.seatReleased(routeId, seatId);
             }
-            
-            return found;
-        } catch (CsvException | IOException e) {
+            return released;
+        } catch (IOException e) {
             logger.error(e.getMessage());
             return false;
         }
@@ -474,21 +433,20 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public Ticket readTicket(String id) throws IOException, CsvException, ParseException {
         Ticket ticket = new Ticket();
         try {
-            List<String[]> data = readFromCsv(Constants.csvTicketFilePath);
-            for (String[] row : data) {
-                if(row[0].equals(id)) {
-                    ticket.setId(row[0]);
-                    ticket.setUserId(row[1]);
-                    ticket.setRouteId(row[2]);
-                    ticket.setSeatId(row[3]);
-                    ticket.setBookingDate(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[4]));
-                    ticket.setStatus(Status.valueOf(row[5]));
-                    ticket.setPrice(Double.parseDouble(row[6]));
-                    return ticket;
-                }
+            String[] row = store.tickets().findById(id);
+            if (row != null) {
+                ticket.setId(row[0]);
+                ticket.setUserId(row[1]);
+                ticket.setRouteId(row[2]);
+                ticket.setSeatId(row[3]);
+                ticket.setBookingDate(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[4]));
+                ticket.setStatus(Status.valueOf(row[5]));
+                ticket.setPrice(Double.parseDouble(row[6]));
+                return ticket;
             }
             throw new CsvException("Cannot find ticket with id " + id);
         } catch (CsvException | IOException | ParseException e) {
@@ -505,39 +463,79 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean updateTicketStatus(String ticketId, Status status) throws IOException, CsvException {
+        return changeTicketStatus(ticketId, current -> current.canChangeTo(status), status);
+    }
+
+    /**
+     * Обновление статуса билета, находящегося в ожидаемом статусе
+     * @param ticketId идентификатор билета
+     * @param expected ожидаемый текущий статус
+     * @param status новый статус
+     * @return успешность операции
+     * @throws IOException
+     * @throws CsvException
+     */
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status expected, Status status) throws IOException, CsvException {
+        return changeTicketStatus(ticketId, current -> current == expected && current.canChangeTo(status), status);
+    }
+
+    private boolean changeTicketStatus(String ticketId, Predicate<Status> allowed, Status status) {
         try {
-            List<String[]> data = readFromCsv(Constants.csvTicketFilePath);
-            boolean found = false;
-            String seatId = "";
-            
-            for (int i = 0; i < data.size(); i++) {
-                if (data.get(i)[0].equals(ticketId)) {
-                    String[] row = data.get(i);
-                    seatId = row[3];
-                    row[5] = status.toString();
-                    data.set(i, row);
-                    found = true;
-                    break;
+            // Проверка статуса, запись и освобождение места выполняются под блокировкой таблицы билетов,
+            // поэтому из параллельных отмен место освобождает только одна
+            return store.tickets().compute(ticketId, row -> {
+                if (row == null || !allowed.test(Status.valueOf(row[5]))) {
+                    return null;
                 }
-            }
-            
-            if (found) {
-                writeToCsv(data, Constants.csvTicketFilePath);
-                
-                // Если билет отменен, освобождаем место
-                if (status == Status.CANCELED && !seatId.isEmpty()) {
-                    updateSeatAvailability(seatId, true);
+                String[] updated = row.clone();
+                updated[5] = status.toString();
+                return updated;
+            }, previous -> {
+                if (status == Status.CANCELED && !previous[3].isEmpty()) {
+                    releaseRouteSeat(previous[2], previous[3]);
                 }
-            }
-            
-            return found;
+            });
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
             return false;
         }
     }
     
+    /**
+     * Обход всех билетов с заданным статусом. Объект билета создается только для подходящих строк
+     * @param status статус билета
+     * @param action обработчик билета
+     * @throws IOException
+     * @throws CsvException
+     */
+    @Override
+    public void forEachTicketWithStatus(Status status, Consumer<Ticket> action) throws IOException, CsvException {
+        String statusName = status.toString();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (String[] row : store.tickets().rows()) {
+            if (!statusName.equals(row[5])) {
+                continue;
+            }
+            Ticket ticket = new Ticket();
+            ticket.setId(row[0]);
+            ticket.setUserId(row[1]);
+            ticket.setRouteId(row[2]);
+            ticket.setSeatId(row[3]);
+            try {
+                ticket.setBookingDate(format.parse(row[4]));
+            } catch (ParseException e) {
+                logger.error("Error parsing date: {}", e.getMessage());
+                ticket.setBookingDate(new Date());
+            }
+            ticket.setStatus(status);
+            ticket.setPrice(Double.parseDouble(row[6]));
+            action.accept(ticket);
+        }
+    }
+
     /**
      * Получение билетов пользователя
      * @param userId идентификатор пользователя
@@ -545,29 +543,26 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public List<Ticket> getUserTickets(String userId) throws IOException, CsvException {
         List<Ticket> tickets = new ArrayList<>();
         
         try {
-            List<String[]> data = readFromCsv(Constants.csvTicketFilePath);
-            
-            for (String[] row : data) {
-                if (row[1].equals(userId)) {
-                    Ticket ticket = new Ticket();
-                    ticket.setId(row[0]);
-                    ticket.setUserId(row[1]);
-                    ticket.setRouteId(row[2]);
-                    ticket.setSeatId(row[3]);
-                    try {
-                        ticket.setBookingDate(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[4]));
-                    } catch (ParseException e) {
-                        logger.error("Error parsing date: {}", e.getMessage());
-                        ticket.setBookingDate(new Date());
-                    }
-                    ticket.setStatus(Status.valueOf(row[5]));
-                    ticket.setPrice(Double.parseDouble(row[6]));
-                    tickets.add(ticket);
+            for (String[] row : store.tickets().findBy(CsvStore.TICKET_USER_ID, userId)) {
+                Ticket ticket = new Ticket();
+                ticket.setId(row[0]);
+                ticket.setUserId(row[1]);
+                ticket.setRouteId(row[2]);
+                ticket.setSeatId(row[3]);
+                try {
+                    ticket.setBookingDate(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(row[4]));
+                } catch (ParseException e) {
+                    logger.error("Error parsing date: {}", e.getMessage());
+                    ticket.setBookingDate(new Date());
                 }
+                ticket.setStatus(Status.valueOf(row[5]));
+                ticket.setPrice(Double.parseDouble(row[6]));
+                tickets.add(ticket);
             }
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
@@ -577,33 +572,72 @@ public class DataProviderCsv {
     }
     
     /**
-     * Создание транзакции оплаты
+     * Создание транзакции оплаты и перевод забронированного билета в статус PAID
      * @param transaction объект транзакции
-     * @return успешность операции
+     * @return успешность операции; false, если билет не в статусе BOOKED
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public boolean createTransaction(Transaction transaction) throws IOException, CsvException {
         if(transaction == null){
             return false;
         }
         try {
-            List<String[]> data = readFromCsv(Constants.csvTransactionFilePath);
-            data.add(new String[]{
+            store.transactions().append(new String[]{
                     transaction.getId(),
                     transaction.getTicketId(),
                     new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(transaction.getDate()),
                     String.valueOf(transaction.getAmount()),
                     transaction.getPaymentMethod()
             });
-            writeToCsv(data, Constants.csvTransactionFilePath);
-            
-            // Обновляем статус билета на PAID
-            updateTicketStatus(transaction.getTicketId(), Status.PAID);
             
+            // Оплачивается только забронированный билет: если бронь уже отменена,
+            // записанная транзакция удаляется
+            if (!updateTicketStatus(transaction.getTicketId(), Status.BOOKED, Status.PAID)) {
+                store.transactions().delete(transaction.getId());
+                return false;
+            }
+            return true;
+        } catch (CsvException | IOException e) {
+            logger.error(e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Бронирование места с немедленной оплатой. Место занимается атомарно,
+     * затем билет записывается сразу оплаченным вместе с транзакцией
+     * @param ticket объект билета
+     * @param transaction объект транзакции оплаты этого билета
+     * @return успешность операции; false, если место уже занято
+     * @throws IOException
+     * @throws CsvException
+     */
+    @Override
+    public boolean bookAndPay(Ticket ticket, Transaction transaction) throws IOException, CsvException {
+        if (ticket == null || transaction == null) {
+            return false;
+        }
+        ticket.setStatus(Status.PAID);
+        transaction.setTicketId(ticket.getId());
+        if (!createTicket(ticket)) {
+            ticket.setStatus(Status.BOOKED);
+            return false;
+        }
+        try {
+            store.transactions().append(new String[]{
+                    transaction.getId(),
+                    transaction.getTicketId(),
+                    new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(transaction.getDate()),
+                    String.valueOf(transaction.getAmount()),
+                    transaction.getPaymentMethod()
+            });
             return true;
         } catch (CsvException | IOException e) {
             logger.error(e.getMessage());
+            // Без записи об оплате билет отменяется, чтобы место не осталось занятым
+            updateTicketStatus(ticket.getId(), Status.CANCELED);
             return false;
         }
     }
@@ -615,47 +649,24 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public List<Seat> getAvailableSeats(String routeId) throws IOException, CsvException {
         List<Seat> seats = new ArrayList<>();
         
         try {
             // Получаем маршрут и поезд
-            List<String[]> routeData = readFromCsv(Constants.csvRouteFilePath);
-            String trainId = "";
-            
-            for (String[] routeRow : routeData) {
-                if (routeRow[0].equals(routeId)) {
-                    trainId = routeRow[3];
-                    break;
-                }
-            }
+            String[] routeRow = store.routes().findById(routeId);
+            String trainId = routeRow != null ? routeRow[3] : "";
             
             if (trainId.isEmpty()) {
                 return seats;
             }
             
-            // Получаем вагоны для поезда
-            List<String[]> wagonData = readFromCsv(Constants.csvWagonFilePath);
-            List<String> wagonIds = new ArrayList<>();
-            
-            for (String[] wagonRow : wagonData) {
-                if (wagonRow[1].equals(trainId)) {
-                    wagonIds.add(wagonRow[0]);
-                }
-            }
-            
-            // Получаем доступные места
-            List<String[]> seatData = readFromCsv(Constants.csvSeatFilePath);
-            
-            for (String[] seatRow : seatData) {
-                if (wagonIds.contains(seatRow[1]) && seatRow[3].equals("true")) {
-                    Seat seat = new Seat();
-                    seat.setId(seatRow[0]);
-                    seat.setWagonId(seatRow[1]);
-                    seat.setNumber(seatRow[2]);
-                    seat.setAvailable(Boolean.parseBoolean(seatRow[3]));
-                    seat.setPriceMultiplier(Double.parseDouble(seatRow[4]));
-                    seats.add(seat);
+            // Свободные места берем из карты мест маршрута, объекты создаем только для них
+            for (String seatId : searchEngine.freeSeatIds(routeId, trainId, Integer.MAX_VALUE)) {
+                String[] seatRow = store.seats().findById(seatId);
+                if (seatRow != null) {
+                    seats.add(toSeat(seatRow));
                 }
             }
         } catch (Exception e) {
@@ -665,6 +676,39 @@ public class DataProviderCsv {
         return seats;
     }
     
+    /**
+     * Чтение места по ID
+     * @param id идентификатор места
+     * @return объект места или null, если место не найдено
+     * @throws IOException
+     * @throws CsvException
+     */
+    @Override
+    public Seat readSeat(String id) throws IOException, CsvException {
+        try {
+            String[] row = store.seats().findById(id);
+            return row != null ? toSeat(row) : null;
+        } catch (CsvException | IOException e) {
+            logger.error(e.getMessage());
+            throw e;
+        }
+    }
+    
+    /**
+     * Преобразование строки таблицы мест в объект
+     * @param row строка таблицы мест
+     * @return объект места
+     */
+    private Seat toSeat(String[] row) {
+        Seat seat = new Seat();
+        seat.setId(row[0]);
+        seat.setWagonId(row[1]);
+        seat.setNumber(row[2]);
+        seat.setAvailable(Boolean.parseBoolean(row[3]));
+        seat.setPriceMultiplier(Double.parseDouble(row[4]));
+        return seat;
+    }
+    
     /**
      * Получение деталей для билета (маршрут, станции, поезд)
      * @param routeId идентификатор маршрута
@@ -672,87 +716,131 @@ public class DataProviderCsv {
      * @throws IOException
      * @throws CsvException
      */
+    @Override
     public RouteInfo getRouteDetails(String routeId) throws IOException, CsvException {
         RouteInfo routeInfo = new RouteInfo();
         
         try {
             // Получаем маршрут
-            List<String[]> routeData = readFromCsv(Constants.csvRouteFilePath);
-            String departureStationId = "";
-            String arrivalStationId = "";
-            String trainId = "";
-            String departureTimeStr = "";
-            String arrivalTimeStr = "";
-            double basePrice = 0.0;
-            
-            for (String[] routeRow : routeData) {
-                if (routeRow[0].equals(routeId)) {
-                    departureStationId = routeRow[1];
-                    arrivalStationId = routeRow[2];
-                    trainId = routeRow[3];
-                    departureTimeStr = routeRow[4];
-                    arrivalTimeStr = routeRow[5];
-                    basePrice = Double.parseDouble(routeRow[6]);
-                    break;
-                }
-            }
-            
-            if (departureStationId.isEmpty() || arrivalStationId.isEmpty() || trainId.isEmpty()) {
+            String[] routeRow = store.routes().findById(routeId);
+            if (routeRow == null) {
                 return routeInfo;
             }
-            
-            // Получаем информацию о станциях
-            List<String[]> stationData = readFromCsv(Constants.csvStationFilePath);
-            String departureStationName = "";
-            String arrivalStationName = "";
-            String departureStationCity = "";
-            String arrivalStationCity = "";
-            
-            for (String[] stationRow : stationData) {
-                if (stationRow[0].equals(departureStationId)) {
-                    departureStationName = stationRow[1];
-                    departureStationCity = stationRow[2];
-                }
-                if (stationRow[0].equals(arrivalStationId)) {
-                    arrivalStationName = stationRow[1];
-                    arrivalStationCity = stationRow[2];
-                }
-            }
-            
-            // Получаем информацию о поезде
-            List<String[]> trainData = readFromCsv(Constants.csvTrainFilePath);
-            String trainNumber = "";
-            
-            for (String[] trainRow : trainData) {
-                if (trainRow[0].equals(trainId)) {
-                    trainNumber = trainRow[1];
-                    break;
-                }
-            }
-            
-            // Заполняем объект RouteInfo
-            routeInfo.setId(routeId);
-            routeInfo.setDepartureStation(departureStationName);
-            routeInfo.setArrivalStation(arrivalStationName);
-            routeInfo.setDepartureCity(departureStationCity);
-            routeInfo.setArrivalCity(arrivalStationCity);
-            routeInfo.setTrainNumber(trainNumber);
-            
-            try {
-                SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-                routeInfo.setDepartureTime(timeFormat.format(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(departureTimeStr)));
-                routeInfo.setArrivalTime(timeFormat.format(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(arrivalTimeStr)));
-            } catch (ParseException e) {
-                logger.error("Error parsing date: {}", e.getMessage());
+            routeInfo = toRouteInfo(routeRow);
+            if (routeInfo.getId() != null) {
+                routeInfo.setAvailableSeats(calculateAvailableSeats(routeId));
             }
-            
-            routeInfo.setPrice(basePrice);
-            routeInfo.setAvailableSeats(calculateAvailableSeats(routeId));
-            
         } catch (Exception e) {
             logger.error("Error getting route details: {}", e.getMessage());
         }
         
         return routeInfo;
     }
+    
+    /**
+     * Получение билетов пользователя вместе с информацией о маршрутах и местах.
+     * Все данные берутся из индексов в памяти, информация о маршруте собирается
+     * один раз на маршрут. Количество свободных мест в маршрутах не заполняется
+     * @param userId идентификатор пользователя
+     * @return список билетов с деталями
+     * @throws IOException
+     * @throws CsvException
+     */
+    @Override
+    public List<TicketDetails> getUserTicketsWithRouteDetails(String userId) throws IOException, CsvException {
+        List<TicketDetails> result = new ArrayList<>();
+        Map<String, RouteInfo> routesById = new HashMap<>();
+        
+        try {
+            for (Ticket ticket : getUserTickets(userId)) {
+                RouteInfo routeInfo = routesById.get(ticket.getRouteId());
+                if (routeInfo == null) {
+                    String[] routeRow = store.routes().findById(ticket.getRouteId());
+                    routeInfo = routeRow != null ? toRouteInfo(routeRow) : new RouteInfo();
+                    routesById.put(ticket.getRouteId(), routeInfo);
+                }
+                
+                TicketDetails details = new TicketDetails();
+                details.setTicket(ticket);
+                details.setRoute(routeInfo);
+                String[] seatRow = store.seats().findById(ticket.getSeatId());
+                if (seatRow != null) {
+                    details.setSeatNumber(seatRow[2]);
+                    String[] wagonRow = store.wagons().findById(seatRow[1]);
+                    details.setWagonNumber(wagonRow != null ? wagonRow[2] : "");
+                } else {
+                    details.setSeatNumber("");
+                    details.setWagonNumber("");
+                }
+                result.add(details);
+            }
+        } catch (CsvException | IOException e) {
+            logger.error(e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Сборка информации о маршруте из строки маршрута, станций и поезда
+     * @param routeRow строка маршрута
+     * @return информация о маршруте без количества свободных мест;
+     * пустой объект, если в маршруте не указаны станции или поезд
+     * @throws IOException
+     * @throws CsvException
+     */
+    private RouteInfo toRouteInfo(String[] routeRow) throws IOException, CsvException {
+        RouteInfo routeInfo = new RouteInfo();
+        
+        String departureStationId = routeRow[1];
+        String arrivalStationId = routeRow[2];
+        String trainId = routeRow[3];
+        String departureTimeStr = routeRow[4];
+        String arrivalTimeStr = routeRow[5];
+        double basePrice = Double.parseDouble(routeRow[6]);
+        
+        if (departureStationId.isEmpty() || arrivalStationId.isEmpty() || trainId.isEmpty()) {
+            return routeInfo;
+        }
+        
+        // Получаем информацию о станциях
+        String departureStationName = "";
+        String arrivalStationName = "";
+        String departureStationCity = "";
+        String arrivalStationCity = "";
+        
+        String[] departureStationRow = store.stations().findById(departureStationId);
+        if (departureStationRow != null) {
+            departureStationName = departureStationRow[1];
+            departureStationCity = departureStationRow[2];
+        }
+        String[] arrivalStationRow = store.stations().findById(arrivalStationId);
+        if (arrivalStationRow != null) {
+            arrivalStationName = arrivalStationRow[1];
+            arrivalStationCity = arrivalStationRow[2];
+        }
+        
+        // Получаем информацию о поезде
+        String[] trainRow = store.trains().findById(trainId);
+        String trainNumber = trainRow != null ? trainRow[1] : "";
+        
+        // Заполняем объект RouteInfo
+        routeInfo.setId(routeRow[0]);
+        routeInfo.setDepartureStation(departureStationName);
+        routeInfo.setArrivalStation(arrivalStationName);
+        routeInfo.setDepartureCity(departureStationCity);
+        routeInfo.setArrivalCity(arrivalStationCity);
+        routeInfo.setTrainNumber(trainNumber);
+        
+        try {
+            SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+            routeInfo.setDepartureTime(timeFormat.format(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(departureTimeStr)));
+            routeInfo.setArrivalTime(timeFormat.format(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(arrivalTimeStr)));
+        } catch (ParseException e) {
+            logger.error("Error parsing date: {}", e.getMessage());
+        }
+        
+        routeInfo.setPrice(basePrice);
+        return routeInfo;
+    }
 }
@@ -0,0 +1,46 @@
+package sfedu.railway.api;
+
+import org.slf4j.*;
+import sfedu.railway.metrics.MetricsRegistry;
+
+import java.util.Locale;
+
+/**
+ * Выбор реализации провайдера данных по названию источника
+ */
+public class DataProviderFactory {
+
+    public static final String POSTGRESQL = "PostgreSQL";
+    public static final String CSV = "CSV";
+
+    private static final Logger logger = LoggerFactory.getLogger(DataProviderFactory.class);
+
+    /**
+     * Создание и инициализация провайдера данных. Выбранная реализация
+     * оборачивается кешем маршрутов, а кеш провайдером метрик, поэтому время вызовов
+     * в метриках соответствует времени, которое видит вызывающий код
+     * @param dataSource название источника данных ({@link #POSTGRESQL} или {@link #CSV})
+     * @return готовый к работе провайдер
+     * @throws Exception если источник неизвестен или не удалось его инициализировать
+     */
+    public static IDataProvider create(String dataSource) throws Exception {
+        IDataProvider backend;
+        if (POSTGRESQL.equals(dataSource)) {
+            backend = new DataProviderPSQL();
+        } else if (CSV.equals(dataSource)) {
+            backend = new DataProviderCsv();
+        } else {
+            throw new IllegalArgumentException("Unknown data source " + dataSource);
+        }
+        IDataProvider provider = new MetricsDataProvider(new CachingDataProvider(backend),
+                MetricsRegistry.getDefault(), "provider." + dataSource.toLowerCase(Locale.ROOT));
+        try {
+            provider.initDataSource();
+        } catch (Exception e) {
+            provider.close();
+            throw e;
+        }
+        logger.info("Data provider {} initialized", dataSource);
+        return provider;
+    }
+}
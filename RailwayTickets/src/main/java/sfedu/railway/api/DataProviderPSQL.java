@@ -1,6 +1,12 @@
 package sfedu.railway.api;
 
+import com.zaxxer.hikari.*;
+import com.zaxxer.hikari.pool.HikariPool;
 import org.slf4j.*;
+import sfedu.railway.auth.Authenticator;
+import sfedu.railway.metrics.MetricsRegistry;
+import sfedu.railway.metrics.RowCounter;
+import sfedu.railway.metrics.Timer;
 import sfedu.railway.utils.Constants;
 import sfedu.railway.utils.Status;
 import sfedu.railway.models.*;
@@ -10,51 +16,166 @@ import java.sql.*;
 import java.util.Date;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.*;
 
-public class DataProviderPSQL {
+public class DataProviderPSQL implements IDataProvider {
+
+    // Коды SQLSTATE, после которых транзакцию можно безопасно повторить
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final String DEADLOCK_DETECTED = "40P01";
 
     Logger logger = LoggerFactory.getLogger(DataProviderPSQL.class);
 
-    private static Connection connection;
+    private static volatile HikariDataSource dataSource;
+    // Время ожидания свободного соединения из пула
+    private static final Timer connectionWait = MetricsRegistry.getDefault().timer("pool.connectionWait");
+
+    private final Authenticator authenticator = new Authenticator();
 
     /**
-     * Получение соединения с базой данных
-     * @return соединение с базой данных
+     * Получение пула соединений с базой данных.
+     * Пул создается при первом обращении по настройкам из database.properties
+     * @return пул соединений
      * @throws SQLException
      * @throws IOException
      */
-    public static Connection getConnection() throws SQLException, IOException {
-        if (connection == null || connection.isClosed()) {
+    public static synchronized HikariDataSource getDataSource() throws SQLException, IOException {
+        if (dataSource == null || dataSource.isClosed()) {
             Properties props = new Properties();
             try(InputStream input = DataProviderPSQL.class.getClassLoader().
                     getResourceAsStream("database.properties")) {
                 props.load(input);
             }
-            String url = props.getProperty("db.url");
-            String user = props.getProperty("db.user");
-            String password = props.getProperty("db.password");
-            connection = DriverManager.getConnection(url, user, password);
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("railway-pool");
+            // Адрес базы и учетные данные можно переопределить системными свойствами с теми же именами
+            config.setJdbcUrl(System.getProperty("db.url", props.getProperty("db.url")));
+            config.setUsername(System.getProperty("db.user", props.getProperty("db.user")));
+            config.setPassword(System.getProperty("db.password", props.getProperty("db.password")));
+            config.setMinimumIdle(Integer.parseInt(props.getProperty("db.pool.minIdle", "2")));
+            config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.pool.maxSize", "10")));
+            config.setConnectionTimeout(Long.parseLong(props.getProperty("db.pool.connectionTimeoutMs", "30000")));
+            config.setValidationTimeout(Long.parseLong(props.getProperty("db.pool.validationTimeoutMs", "5000")));
+            config.setIdleTimeout(Long.parseLong(props.getProperty("db.pool.idleTimeoutMs", "600000")));
+            config.setMaxLifetime(Long.parseLong(props.getProperty("db.pool.maxLifetimeMs", "1800000")));
+            config.setLeakDetectionThreshold(Long.parseLong(props.getProperty("db.pool.leakDetectionThresholdMs", "0")));
+            try {
+                dataSource = new HikariDataSource(config);
+            } catch (HikariPool.PoolInitializationException e) {
+                throw new SQLException(e.getMessage(), e);
+            }
+            registerPoolGauges();
+        }
+        return dataSource;
+    }
+
+    /**
+     * Датчики занятости пула соединений. Пока пул не создан или закрыт, датчики показывают 0
+     */
+    private static void registerPoolGauges() {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.gauge("pool.active", () -> poolValue(HikariPoolMXBean::getActiveConnections));
+        registry.gauge("pool.idle", () -> poolValue(HikariPoolMXBean::getIdleConnections));
+        registry.gauge("pool.total", () -> poolValue(HikariPoolMXBean::getTotalConnections));
+        registry.gauge("pool.waiting", () -> poolValue(HikariPoolMXBean::getThreadsAwaitingConnection));
+    }
+
+    private static int poolValue(ToIntFunction<HikariPoolMXBean> value) {
+        HikariDataSource current = dataSource;
+        HikariPoolMXBean pool = current == null || current.isClosed() ? null : current.getHikariPoolMXBean();
+        return pool == null ? 0 : value.applyAsInt(pool);
+    }
+
+    /**
+     * Получение соединения из пула. Соединение необходимо закрыть после использования,
+     * чтобы вернуть его в пул
+     * @return соединение с базой данных
+     * @throws SQLException
+     */
+    public static Connection getConnection() throws SQLException {
+        HikariDataSource pool;
+        try {
+            pool = getDataSource();
+        } catch (IOException e) {
+            throw new SQLException("Cannot load database.properties: " + e.getMessage(), e);
+        }
+        long start = System.nanoTime();
+        try {
+            return pool.getConnection();
+        } finally {
+            connectionWait.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Закрытие пула соединений
+     */
+    public static synchronized void closeDataSource() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    /**
+     * Проверка соединения с базой данных и создание служебных таблиц и индексов
+     * @throws SQLException
+     */
+    @Override
+    public void initDataSource() throws SQLException {
+        try (Connection connection = getConnection()) {
+            logger.debug("Connected to {}", connection.getMetaData().getURL());
+        }
+        if (!initSchema()) {
+            throw new SQLException("Cannot initialize database schema");
+        }
+    }
+
+    /**
+     * Закрытие пула соединений
+     */
+    @Override
+    public void close() {
+        closeDataSource();
+    }
+
+    /**
+     * Создание служебных таблиц и индексов, если они еще не существуют
+     * @return успешность операции
+     */
+    public boolean initSchema() {
+        try (Connection connection = getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(Constants.createRouteSeatsTable);
+            statement.execute(Constants.createRouteDepartureTimeIndex);
+            statement.execute(Constants.createUserEmailIndex);
+            statement.execute(Constants.createTicketStatusIndex);
+            return true;
+        } catch (SQLException e) {
+            logger.error("Error initializing schema: {}", e.getMessage());
+            return false;
         }
-        return connection;
     }
 
     /**
-     * Создание записи пользователя
+     * Создание записи пользователя. Пароль сохраняется в виде хеша
      * @param user объект пользователя
      * @return успешность операции
      */
+    @Override
     public boolean createUser(User user) {
         if(user == null){
             return false;
         }
         String sql = Constants.insertUser;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, user.getId());
             ps.setString(2, user.getSurname());
             ps.setString(3, user.getName());
             ps.setString(4, user.getPhoneNumber());
             ps.setString(5, user.getEmail());
-            ps.setString(6, user.getPassword());
+            ps.setString(6, authenticator.toStored(user.getPassword(), null));
             int affectedRows = ps.executeUpdate();
             return affectedRows > 0;
         } catch (SQLException e) {
@@ -69,22 +190,26 @@ public class DataProviderPSQL {
      * @return объект пользователя
      * @throws SQLException
      */
+    @Override
     public User readUser(String id) throws SQLException {
         String sql = Constants.readUser;
         User user = new User();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                user.setId(rs.getString("id"));
-                user.setSurname(rs.getString("surname"));
-                user.setName(rs.getString("name"));
-                user.setPhoneNumber(rs.getString("phoneNumber"));
-                user.setEmail(rs.getString("email"));
-                user.setPassword(rs.getString("password"));
-                return user;
-            } else {
-                throw new SQLException("Cannot find user with id " + id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    RowCounter.add(1);
+                    user.setId(rs.getString("id"));
+                    user.setSurname(rs.getString("surname"));
+                    user.setName(rs.getString("name"));
+                    user.setPhoneNumber(rs.getString("phoneNumber"));
+                    user.setEmail(rs.getString("email"));
+                    user.setPassword(rs.getString("password"));
+                    return user;
+                } else {
+                    throw new SQLException("Cannot find user with id " + id);
+                }
             }
         } catch (SQLException e) {
             logger.error(e.getMessage());
@@ -93,51 +218,109 @@ public class DataProviderPSQL {
     }
 
     /**
-     * Поиск пользователя по email и паролю
+     * Поиск пользователя по email и паролю. Пользователь выбирается по индексу users_email_idx,
+     * пароль проверяется по хешу. Пароль, сохраненный в открытом виде, после успешного входа
+     * заменяется хешем
      * @param email почта пользователя
      * @param password пароль пользователя
      * @return объект пользователя
-     * @throws SQLException
+     * @throws SQLException если пароль неверный или вход временно заблокирован
      */
+    @Override
     public User authenticateUser(String email, String password) throws SQLException {
+        if (authenticator.isBlocked(email)) {
+            logger.error("Too many failed login attempts for {}", email);
+            throw new SQLException("Too many failed login attempts for " + email);
+        }
         String sql = Constants.readUserByEmail;
         User user = new User();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        // Строка читается и соединение возвращается в пул до проверки пароля: PBKDF2 не держит соединение
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, email);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next() && rs.getString("password").equals(password)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    authenticator.unknownUser(email);
+                    throw new SQLException("Authentication failed");
+                }
+                RowCounter.add(1);
                 user.setId(rs.getString("id"));
                 user.setSurname(rs.getString("surname"));
                 user.setName(rs.getString("name"));
                 user.setPhoneNumber(rs.getString("phoneNumber"));
                 user.setEmail(rs.getString("email"));
                 user.setPassword(rs.getString("password"));
-                return user;
-            } else {
-                throw new SQLException("Authentication failed");
             }
         } catch (SQLException e) {
             logger.error(e.getMessage());
             throw e;
         }
+        if (!authenticator.verify(email, password, user.getPassword())) {
+            logger.error("Authentication failed");
+            throw new SQLException("Authentication failed");
+        }
+        if (authenticator.needsRehash(user.getPassword())) {
+            upgradePassword(user, password);
+        }
+        return user;
     }
 
     /**
-     * Обновление данных пользователя
+     * Замена сохраненного пароля новым хешем после успешного входа. Хеш считается
+     * до получения соединения, соединение берется из пула только для записи.
+     * Ошибка записи не мешает входу: пароль будет перехеширован при следующем входе
+     * @param user проверенный пользователь, в объекте обновляется сохраненное значение пароля
+     * @param password проверенный пароль
+     */
+    private void upgradePassword(User user, String password) {
+        String upgraded = authenticator.rehash(password);
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(Constants.upgradeUserPassword)) {
+            ps.setString(1, upgraded);
+            ps.setString(2, user.getId());
+            ps.setString(3, user.getPassword());
+            if (ps.executeUpdate() > 0) {
+                user.setPassword(upgraded);
+            }
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Обновление данных пользователя. Пароль, отличающийся от сохраненного, сохраняется в виде хеша.
+     * Сохраненное значение читается отдельным запросом, хеш считается без занятого соединения
      * @param user объект пользователя с обновленными данными
      * @return успешность операции
      */
+    @Override
     public boolean updateUser(User user) {
         if (user == null) {
             return false;
         }
+        String current;
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(Constants.readUserPassword)) {
+            ps.setString(1, user.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                current = rs.getString("password");
+            }
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+            return false;
+        }
+        String password = authenticator.toStored(user.getPassword(), current);
         String sql = Constants.updateUser;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, user.getSurname());
             ps.setString(2, user.getName());
             ps.setString(3, user.getPhoneNumber());
             ps.setString(4, user.getEmail());
-            ps.setString(5, user.getPassword());
+            ps.setString(5, password);
             ps.setString(6, user.getId());
             int affectedRows = ps.executeUpdate();
             return affectedRows > 0;
@@ -152,9 +335,11 @@ public class DataProviderPSQL {
      * @param id идентификатор пользователя
      * @return успешность операции
      */
+    @Override
     public boolean deleteUser(String id) {
         String sql = Constants.deleteUser;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, id);
             int affectedRows = ps.executeUpdate();
             return affectedRows > 0;
@@ -164,6 +349,68 @@ public class DataProviderPSQL {
         }
     }
 
+    /**
+     * Создание маршрута
+     * @param route объект маршрута
+     * @return успешность операции
+     */
+    @Override
+    public boolean createRoute(Route route) {
+        if (route == null) {
+            return false;
+        }
+        String sql = Constants.insertRoute;
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, route.getId());
+            ps.setString(2, route.getDepartureStationId());
+            ps.setString(3, route.getArrivalStationId());
+            ps.setString(4, route.getTrainId());
+            ps.setTimestamp(5, new java.sql.Timestamp(route.getDepartureTime().getTime()));
+            ps.setTimestamp(6, new java.sql.Timestamp(route.getArrivalTime().getTime()));
+            ps.setDouble(7, route.getBasePrice());
+            int affectedRows = ps.executeUpdate();
+            return affectedRows > 0;
+        } catch (SQLException e) {
+            logger.error("Error creating route: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Чтение маршрута по ID
+     * @param id идентификатор маршрута
+     * @return объект маршрута
+     * @throws SQLException
+     */
+    @Override
+    public Route readRoute(String id) throws SQLException {
+        String sql = Constants.readRoute;
+        Route route = new Route();
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    RowCounter.add(1);
+                    route.setId(rs.getString("id"));
+                    route.setDepartureStationId(rs.getString("departureStationId"));
+                    route.setArrivalStationId(rs.getString("arrivalStationId"));
+                    route.setTrainId(rs.getString("trainId"));
+                    route.setDepartureTime(rs.getTimestamp("departureTime"));
+                    route.setArrivalTime(rs.getTimestamp("arrivalTime"));
+                    route.setBasePrice(rs.getDouble("basePrice"));
+                    return route;
+                } else {
+                    throw new SQLException("Cannot find route with id " + id);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * Поиск маршрутов
      * @param departureCity город отправления
@@ -171,40 +418,50 @@ public class DataProviderPSQL {
      * @param date дата отправления
      * @return список информации о маршрутах
      */
+    @Override
     public List<RouteInfo> searchRoutes(String departureCity, String arrivalCity, java.util.Date date) {
         List<RouteInfo> routes = new ArrayList<>();
         String sql = Constants.searchRoutes;
         
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, "%" + departureCity + "%");
             ps.setString(2, "%" + arrivalCity + "%");
             
-            // Форматируем дату для SQL запроса
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            String formattedDate = dateFormat.format(date);
-            ps.setString(3, formattedDate);
+            // Ищем по интервалу [начало дня; начало следующего дня), чтобы использовался индекс по времени отправления
+            Calendar dayStart = Calendar.getInstance();
+            dayStart.setTime(date);
+            dayStart.set(Calendar.HOUR_OF_DAY, 0);
+            dayStart.set(Calendar.MINUTE, 0);
+            dayStart.set(Calendar.SECOND, 0);
+            dayStart.set(Calendar.MILLISECOND, 0);
+            Calendar nextDayStart = (Calendar) dayStart.clone();
+            nextDayStart.add(Calendar.DAY_OF_MONTH, 1);
+            ps.setTimestamp(3, new java.sql.Timestamp(dayStart.getTimeInMillis()));
+            ps.setTimestamp(4, new java.sql.Timestamp(nextDayStart.getTimeInMillis()));
             
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                RouteInfo routeInfo = new RouteInfo();
-                routeInfo.setId(rs.getString("id"));
-                routeInfo.setDepartureStation(rs.getString("departureStation"));
-                routeInfo.setArrivalStation(rs.getString("arrivalStation"));
-                routeInfo.setDepartureCity(rs.getString("departureCity"));
-                routeInfo.setArrivalCity(rs.getString("arrivalCity"));
-                routeInfo.setTrainNumber(rs.getString("trainNumber"));
-                
-                // Форматируем даты/время для отображения
-                SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-                routeInfo.setDepartureTime(timeFormat.format(rs.getTimestamp("departureTime")));
-                routeInfo.setArrivalTime(timeFormat.format(rs.getTimestamp("arrivalTime")));
-                
-                routeInfo.setPrice(rs.getDouble("basePrice"));
-                
-                // Получение доступных мест - для упрощения используем фиксированное значение
-                routeInfo.setAvailableSeats(calculateAvailableSeats(rs.getString("id")));
-                
-                routes.add(routeInfo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    RowCounter.add(1);
+                    RouteInfo routeInfo = new RouteInfo();
+                    routeInfo.setId(rs.getString("id"));
+                    routeInfo.setDepartureStation(rs.getString("departureStation"));
+                    routeInfo.setArrivalStation(rs.getString("arrivalStation"));
+                    routeInfo.setDepartureCity(rs.getString("departureCity"));
+                    routeInfo.setArrivalCity(rs.getString("arrivalCity"));
+                    routeInfo.setTrainNumber(rs.getString("trainNumber"));
+                    
+                    // Форматируем даты/время для отображения
+                    SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+                    routeInfo.setDepartureTime(timeFormat.format(rs.getTimestamp("departureTime")));
+                    routeInfo.setArrivalTime(timeFormat.format(rs.getTimestamp("arrivalTime")));
+                    
+                    routeInfo.setPrice(rs.getDouble("basePrice"));
+                    
+                    routeInfo.setAvailableSeats(rs.getInt("availableSeats"));
+                    
+                    routes.add(routeInfo);
+                }
             }
         } catch (SQLException e) {
             logger.error("Error searching routes: {}", e.getMessage());
@@ -213,63 +470,47 @@ public class DataProviderPSQL {
         return routes;
     }
     
-    /**
-     * Расчет доступных мест для маршрута
-     * @param routeId идентификатор маршрута
-     * @return количество доступных мест
-     */
-    private int calculateAvailableSeats(String routeId) {
-        try {
-            // Реальный запрос для подсчета мест
-            String sql = "SELECT COUNT(*) FROM seats s " +
-                         "JOIN wagons w ON s.wagonId = w.id " + 
-                         "JOIN trains t ON w.trainId = t.id " +
-                         "JOIN routes r ON r.trainId = t.id " +
-                         "WHERE r.id = ? AND s.isAvailable = true";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, routeId);
-            ResultSet rs = ps.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException e) {
-            logger.error("Error calculating available seats: {}", e.getMessage());
-        }
-        
-        // Если возникла ошибка, возвращаем примерное значение
-        return 50;
-    }
-    
     /**
      * Создание билета
      * @param ticket объект билета
      * @return успешность операции
      */
+    @Override
     public boolean createTicket(Ticket ticket) {
         if (ticket == null) {
             return false;
         }
         
         String sql = Constants.insertTicket;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, ticket.getId());
-            ps.setString(2, ticket.getUserId());
-            ps.setString(3, ticket.getRouteId());
-            ps.setString(4, ticket.getSeatId());
-            ps.setTimestamp(5, new java.sql.Timestamp(ticket.getBookingDate().getTime()));
-            ps.setString(6, ticket.getStatus().toString());
-            ps.setDouble(7, ticket.getPrice());
-            
-            int affectedRows = ps.executeUpdate();
-            
-            // Если билет создан, обновляем доступность места
-            if (affectedRows > 0) {
-                updateSeatAvailability(ticket.getSeatId(), false);
+        try (Connection connection = getConnection()) {
+            // Бронирование места и создание билета выполняются в одной транзакции
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                if (!claimRouteSeat(connection, ticket.getRouteId(), ticket.getSeatId())) {
+                    connection.rollback();
+                    logger.error("Seat {} is already taken on route {}", ticket.getSeatId(), ticket.getRouteId());
+                    return false;
+                }
+                
+                ps.setString(1, ticket.getId());
+                ps.setString(2, ticket.getUserId());
+                ps.setString(3, ticket.getRouteId());
+                ps.setString(4, ticket.getSeatId());
+                ps.setTimestamp(5, new java.sql.Timestamp(ticket.getBookingDate().getTime()));
+                ps.setString(6, ticket.getStatus().toString());
+                ps.setDouble(7, ticket.getPrice());
+                
+                int affectedRows = ps.executeUpdate();
+                if (affectedRows == 0) {
+                    connection.rollback();
+                    return false;
+                }
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
-            
-            return affectedRows > 0;
         } catch (SQLException e) {
             logger.error("Error creating ticket: {}", e.getMessage());
             return false;
@@ -277,21 +518,36 @@ public class DataProviderPSQL {
     }
     
     /**
-     * Обновление доступности места
+     * Бронирование места на маршруте одним условным запросом: место занимается,
+     * только если на этом маршруте оно свободно. Места на разных маршрутах одного
+     * поезда бронируются независимо
+     * @param connection соединение с базой данных
+     * @param routeId идентификатор маршрута
      * @param seatId идентификатор места
-     * @param isAvailable доступность
-     * @return успешность операции
+     * @return было ли место свободно и занято этим запросом
+     * @throws SQLException
      */
-    private boolean updateSeatAvailability(String seatId, boolean isAvailable) {
-        String sql = Constants.updateSeatAvailability;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setBoolean(1, isAvailable);
+    private boolean claimRouteSeat(Connection connection, String routeId, String seatId) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(Constants.claimRouteSeat)) {
+            ps.setString(1, routeId);
             ps.setString(2, seatId);
-            int affectedRows = ps.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            logger.error("Error updating seat availability: {}", e.getMessage());
-            return false;
+            return ps.executeUpdate() > 0;
+        }
+    }
+    
+    /**
+     * Освобождение места на маршруте
+     * @param connection соединение с базой данных
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     * @return было ли место занято
+     * @throws SQLException
+     */
+    private boolean releaseRouteSeat(Connection connection, String routeId, String seatId) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(Constants.releaseRouteSeat)) {
+            ps.setString(1, routeId);
+            ps.setString(2, seatId);
+            return ps.executeUpdate() > 0;
         }
     }
     
@@ -301,25 +557,40 @@ public class DataProviderPSQL {
      * @return объект билета
      * @throws SQLException
      */
+    @Override
     public Ticket readTicket(String id) throws SQLException {
+        try (Connection connection = getConnection()) {
+            return readTicket(connection, id);
+        }
+    }
+    
+    /**
+     * Получение билета по ID в рамках переданного соединения
+     * @param connection соединение с базой данных
+     * @param id идентификатор билета
+     * @return объект билета
+     * @throws SQLException
+     */
+    private Ticket readTicket(Connection connection, String id) throws SQLException {
         String sql = Constants.readTicket;
         Ticket ticket = new Ticket();
         
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, id);
-            ResultSet rs = ps.executeQuery();
-            
-            if (rs.next()) {
-                ticket.setId(rs.getString("id"));
-                ticket.setUserId(rs.getString("userId"));
-                ticket.setRouteId(rs.getString("routeId"));
-                ticket.setSeatId(rs.getString("seatId"));
-                ticket.setBookingDate(rs.getTimestamp("bookingDate"));
-                ticket.setStatus(Status.valueOf(rs.getString("status")));
-                ticket.setPrice(rs.getDouble("price"));
-                return ticket;
-            } else {
-                throw new SQLException("Cannot find ticket with id " + id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    RowCounter.add(1);
+                    ticket.setId(rs.getString("id"));
+                    ticket.setUserId(rs.getString("userId"));
+                    ticket.setRouteId(rs.getString("routeId"));
+                    ticket.setSeatId(rs.getString("seatId"));
+                    ticket.setBookingDate(rs.getTimestamp("bookingDate"));
+                    ticket.setStatus(Status.valueOf(rs.getString("status")));
+                    ticket.setPrice(rs.getDouble("price"));
+                    return ticket;
+                } else {
+                    throw new SQLException("Cannot find ticket with id " + id);
+                }
             }
         } catch (SQLException e) {
             logger.error("Error reading ticket: {}", e.getMessage());
@@ -333,25 +604,91 @@ public class DataProviderPSQL {
      * @param status новый статус
      * @return успешность операции
      */
+    @Override
     public boolean updateTicketStatus(String ticketId, Status status) {
+        return changeTicketStatus(ticketId, allowedSources(status), status);
+    }
+
+    /**
+     * Обновление статуса билета, находящегося в ожидаемом статусе
+     * @param ticketId идентификатор билета
+     * @param expected ожидаемый текущий статус
+     * @param status новый статус
+     * @return успешность операции
+     */
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status expected, Status status) {
+        return changeTicketStatus(ticketId, expected.canChangeTo(status)
+                ? Collections.singletonList(expected) : Collections.emptyList(), status);
+    }
+
+    private boolean changeTicketStatus(String ticketId, List<Status> from, Status status) {
+        try (Connection connection = getConnection()) {
+            // Смена статуса и освобождение места при отмене выполняются в одной транзакции
+            connection.setAutoCommit(false);
+            boolean updated = updateTicketStatus(connection, ticketId, from, status);
+            if (updated) {
+                connection.commit();
+            } else {
+                connection.rollback();
+            }
+            return updated;
+        } catch (SQLException e) {
+            logger.error("Error updating ticket status: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Статусы, из которых допустим переход в заданный
+     * @param status новый статус
+     * @return допустимые текущие статусы
+     */
+    private static List<Status> allowedSources(Status status) {
+        List<Status> allowed = new ArrayList<>();
+        for (Status current : Status.values()) {
+            if (current.canChangeTo(status)) {
+                allowed.add(current);
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Обновление статуса билета в рамках переданного соединения
+     * @param connection соединение с базой данных
+     * @param ticketId идентификатор билета
+     * @param from статусы, из которых допустим переход
+     * @param status новый статус
+     * @return успешность операции
+     */
+    private boolean updateTicketStatus(Connection connection, String ticketId, List<Status> from, Status status) {
+        if (from.isEmpty()) {
+            return false;
+        }
+        List<String> allowed = new ArrayList<>();
+        for (Status current : from) {
+            allowed.add(current.toString());
+        }
         String sql = Constants.updateTicketStatus;
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, status.toString());
             ps.setString(2, ticketId);
+            ps.setArray(3, connection.createArrayOf("varchar", allowed.toArray()));
             
-            int affectedRows = ps.executeUpdate();
-            
-            // Если билет отменен, освобождаем место
-            if (affectedRows > 0 && status == Status.CANCELED) {
-                try {
-                    Ticket ticket = readTicket(ticketId);
-                    updateSeatAvailability(ticket.getSeatId(), true);
-                } catch (SQLException e) {
-                    logger.error("Error freeing seat: {}", e.getMessage());
+            // Строку меняет только один из параллельных запросов: остальные после снятия
+            // блокировки строки видят уже новый статус и ничего не обновляют
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                RowCounter.add(1);
+                // Место освобождается только тем запросом, который действительно отменил билет
+                if (status == Status.CANCELED) {
+                    releaseRouteSeat(connection, rs.getString("routeId"), rs.getString("seatId"));
                 }
+                return true;
             }
-            
-            return affectedRows > 0;
         } catch (SQLException e) {
             logger.error("Error updating ticket status: {}", e.getMessage());
             return false;
@@ -363,24 +700,27 @@ public class DataProviderPSQL {
      * @param userId идентификатор пользователя
      * @return список билетов
      */
+    @Override
     public List<Ticket> getUserTickets(String userId) {
         List<Ticket> tickets = new ArrayList<>();
         String sql = Constants.getUserTickets;
         
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, userId);
-            ResultSet rs = ps.executeQuery();
-            
-            while (rs.next()) {
-                Ticket ticket = new Ticket();
-                ticket.setId(rs.getString("id"));
-                ticket.setUserId(rs.getString("userId"));
-                ticket.setRouteId(rs.getString("routeId"));
-                ticket.setSeatId(rs.getString("seatId"));
-                ticket.setBookingDate(rs.getTimestamp("bookingDate"));
-                ticket.setStatus(Status.valueOf(rs.getString("status")));
-                ticket.setPrice(rs.getDouble("price"));
-                tickets.add(ticket);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    RowCounter.add(1);
+                    Ticket ticket = new Ticket();
+                    ticket.setId(rs.getString("id"));
+                    ticket.setUserId(rs.getString("userId"));
+                    ticket.setRouteId(rs.getString("routeId"));
+                    ticket.setSeatId(rs.getString("seatId"));
+                    ticket.setBookingDate(rs.getTimestamp("bookingDate"));
+                    ticket.setStatus(Status.valueOf(rs.getString("status")));
+                    ticket.setPrice(rs.getDouble("price"));
+                    tickets.add(ticket);
+                }
             }
         } catch (SQLException e) {
             logger.error("Error getting user tickets: {}", e.getMessage());
@@ -390,74 +730,229 @@ public class DataProviderPSQL {
     }
     
     /**
-     * Создание транзакции оплаты
+     * Обход всех билетов с заданным статусом. Строки читаются курсором порциями,
+     * поэтому результат не загружается в память целиком
+     * @param status статус билета
+     * @param action обработчик билета
+     * @throws SQLException
+     */
+    @Override
+    public void forEachTicketWithStatus(Status status, Consumer<Ticket> action) throws SQLException {
+        try (Connection connection = getConnection()) {
+            // Драйвер PostgreSQL читает курсором только вне режима автоподтверждения
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(Constants.getTicketsByStatus)) {
+                ps.setString(1, status.toString());
+                ps.setFetchSize(Constants.ticketFetchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        RowCounter.add(1);
+                        Ticket ticket = new Ticket();
+                        ticket.setId(rs.getString("id"));
+                        ticket.setUserId(rs.getString("userId"));
+                        ticket.setRouteId(rs.getString("routeId"));
+                        ticket.setSeatId(rs.getString("seatId"));
+                        ticket.setBookingDate(rs.getTimestamp("bookingDate"));
+                        ticket.setStatus(status);
+                        ticket.setPrice(rs.getDouble("price"));
+                        action.accept(ticket);
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Error reading tickets by status: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Получение билетов пользователя вместе с информацией о маршрутах и местах одним запросом.
+     * Количество свободных мест в маршрутах не заполняется
+     * @param userId идентификатор пользователя
+     * @return список билетов с деталями
+     */
+    @Override
+    public List<TicketDetails> getUserTicketsWithRouteDetails(String userId) {
+        List<TicketDetails> result = new ArrayList<>();
+        String sql = Constants.getUserTicketsWithRouteDetails;
+        
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+                while (rs.next()) {
+                    RowCounter.add(1);
+                    Ticket ticket = new Ticket();
+                    ticket.setId(rs.getString("id"));
+                    ticket.setUserId(rs.getString("userId"));
+                    ticket.setRouteId(rs.getString("routeId"));
+                    ticket.setSeatId(rs.getString("seatId"));
+                    ticket.setBookingDate(rs.getTimestamp("bookingDate"));
+                    ticket.setStatus(Status.valueOf(rs.getString("status")));
+                    ticket.setPrice(rs.getDouble("price"));
+                    
+                    RouteInfo routeInfo = new RouteInfo();
+                    routeInfo.setId(ticket.getRouteId());
+                    routeInfo.setDepartureStation(rs.getString("departureStation"));
+                    routeInfo.setArrivalStation(rs.getString("arrivalStation"));
+                    routeInfo.setDepartureCity(rs.getString("departureCity"));
+                    routeInfo.setArrivalCity(rs.getString("arrivalCity"));
+                    routeInfo.setTrainNumber(rs.getString("trainNumber"));
+                    routeInfo.setDepartureTime(timeFormat.format(rs.getTimestamp("departureTime")));
+                    routeInfo.setArrivalTime(timeFormat.format(rs.getTimestamp("arrivalTime")));
+                    routeInfo.setPrice(rs.getDouble("basePrice"));
+                    
+                    TicketDetails details = new TicketDetails();
+                    details.setTicket(ticket);
+                    details.setRoute(routeInfo);
+                    details.setWagonNumber(rs.getString("wagonNumber") != null ? rs.getString("wagonNumber") : "");
+                    details.setSeatNumber(rs.getString("seatNumber") != null ? rs.getString("seatNumber") : "");
+                    result.add(details);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error getting user tickets with route details: {}", e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Создание транзакции оплаты и перевод забронированного билета в статус PAID
      * @param transaction объект транзакции
-     * @return успешность операции
+     * @return успешность операции; false, если билет не в статусе BOOKED
      */
+    @Override
     public boolean createTransaction(Transaction transaction) {
         if (transaction == null) {
             return false;
         }
         
         String sql = Constants.insertTransaction;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, transaction.getId());
-            ps.setString(2, transaction.getTicketId());
-            ps.setTimestamp(3, new java.sql.Timestamp(transaction.getDate().getTime()));
-            ps.setDouble(4, transaction.getAmount());
-            ps.setString(5, transaction.getPaymentMethod());
-            
-            int affectedRows = ps.executeUpdate();
-            
-            // Если транзакция создана, обновляем статус билета на PAID
-            if (affectedRows > 0) {
-                updateTicketStatus(transaction.getTicketId(), Status.PAID);
+        try (Connection connection = getConnection()) {
+            // Транзакция оплаты и смена статуса билета фиксируются вместе
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, transaction.getId());
+                ps.setString(2, transaction.getTicketId());
+                ps.setTimestamp(3, new java.sql.Timestamp(transaction.getDate().getTime()));
+                ps.setDouble(4, transaction.getAmount());
+                ps.setString(5, transaction.getPaymentMethod());
+                
+                int affectedRows = ps.executeUpdate();
+                
+                // Оплачивается только забронированный билет, иначе запись транзакции откатывается
+                if (affectedRows == 0 || !updateTicketStatus(connection, transaction.getTicketId(),
+                        Collections.singletonList(Status.BOOKED), Status.PAID)) {
+                    connection.rollback();
+                    return false;
+                }
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
-            
-            return affectedRows > 0;
         } catch (SQLException e) {
             logger.error("Error creating transaction: {}", e.getMessage());
             return false;
         }
     }
     
+    /**
+     * Бронирование места с немедленной оплатой. Занятие места, создание оплаченного билета
+     * и запись транзакции выполняются одним запросом в одной транзакции базы данных.
+     * При конфликте сериализации или взаимной блокировке транзакция повторяется
+     * до {@link Constants#bookingMaxAttempts} раз
+     * @param ticket объект билета
+     * @param transaction объект транзакции оплаты этого билета
+     * @return успешность операции; false, если место уже занято
+     */
+    @Override
+    public boolean bookAndPay(Ticket ticket, Transaction transaction) {
+        if (ticket == null || transaction == null) {
+            return false;
+        }
+        
+        String sql = Constants.bookAndPay;
+        for (int attempt = 1; ; attempt++) {
+            try (Connection connection = getConnection()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setString(1, ticket.getRouteId());
+                    ps.setString(2, ticket.getSeatId());
+                    ps.setString(3, ticket.getId());
+                    ps.setString(4, ticket.getUserId());
+                    ps.setTimestamp(5, new java.sql.Timestamp(ticket.getBookingDate().getTime()));
+                    ps.setString(6, Status.PAID.toString());
+                    ps.setDouble(7, ticket.getPrice());
+                    ps.setString(8, transaction.getId());
+                    ps.setTimestamp(9, new java.sql.Timestamp(transaction.getDate().getTime()));
+                    ps.setDouble(10, transaction.getAmount());
+                    ps.setString(11, transaction.getPaymentMethod());
+                    
+                    int affectedRows = ps.executeUpdate();
+                    if (affectedRows == 0) {
+                        connection.rollback();
+                        logger.error("Seat {} is already taken on route {}", ticket.getSeatId(), ticket.getRouteId());
+                        return false;
+                    }
+                    connection.commit();
+                    ticket.setStatus(Status.PAID);
+                    transaction.setTicketId(ticket.getId());
+                    return true;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                boolean retryable = SERIALIZATION_FAILURE.equals(e.getSQLState())
+                        || DEADLOCK_DETECTED.equals(e.getSQLState());
+                if (!retryable || attempt >= Constants.bookingMaxAttempts) {
+                    logger.error("Error booking ticket: {}", e.getMessage());
+                    return false;
+                }
+                logger.debug("Retrying booking after {} (attempt {})", e.getSQLState(), attempt);
+            }
+        }
+    }
+    
     /**
      * Получение деталей для билета (маршрут, станции, поезд)
      * @param routeId идентификатор маршрута
      * @return информация о маршруте для билета
      */
+    @Override
     public RouteInfo getRouteDetails(String routeId) {
         RouteInfo routeInfo = new RouteInfo();
         
-        try {
-            String sql = "SELECT r.id, ds.name as departureStation, ds.city as departureCity, " +
-                         "as.name as arrivalStation, as.city as arrivalCity, " +
-                         "t.number as trainNumber, r.departureTime, r.arrivalTime, r.basePrice " +
-                         "FROM routes r " +
-                         "JOIN stations ds ON r.departureStationId = ds.id " +
-                         "JOIN stations as ON r.arrivalStationId = as.id " +
-                         "JOIN trains t ON r.trainId = t.id " +
-                         "WHERE r.id = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        String sql = Constants.readRouteDetails;
+        
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, routeId);
             
-            ResultSet rs = ps.executeQuery();
-            
-            if (rs.next()) {
-                routeInfo.setId(rs.getString("id"));
-                routeInfo.setDepartureStation(rs.getString("departureStation"));
-                routeInfo.setArrivalStation(rs.getString("arrivalStation"));
-                routeInfo.setDepartureCity(rs.getString("departureCity"));
-                routeInfo.setArrivalCity(rs.getString("arrivalCity"));
-                routeInfo.setTrainNumber(rs.getString("trainNumber"));
-                
-                // Форматируем даты/время для отображения
-                SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-                routeInfo.setDepartureTime(timeFormat.format(rs.getTimestamp("departureTime")));
-                routeInfo.setArrivalTime(timeFormat.format(rs.getTimestamp("arrivalTime")));
-                
-                routeInfo.setPrice(rs.getDouble("basePrice"));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    RowCounter.add(1);
+                    routeInfo.setId(rs.getString("id"));
+                    routeInfo.setDepartureStation(rs.getString("departureStation"));
+                    routeInfo.setArrivalStation(rs.getString("arrivalStation"));
+                    routeInfo.setDepartureCity(rs.getString("departureCity"));
+                    routeInfo.setArrivalCity(rs.getString("arrivalCity"));
+                    routeInfo.setTrainNumber(rs.getString("trainNumber"));
+                    
+                    // Форматируем даты/время для отображения
+                    SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+                    routeInfo.setDepartureTime(timeFormat.format(rs.getTimestamp("departureTime")));
+                    routeInfo.setArrivalTime(timeFormat.format(rs.getTimestamp("arrivalTime")));
+                    
+                    routeInfo.setPrice(rs.getDouble("basePrice"));
+                }
             }
         } catch (SQLException e) {
             logger.error("Error getting route details: {}", e.getMessage());
@@ -471,36 +966,71 @@ public class DataProviderPSQL {
      * @param routeId идентификатор маршрута
      * @return список доступных мест
      */
+    @Override
     public List<Seat> getAvailableSeats(String routeId) {
         List<Seat> seats = new ArrayList<>();
         
-        try {
-            String sql = "SELECT s.id, s.wagonId, s.number, s.isAvailable, s.priceMultiplier, w.number as wagonNumber, w.type as wagonType " +
-                         "FROM seats s " +
-                         "JOIN wagons w ON s.wagonId = w.id " + 
-                         "JOIN trains t ON w.trainId = t.id " +
-                         "JOIN routes r ON r.trainId = t.id " +
-                         "WHERE r.id = ? AND s.isAvailable = true " +
-                         "ORDER BY w.number, s.number";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        String sql = "SELECT s.id, s.wagonId, s.number, s.isAvailable, s.priceMultiplier, w.number as wagonNumber, w.type as wagonType " +
+                     "FROM seats s " +
+                     "JOIN wagons w ON s.wagonId = w.id " + 
+                     "JOIN trains t ON w.trainId = t.id " +
+                     "JOIN routes r ON r.trainId = t.id " +
+                     "WHERE r.id = ? AND s.isAvailable = true " +
+                     "AND NOT EXISTS (SELECT 1 FROM route_seats rs WHERE rs.routeId = r.id " +
+                     "AND rs.seatId = s.id AND rs.state <> 'FREE') " +
+                     "ORDER BY w.number, s.number";
+        
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, routeId);
             
-            ResultSet rs = ps.executeQuery();
-            
-            while (rs.next()) {
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    RowCounter.add(1);
+                    Seat seat = new Seat();
+                    seat.setId(rs.getString("id"));
+                    seat.setWagonId(rs.getString("wagonId"));
+                    seat.setNumber(rs.getString("number"));
+                    seat.setAvailable(rs.getBoolean("isAvailable"));
+                    seat.setPriceMultiplier(rs.getDouble("priceMultiplier"));
+                    seats.add(seat);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error getting available seats: {}", e.getMessage());
+        }
+        
+        return seats;
+    }
+
+    /**
+     * Чтение места по ID
+     * @param id идентификатор места
+     * @return объект места или null, если место не найдено
+     * @throws SQLException
+     */
+    @Override
+    public Seat readSeat(String id) throws SQLException {
+        String sql = Constants.readSeat;
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                RowCounter.add(1);
                 Seat seat = new Seat();
                 seat.setId(rs.getString("id"));
                 seat.setWagonId(rs.getString("wagonId"));
                 seat.setNumber(rs.getString("number"));
                 seat.setAvailable(rs.getBoolean("isAvailable"));
                 seat.setPriceMultiplier(rs.getDouble("priceMultiplier"));
-                seats.add(seat);
+                return seat;
             }
         } catch (SQLException e) {
-            logger.error("Error getting available seats: {}", e.getMessage());
+            logger.error(e.getMessage());
+            throw e;
         }
-        
-        return seats;
     }
 }
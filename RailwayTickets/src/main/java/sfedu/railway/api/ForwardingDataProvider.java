@@ -0,0 +1,132 @@
+package sfedu.railway.api;
+
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Status;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Провайдер данных, передающий все вызовы другому провайдеру.
+ * Декораторы (кеширование, метрики) наследуются от него и переопределяют
+ * только нужные методы
+ */
+public abstract class ForwardingDataProvider implements IDataProvider {
+
+    protected final IDataProvider delegate;
+
+    protected ForwardingDataProvider(IDataProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void initDataSource() throws Exception {
+        delegate.initDataSource();
+    }
+
+    @Override
+    public boolean createUser(User user) throws Exception {
+        return delegate.createUser(user);
+    }
+
+    @Override
+    public User readUser(String id) throws Exception {
+        return delegate.readUser(id);
+    }
+
+    @Override
+    public User authenticateUser(String email, String password) throws Exception {
+        return delegate.authenticateUser(email, password);
+    }
+
+    @Override
+    public boolean updateUser(User user) throws Exception {
+        return delegate.updateUser(user);
+    }
+
+    @Override
+    public boolean deleteUser(String id) throws Exception {
+        return delegate.deleteUser(id);
+    }
+
+    @Override
+    public boolean createRoute(Route route) throws Exception {
+        return delegate.createRoute(route);
+    }
+
+    @Override
+    public Route readRoute(String id) throws Exception {
+        return delegate.readRoute(id);
+    }
+
+    @Override
+    public List<RouteInfo> searchRoutes(String departureCity, String arrivalCity, Date date) throws Exception {
+        return delegate.searchRoutes(departureCity, arrivalCity, date);
+    }
+
+    @Override
+    public RouteInfo getRouteDetails(String routeId) throws Exception {
+        return delegate.getRouteDetails(routeId);
+    }
+
+    @Override
+    public List<Seat> getAvailableSeats(String routeId) throws Exception {
+        return delegate.getAvailableSeats(routeId);
+    }
+
+    @Override
+    public Seat readSeat(String id) throws Exception {
+        return delegate.readSeat(id);
+    }
+
+    @Override
+    public boolean createTicket(Ticket ticket) throws Exception {
+        return delegate.createTicket(ticket);
+    }
+
+    @Override
+    public Ticket readTicket(String id) throws Exception {
+        return delegate.readTicket(id);
+    }
+
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status status) throws Exception {
+        return delegate.updateTicketStatus(ticketId, status);
+    }
+
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status expected, Status status) throws Exception {
+        return delegate.updateTicketStatus(ticketId, expected, status);
+    }
+
+    @Override
+    public List<Ticket> getUserTickets(String userId) throws Exception {
+        return delegate.getUserTickets(userId);
+    }
+
+    @Override
+    public void forEachTicketWithStatus(Status status, Consumer<Ticket> action) throws Exception {
+        delegate.forEachTicketWithStatus(status, action);
+    }
+
+    @Override
+    public List<TicketDetails> getUserTicketsWithRouteDetails(String userId) throws Exception {
+        return delegate.getUserTicketsWithRouteDetails(userId);
+    }
+
+    @Override
+    public boolean createTransaction(Transaction transaction) throws Exception {
+        return delegate.createTransaction(transaction);
+    }
+
+    @Override
+    public boolean bookAndPay(Ticket ticket, Transaction transaction) throws Exception {
+        return delegate.bookAndPay(ticket, transaction);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -1,8 +1,203 @@
 package sfedu.railway.api;
 
-public interface IDataProvider<T> {
-    void saveRecord(T record);
-    void deleteRecord(String id);
-    T getRecordById(String id);
-    void initDataSource();
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Status;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Провайдер данных приложения. Реализации хранят данные в PostgreSQL или CSV файлах
+ * и выбираются один раз через {@link DataProviderFactory}
+ */
+public interface IDataProvider extends AutoCloseable {
+
+    /**
+     * Подготовка источника данных к работе
+     * @throws Exception
+     */
+    void initDataSource() throws Exception;
+
+    /**
+     * Создание пользователя
+     * @param user объект пользователя
+     * @return успешность операции
+     * @throws Exception
+     */
+    boolean createUser(User user) throws Exception;
+
+    /**
+     * Чтение пользователя по ID
+     * @param id идентификатор пользователя
+     * @return объект пользователя
+     * @throws Exception если пользователь не найден
+     */
+    User readUser(String id) throws Exception;
+
+    /**
+     * Поиск пользователя по email и паролю
+     * @param email почта пользователя
+     * @param password пароль пользователя
+     * @return объект пользователя
+     * @throws Exception если аутентификация не удалась
+     */
+    User authenticateUser(String email, String password) throws Exception;
+
+    /**
+     * Обновление данных пользователя
+     * @param user объект пользователя с обновленными данными
+     * @return успешность операции
+     * @throws Exception
+     */
+    boolean updateUser(User user) throws Exception;
+
+    /**
+     * Удаление пользователя
+     * @param id идентификатор пользователя
+     * @return успешность операции
+     * @throws Exception
+     */
+    boolean deleteUser(String id) throws Exception;
+
+    /**
+     * Создание маршрута
+     * @param route объект маршрута
+     * @return успешность операции
+     * @throws Exception
+     */
+    boolean createRoute(Route route) throws Exception;
+
+    /**
+     * Чтение маршрута по ID
+     * @param id идентификатор маршрута
+     * @return объект маршрута
+     * @throws Exception если маршрут не найден
+     */
+    Route readRoute(String id) throws Exception;
+
+    /**
+     * Поиск маршрутов с определенными параметрами
+     * @param departureCity город отправления
+     * @param arrivalCity город прибытия
+     * @param date дата отправления
+     * @return список информации о маршрутах
+     * @throws Exception
+     */
+    List<RouteInfo> searchRoutes(String departureCity, String arrivalCity, Date date) throws Exception;
+
+    /**
+     * Получение деталей для билета (маршрут, станции, поезд)
+     * @param routeId идентификатор маршрута
+     * @return информация о маршруте для билета
+     * @throws Exception
+     */
+    RouteInfo getRouteDetails(String routeId) throws Exception;
+
+    /**
+     * Получение доступных мест для маршрута
+     * @param routeId идентификатор маршрута
+     * @return список доступных мест
+     * @throws Exception
+     */
+    List<Seat> getAvailableSeats(String routeId) throws Exception;
+
+    /**
+     * Чтение места по ID
+     * @param id идентификатор места
+     * @return объект места или null, если место не найдено
+     * @throws Exception
+     */
+    Seat readSeat(String id) throws Exception;
+
+    /**
+     * Создание билета с бронированием места на маршруте
+     * @param ticket объект билета
+     * @return успешность операции; false, если место уже занято
+     * @throws Exception
+     */
+    boolean createTicket(Ticket ticket) throws Exception;
+
+    /**
+     * Чтение билета по ID
+     * @param id идентификатор билета
+     * @return объект билета
+     * @throws Exception если билет не найден
+     */
+    Ticket readTicket(String id) throws Exception;
+
+    /**
+     * Обновление статуса билета. Проверка текущего статуса и запись нового выполняются атомарно:
+     * допустимы только переходы {@link Status#canChangeTo}, поэтому повторная отмена не освобождает
+     * место второй раз, а отмененный билет не может стать оплаченным.
+     * При отмене место на маршруте освобождается
+     * @param ticketId идентификатор билета
+     * @param status новый статус
+     * @return успешность операции; false, если билета нет или переход из текущего статуса недопустим
+     * @throws Exception
+     */
+    boolean updateTicketStatus(String ticketId, Status status) throws Exception;
+
+    /**
+     * Обновление статуса билета, только если билет находится в ожидаемом статусе.
+     * Проверка и запись выполняются атомарно, как в {@link #updateTicketStatus(String, Status)}:
+     * например, отмена истекшей брони не затронет билет, оплаченный перед самой отменой
+     * @param ticketId идентификатор билета
+     * @param expected ожидаемый текущий статус
+     * @param status новый статус
+     * @return успешность операции; false, если билета нет, его статус отличается от ожидаемого
+     * или переход недопустим
+     * @throws Exception
+     */
+    boolean updateTicketStatus(String ticketId, Status expected, Status status) throws Exception;
+
+    /**
+     * Получение билетов пользователя
+     * @param userId идентификатор пользователя
+     * @return список билетов
+     * @throws Exception
+     */
+    List<Ticket> getUserTickets(String userId) throws Exception;
+
+    /**
+     * Обход всех билетов с заданным статусом без накопления списка
+     * @param status статус билета
+     * @param action обработчик билета
+     * @throws Exception
+     */
+    void forEachTicketWithStatus(Status status, Consumer<Ticket> action) throws Exception;
+
+    /**
+     * Получение билетов пользователя вместе с информацией о маршрутах и местах
+     * за постоянное число обращений к хранилищу, независимо от количества билетов.
+     * Количество свободных мест в маршрутах не заполняется
+     * @param userId идентификатор пользователя
+     * @return список билетов с деталями
+     * @throws Exception
+     */
+    List<TicketDetails> getUserTicketsWithRouteDetails(String userId) throws Exception;
+
+    /**
+     * Создание транзакции оплаты и перевод билета из статуса BOOKED в статус PAID.
+     * Если билет уже не забронирован (например, бронь истекла), транзакция не сохраняется
+     * @param transaction объект транзакции
+     * @return успешность операции; false, если билет не в статусе BOOKED
+     * @throws Exception
+     */
+    boolean createTransaction(Transaction transaction) throws Exception;
+
+    /**
+     * Бронирование места с немедленной оплатой
+     * @param ticket объект билета
+     * @param transaction объект транзакции оплаты этого билета
+     * @return успешность операции; false, если место уже занято
+     * @throws Exception
+     */
+    boolean bookAndPay(Ticket ticket, Transaction transaction) throws Exception;
+
+    /**
+     * Освобождение ресурсов источника данных
+     */
+    @Override
+    void close();
 }
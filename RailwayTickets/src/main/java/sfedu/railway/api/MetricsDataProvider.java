@@ -0,0 +1,162 @@
+package sfedu.railway.api;
+
+import sfedu.railway.metrics.MetricsRegistry;
+import sfedu.railway.metrics.RowCounter;
+import sfedu.railway.metrics.Timer;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Status;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Провайдер данных, собирающий метрики каждого вызова: время выполнения и количество ошибок
+ * (таймер prefix.метод), количество строк, прочитанных из хранилища за вызов
+ * (гистограмма prefix.метод.rows) и количество выполняющихся вызовов (датчик prefix.inFlight).
+ * Строки считаются по {@link RowCounter}, поэтому учитываются только чтения в потоке вызова.
+ */
+public class MetricsDataProvider extends ForwardingDataProvider {
+
+    private final MetricsRegistry registry;
+    private final String prefix;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param delegate провайдер-источник данных
+     * @param registry реестр метрик
+     * @param prefix префикс имен метрик
+     */
+    public MetricsDataProvider(IDataProvider delegate, MetricsRegistry registry, String prefix) {
+        super(delegate);
+        this.registry = registry;
+        this.prefix = prefix;
+        registry.gauge(prefix + ".inFlight", inFlight::get);
+    }
+
+    @Override
+    public void initDataSource() throws Exception {
+        measure("initDataSource", () -> {
+            delegate.initDataSource();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean createUser(User user) throws Exception {
+        return measure("createUser", () -> delegate.createUser(user));
+    }
+
+    @Override
+    public User readUser(String id) throws Exception {
+        return measure("readUser", () -> delegate.readUser(id));
+    }
+
+    @Override
+    public User authenticateUser(String email, String password) throws Exception {
+        return measure("authenticateUser", () -> delegate.authenticateUser(email, password));
+    }
+
+    @Override
+    public boolean updateUser(User user) throws Exception {
+        return measure("updateUser", () -> delegate.updateUser(user));
+    }
+
+    @Override
+    public boolean deleteUser(String id) throws Exception {
+        return measure("deleteUser", () -> delegate.deleteUser(id));
+    }
+
+    @Override
+    public boolean createRoute(Route route) throws Exception {
+        return measure("createRoute", () -> delegate.createRoute(route));
+    }
+
+    @Override
+    public Route readRoute(String id) throws Exception {
+        return measure("readRoute", () -> delegate.readRoute(id));
+    }
+
+    @Override
+    public List<RouteInfo> searchRoutes(String departureCity, String arrivalCity, Date date) throws Exception {
+        return measure("searchRoutes", () -> delegate.searchRoutes(departureCity, arrivalCity, date));
+    }
+
+    @Override
+    public RouteInfo getRouteDetails(String routeId) throws Exception {
+        return measure("getRouteDetails", () -> delegate.getRouteDetails(routeId));
+    }
+
+    @Override
+    public List<Seat> getAvailableSeats(String routeId) throws Exception {
+        return measure("getAvailableSeats", () -> delegate.getAvailableSeats(routeId));
+    }
+
+    @Override
+    public Seat readSeat(String id) throws Exception {
+        return measure("readSeat", () -> delegate.readSeat(id));
+    }
+
+    @Override
+    public boolean createTicket(Ticket ticket) throws Exception {
+        return measure("createTicket", () -> delegate.createTicket(ticket));
+    }
+
+    @Override
+    public Ticket readTicket(String id) throws Exception {
+        return measure("readTicket", () -> delegate.readTicket(id));
+    }
+
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status status) throws Exception {
+        return measure("updateTicketStatus", () -> delegate.updateTicketStatus(ticketId, status));
+    }
+
+    @Override
+    public boolean updateTicketStatus(String ticketId, Status expected, Status status) throws Exception {
+        return measure("updateTicketStatus", () -> delegate.updateTicketStatus(ticketId, expected, status));
+    }
+
+    @Override
+    public List<Ticket> getUserTickets(String userId) throws Exception {
+        return measure("getUserTickets", () -> delegate.getUserTickets(userId));
+    }
+
+    @Override
+    public void forEachTicketWithStatus(Status status, Consumer<Ticket> action) throws Exception {
+        measure("forEachTicketWithStatus", () -> {
+            delegate.forEachTicketWithStatus(status, action);
+            return null;
+        });
+    }
+
+    @Override
+    public List<TicketDetails> getUserTicketsWithRouteDetails(String userId) throws Exception {
+        return measure("getUserTicketsWithRouteDetails", () -> delegate.getUserTicketsWithRouteDetails(userId));
+    }
+
+    @Override
+    public boolean createTransaction(Transaction transaction) throws Exception {
+        return measure("createTransaction", () -> delegate.createTransaction(transaction));
+    }
+
+    @Override
+    public boolean bookAndPay(Ticket ticket, Transaction transaction) throws Exception {
+        return measure("bookAndPay", () -> delegate.bookAndPay(ticket, transaction));
+    }
+
+    private <T> T measure(String method, Callable<T> call) throws Exception {
+        String name = prefix + "." + method;
+        Timer timer = registry.timer(name);
+        long rowsBefore = RowCounter.current();
+        inFlight.incrementAndGet();
+        try {
+            return timer.time(call);
+        } finally {
+            inFlight.decrementAndGet();
+            registry.histogram(name + ".rows").record(RowCounter.current() - rowsBefore);
+        }
+    }
+}
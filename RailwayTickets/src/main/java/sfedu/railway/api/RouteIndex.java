@@ -0,0 +1,75 @@
+package sfedu.railway.api;
+
+import java.util.*;
+
+/**
+ * Индекс маршрутов по дате отправления и нормализованным городам отправления и прибытия.
+ * Поиск на заданную дату просматривает только маршруты этого дня, а внутри дня -
+ * только различные пары городов, поэтому объем работы не зависит от глубины истории.
+ */
+public class RouteIndex {
+
+    private final Map<String, Map<String, Map<String, List<Entry>>>> byDay = new HashMap<>();
+    private long sequence = 0;
+
+    /**
+     * Добавление маршрута в индекс
+     * @param day дата отправления в формате yyyy-MM-dd
+     * @param departureCity город отправления
+     * @param arrivalCity город прибытия
+     * @param routeRow строка маршрута
+     */
+    public void add(String day, String departureCity, String arrivalCity, String[] routeRow) {
+        byDay.computeIfAbsent(day, key -> new HashMap<>())
+                .computeIfAbsent(normalize(departureCity), key -> new HashMap<>())
+                .computeIfAbsent(normalize(arrivalCity), key -> new ArrayList<>())
+                .add(new Entry(sequence++, routeRow));
+    }
+
+    /**
+     * Поиск маршрутов дня, города которых содержат заданные подстроки
+     * @param day дата отправления в формате yyyy-MM-dd
+     * @param departureCity часть названия города отправления
+     * @param arrivalCity часть названия города прибытия
+     * @return строки маршрутов в порядке их добавления
+     */
+    public List<String[]> find(String day, String departureCity, String arrivalCity) {
+        Map<String, Map<String, List<Entry>>> dayRoutes = byDay.get(day);
+        if (dayRoutes == null) {
+            return Collections.emptyList();
+        }
+        String departureFilter = normalize(departureCity);
+        String arrivalFilter = normalize(arrivalCity);
+        List<Entry> found = new ArrayList<>();
+        for (Map.Entry<String, Map<String, List<Entry>>> departure : dayRoutes.entrySet()) {
+            if (!departure.getKey().contains(departureFilter)) {
+                continue;
+            }
+            for (Map.Entry<String, List<Entry>> arrival : departure.getValue().entrySet()) {
+                if (arrival.getKey().contains(arrivalFilter)) {
+                    found.addAll(arrival.getValue());
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(entry -> entry.sequence));
+        List<String[]> rows = new ArrayList<>(found.size());
+        for (Entry entry : found) {
+            rows.add(entry.routeRow);
+        }
+        return rows;
+    }
+
+    private static String normalize(String city) {
+        return city.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        final long sequence;
+        final String[] routeRow;
+
+        Entry(long sequence, String[] routeRow) {
+            this.sequence = sequence;
+            this.routeRow = routeRow;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package sfedu.railway.api;
+
+import com.opencsv.exceptions.CsvException;
+import sfedu.railway.inventory.*;
+import sfedu.railway.models.RouteInfo;
+import sfedu.railway.storage.*;
+
+import java.io.IOException;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Поиск маршрутов по CSV таблицам через хеш-соединения.
+ * Кандидаты берутся из {@link RouteIndex} по дате и городам, станции и поезда
+ * находятся по идентификатору, количество свободных мест берется из битовых карт
+ * {@link SeatInventory}, которые строятся один раз на маршрут и обновляются при бронировании.
+ * Поиски выполняются параллельно: индекс маршрутов защищен блокировкой чтения-записи,
+ * запись берется только для перестроения индекса и добавления маршрута.
+ */
+public class RouteSearchEngine {
+
+    private final CsvStore store;
+
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private RouteIndex routeIndex;
+    private long routesGeneration = -1;
+    private long stationsGeneration = -1;
+
+    private final SeatInventory seatInventory;
+    // Поколения вагонов, мест и состояний мест, по которым построены карты мест
+    private volatile long[] seatGenerations = {-1, -1, -1};
+
+    public RouteSearchEngine(CsvStore store) {
+        this.store = store;
+        this.seatInventory = new SeatInventory(new SeatInventory.Loader() {
+            @Override
+            public TrainSeatLayout loadLayout(String trainId) throws Exception {
+                TrainSeatLayout.Builder builder = new TrainSeatLayout.Builder(store.ids());
+                for (String[] wagonRow : store.wagons().findBy(CsvStore.WAGON_TRAIN_ID, trainId)) {
+                    builder.wagon();
+                    for (String[] seatRow : store.seats().findBy(CsvStore.SEAT_WAGON_ID, wagonRow[0])) {
+                        builder.seat(seatRow[0], seatRow[3].equals("true"));
+                    }
+                }
+                return builder.build();
+            }
+
+            @Override
+            public Collection<String> loadTakenSeats(String routeId) throws Exception {
+                return store.seatStates().bookedSeats(routeId);
+            }
+        });
+    }
+
+    /**
+     * Поиск маршрутов с определенными параметрами
+     * @param departureCity город отправления
+     * @param arrivalCity город прибытия
+     * @param date дата отправления
+     * @return список информации о маршрутах
+     * @throws IOException
+     * @throws CsvException
+     * @throws ParseException
+     */
+    public List<RouteInfo> search(String departureCity, String arrivalCity, Date date)
+            throws IOException, CsvException, ParseException {
+        List<RouteInfo> routes = new ArrayList<>();
+
+        SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+        String searchDate = new SimpleDateFormat("yyyy-MM-dd").format(date);
+
+        for (String[] routeRow : findRoutes(searchDate, departureCity, arrivalCity)) {
+            String[] departureStation = store.stations().findById(routeRow[1]);
+            String[] arrivalStation = store.stations().findById(routeRow[2]);
+            String trainId = routeRow[3];
+            String[] train = store.trains().findById(trainId);
+
+            RouteInfo routeInfo = new RouteInfo();
+            routeInfo.setId(routeRow[0]);
+            routeInfo.setDepartureStation(departureStation != null ? departureStation[1] : "");
+            routeInfo.setArrivalStation(arrivalStation != null ? arrivalStation[1] : "");
+            routeInfo.setDepartureCity(departureStation != null ? departureStation[2] : "");
+            routeInfo.setArrivalCity(arrivalStation != null ? arrivalStation[2] : "");
+            routeInfo.setTrainNumber(train != null ? train[1] : "");
+            routeInfo.setDepartureTime(timeFormat.format(dateTimeFormat.parse(routeRow[4])));
+            routeInfo.setArrivalTime(timeFormat.format(dateTimeFormat.parse(routeRow[5])));
+            routeInfo.setPrice(Double.parseDouble(routeRow[6]));
+
+            routeInfo.setAvailableSeats(countAvailableSeats(routeRow[0], trainId));
+
+            routes.add(routeInfo);
+        }
+        return routes;
+    }
+
+    /**
+     * Добавление созданного маршрута в индекс поиска.
+     * Если таблицы маршрутов или станций были перечитаны с диска, индекс будет
+     * перестроен при следующем поиске и уже будет содержать этот маршрут.
+     * @param routeRow строка маршрута
+     * @throws IOException
+     * @throws CsvException
+     * @throws ParseException
+     */
+    public void addRoute(String[] routeRow) throws IOException, CsvException, ParseException {
+        indexLock.writeLock().lock();
+        try {
+            if (!isIndexFresh()) {
+                routeIndex = null;
+                return;
+            }
+            addToIndex(routeIndex, routeRow, new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"), new SimpleDateFormat("yyyy-MM-dd"));
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Подсчет свободных мест на маршруте
+     * @param routeId идентификатор маршрута
+     * @param trainId идентификатор поезда маршрута
+     * @return количество свободных мест
+     * @throws IOException
+     * @throws CsvException
+     */
+    public int countAvailableSeats(String routeId, String trainId) throws IOException, CsvException {
+        return seatMap(routeId, trainId).freeCount();
+    }
+
+    /**
+     * Первые свободные места маршрута в порядке вагонов и мест
+     * @param routeId идентификатор маршрута
+     * @param trainId идентификатор поезда маршрута
+     * @param limit максимальное количество мест
+     * @return идентификаторы свободных мест
+     * @throws IOException
+     * @throws CsvException
+     */
+    public List<String> freeSeatIds(String routeId, String trainId, int limit) throws IOException, CsvException {
+        return seatMap(routeId, trainId).firstFree(limit);
+    }
+
+    /**
+     * Проверка, свободно ли место на маршруте
+     * @param routeId идентификатор маршрута
+     * @param trainId идентификатор поезда маршрута
+     * @param seatId идентификатор места
+     * @return true, если место принадлежит поезду маршрута и свободно
+     * @throws IOException
+     * @throws CsvException
+     */
+    public boolean isSeatFree(String routeId, String trainId, String seatId) throws IOException, CsvException {
+        return seatMap(routeId, trainId).isFree(seatId);
+    }
+
+    /**
+     * Отметить место занятым в карте маршрута
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     */
+    public void seatClaimed(String routeId, String seatId) {
+        seatInventory.seatClaimed(routeId, seatId);
+    }
+
+    /**
+     * Отметить место свободным в карте маршрута
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     */
+    public void seatReleased(String routeId, String seatId) {
+        seatInventory.seatReleased(routeId, seatId);
+    }
+
+    /**
+     * Карта мест маршрута. Если вагоны или места были перечитаны с диска, либо файл
+     * состояний мест изменил другой процесс, все карты строятся заново
+     */
+    private RouteSeatMap seatMap(String routeId, String trainId) throws IOException, CsvException {
+        long[] current = {store.wagons().generation(), store.seats().generation(), store.seatStates().generation()};
+        if (!Arrays.equals(seatGenerations, current)) {
+            synchronized (seatInventory) {
+                if (!Arrays.equals(seatGenerations, current)) {
+                    seatInventory.clear();
+                    seatGenerations = current;
+                }
+            }
+        }
+        try {
+            return seatInventory.routeMap(routeId, trainId);
+        } catch (IOException | CsvException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Строки маршрутов дня по индексу. Актуальный индекс читается под блокировкой чтения,
+     * устаревший перестраивается под блокировкой записи
+     */
+    private List<String[]> findRoutes(String day, String departureCity, String arrivalCity)
+            throws IOException, CsvException, ParseException {
+        indexLock.readLock().lock();
+        try {
+            if (isIndexFresh()) {
+                return routeIndex.find(day, departureCity, arrivalCity);
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        indexLock.writeLock().lock();
+        try {
+            // Индекс мог перестроить другой поток, пока этот ждал блокировки записи
+            if (!isIndexFresh()) {
+                rebuildIndex();
+            }
+            return routeIndex.find(day, departureCity, arrivalCity);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private boolean isIndexFresh() throws IOException, CsvException {
+        return routeIndex != null
+                && routesGeneration == store.routes().generation()
+                && stationsGeneration == store.stations().generation();
+    }
+
+    private void rebuildIndex() throws IOException, CsvException, ParseException {
+        long currentRoutes = store.routes().generation();
+        long currentStations = store.stations().generation();
+        RouteIndex rebuilt = new RouteIndex();
+        SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        for (String[] routeRow : store.routes().rows()) {
+            addToIndex(rebuilt, routeRow, dateTimeFormat, dateFormat);
+        }
+        routeIndex = rebuilt;
+        routesGeneration = currentRoutes;
+        stationsGeneration = currentStations;
+    }
+
+    private void addToIndex(RouteIndex index, String[] routeRow, SimpleDateFormat dateTimeFormat,
+                            SimpleDateFormat dateFormat) throws IOException, CsvException, ParseException {
+        String day = dateFormat.format(dateTimeFormat.parse(routeRow[4]));
+        String[] departureStation = store.stations().findById(routeRow[1]);
+        String[] arrivalStation = store.stations().findById(routeRow[2]);
+        index.add(day,
+                departureStation != null ? departureStation[2] : "",
+                arrivalStation != null ? arrivalStation[2] : "",
+                routeRow);
+    }
+}
@@ -0,0 +1,125 @@
+package sfedu.railway.auth;
+
+import sfedu.railway.cache.LruCache;
+import sfedu.railway.metrics.MetricsRegistry;
+import sfedu.railway.utils.Constants;
+
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.util.Base64;
+
+/**
+ * Проверка учетных данных, общая для провайдеров данных.
+ * Пароли хранятся хешами {@link PasswordHasher}. Успешные проверки запоминаются на короткое
+ * время, поэтому повторный вход с тем же паролем не пересчитывает PBKDF2. Ключ кеша -
+ * SHA-256 от email, сохраненного хеша и пароля, так что сам пароль в памяти не хранится,
+ * а смена пароля делает старые записи недостижимыми. Неудачные попытки ограничиваются
+ * {@link LoginRateLimiter}.
+ */
+public class Authenticator {
+
+    private final PasswordHasher hasher;
+    private final LoginRateLimiter rateLimiter;
+    private final LruCache<String, Boolean> verified;
+
+    public Authenticator() {
+        this(new PasswordHasher(Constants.passwordHashIterations, Constants.passwordSaltBytes),
+                new LoginRateLimiter(Constants.loginMaxFailures, Constants.loginFailureWindowMillis,
+                        Constants.loginCacheMaxSize),
+                new LruCache<>(Constants.loginCacheMaxSize, Constants.loginCacheTtlMillis));
+    }
+
+    public Authenticator(PasswordHasher hasher, LoginRateLimiter rateLimiter, LruCache<String, Boolean> verified) {
+        this.hasher = hasher;
+        this.rateLimiter = rateLimiter;
+        this.verified = verified;
+        verified.registerMetrics(MetricsRegistry.getDefault(), "cache.login");
+    }
+
+    /**
+     * Значение пароля для сохранения. Пароль, совпадающий с уже сохраненным значением
+     * (например, у пользователя, прочитанного из хранилища), остается без изменений, любое
+     * другое значение хешируется. Вид введенного значения не учитывается: строка в формате хеша,
+     * введенная пользователем, тоже хешируется, а не сохраняется как готовый хеш
+     * @param password новое значение пароля
+     * @param current сохраненное значение или null для нового пользователя
+     * @return значение для хранения
+     */
+    public String toStored(String password, String current) {
+        if (password == null || password.equals(current)) {
+            return password;
+        }
+        return hasher.hash(password);
+    }
+
+    /**
+     * Заблокирован ли вход по email из-за неудачных попыток
+     * @param email почта пользователя
+     * @return true, если вход временно запрещен
+     */
+    public boolean isBlocked(String email) {
+        return rateLimiter.isBlocked(email);
+    }
+
+    /**
+     * Проверка пароля пользователя с учетом кеша успешных проверок.
+     * Результат учитывается в ограничении неудачных попыток
+     * @param email почта пользователя
+     * @param password введенный пароль
+     * @param stored сохраненное значение пароля
+     * @return true, если пароль верный
+     */
+    public boolean verify(String email, String password, String stored) {
+        if (password == null || stored == null) {
+            rateLimiter.recordFailure(email);
+            return false;
+        }
+        String key = cacheKey(email, stored, password);
+        if (verified.get(key) != null || hasher.verify(password, stored)) {
+            verified.put(key, Boolean.TRUE);
+            rateLimiter.recordSuccess(email);
+            return true;
+        }
+        rateLimiter.recordFailure(email);
+        return false;
+    }
+
+    /**
+     * Учет попытки входа с неизвестным email
+     * @param email почта пользователя
+     */
+    public void unknownUser(String email) {
+        rateLimiter.recordFailure(email);
+    }
+
+    /**
+     * Нужно ли перехешировать сохраненный пароль после успешного входа
+     * @param stored сохраненное значение пароля
+     * @return true, если пароль хранится открыто или с устаревшими параметрами
+     */
+    public boolean needsRehash(String stored) {
+        return hasher.needsRehash(stored);
+    }
+
+    /**
+     * Новый хеш пароля, прошедшего проверку
+     * @param password пароль
+     * @return значение для хранения
+     */
+    public String rehash(String password) {
+        return hasher.hash(password);
+    }
+
+    private static String cacheKey(String email, String stored, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(email).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(stored.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return Base64.getEncoder().encodeToString(digest.digest(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package sfedu.railway.auth;
+
+import sfedu.railway.cache.LruCache;
+
+import java.util.Locale;
+
+/**
+ * Ограничение частоты неудачных попыток входа для каждого email.
+ * Счетчик неудач создается при первой ошибке и живет одно окно; когда в окне набирается
+ * заданное количество ошибок, вход по этому email отклоняется без проверки пароля
+ * до окончания окна. Количество отслеживаемых адресов ограничено размером кеша.
+ */
+public class LoginRateLimiter {
+
+    private final int maxFailures;
+    private final LruCache<String, int[]> failures;
+
+    /**
+     * @param maxFailures количество неудачных попыток, после которого вход блокируется
+     * @param windowMillis длительность окна в миллисекундах
+     * @param maxTracked максимальное количество отслеживаемых адресов
+     */
+    public LoginRateLimiter(int maxFailures, long windowMillis, int maxTracked) {
+        this.maxFailures = maxFailures;
+        this.failures = new LruCache<>(maxTracked, windowMillis);
+    }
+
+    /**
+     * Заблокирован ли вход по email
+     * @param email почта пользователя
+     * @return true, если в текущем окне исчерпан лимит неудачных попыток
+     */
+    public boolean isBlocked(String email) {
+        int[] counter = failures.get(key(email));
+        synchronized (this) {
+            return counter != null && counter[0] >= maxFailures;
+        }
+    }
+
+    /**
+     * Учет неудачной попытки входа
+     * @param email почта пользователя
+     */
+    public synchronized void recordFailure(String email) {
+        String key = key(email);
+        int[] counter = failures.get(key);
+        if (counter == null) {
+            failures.put(key, new int[]{1});
+        } else {
+            counter[0]++;
+        }
+    }
+
+    /**
+     * Сброс счетчика после успешного входа
+     * @param email почта пользователя
+     */
+    public void recordSuccess(String email) {
+        failures.invalidate(key(email));
+    }
+
+    private static String key(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,117 @@
+package sfedu.railway.auth;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+
+/**
+ * Хеширование паролей через PBKDF2 со случайной солью.
+ * Хеш хранится одной строкой вида {@code pbkdf2$итерации$соль$хеш} (соль и хеш в Base64),
+ * поэтому количество итераций можно увеличивать без потери уже сохраненных паролей.
+ * Значения без префикса считаются паролями, сохраненными до введения хеширования.
+ */
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2";
+    private static final String SEPARATOR = "$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final int saltBytes;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param iterations количество итераций PBKDF2
+     * @param saltBytes длина соли в байтах
+     */
+    public PasswordHasher(int iterations, int saltBytes) {
+        this.iterations = iterations;
+        this.saltBytes = saltBytes;
+    }
+
+    /**
+     * Хеширование пароля с новой солью
+     * @param password пароль
+     * @return строка для хранения
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[saltBytes];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + SEPARATOR + iterations + SEPARATOR + encoder.encodeToString(salt)
+                + SEPARATOR + encoder.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Проверка пароля по сохраненному значению
+     * @param password введенный пароль
+     * @param stored сохраненный хеш или пароль в старом формате
+     * @return true, если пароль верный
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(bytes(password), bytes(stored));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = derive(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Нужно ли пересчитать сохраненное значение: пароль хранится в старом формате
+     * или хеш посчитан с меньшим количеством итераций
+     * @param stored сохраненное значение
+     * @return true, если значение стоит заменить новым хешем
+     */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Является ли значение хешем этого формата
+     * @param stored сохраненное значение
+     * @return true, если значение начинается с префикса хеша
+     */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX + SEPARATOR);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException("Cannot hash password: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
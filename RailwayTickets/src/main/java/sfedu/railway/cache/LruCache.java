@@ -0,0 +1,151 @@
+package sfedu.railway.cache;
+
+import sfedu.railway.metrics.MetricsRegistry;
+
+import java.util.*;
+
+/**
+ * Ограниченный по размеру кеш с вытеснением давно не использованных записей
+ * и ограниченным временем жизни записи. Потокобезопасен.
+ * Чтобы сброс записи, выполненный во время загрузки значения из источника, не терялся,
+ * загрузка запоминает версию ключа ({@link #stamp}) до чтения источника и сохраняет значение
+ * через {@link #putIfUnchanged}. Версии хранятся в фиксированном наборе счетчиков по хешу ключа:
+ * совпадение хешей приводит лишь к лишнему пропуску сохранения.
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public class LruCache<K, V> {
+
+    private static final int VERSION_STRIPES = 1024;
+
+    private final long ttlNanos;
+    private final long[] versions = new long[VERSION_STRIPES];
+    private final Map<K, Entry<V>> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxSize максимальное количество записей
+     * @param ttlMillis время жизни записи в миллисекундах
+     */
+    public LruCache(int maxSize, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        // Порядок доступа: при каждом чтении запись перемещается в конец, вытесняется первая
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Получение значения из кеша
+     * @param key ключ
+     * @return значение или null, если записи нет или ее время жизни истекло
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - entry.createdAt >= ttlNanos) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Сохранение значения в кеше
+     * @param key ключ
+     * @param value значение
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+    }
+
+    /**
+     * Версия ключа для последующего {@link #putIfUnchanged}
+     * @param key ключ
+     * @return текущая версия
+     */
+    public synchronized long stamp(K key) {
+        return versions[stripe(key)];
+    }
+
+    /**
+     * Сохранение значения, если ключ не сбрасывался с момента получения версии
+     * @param key ключ
+     * @param value значение
+     * @param stamp версия ключа, полученная до чтения значения из источника
+     * @return было ли значение сохранено
+     */
+    public synchronized boolean putIfUnchanged(K key, V value, long stamp) {
+        if (versions[stripe(key)] != stamp) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Удаление записи из кеша
+     * @param key ключ
+     */
+    public synchronized void invalidate(K key) {
+        versions[stripe(key)]++;
+        entries.remove(key);
+    }
+
+    /**
+     * Удаление всех записей из кеша
+     */
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions[i]++;
+        }
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * Публикация попаданий, промахов и размера кеша как датчиков реестра метрик
+     * @param registry реестр метрик
+     * @param name префикс имен метрик
+     */
+    public void registerMetrics(MetricsRegistry registry, String name) {
+        registry.gauge(name + ".hits", this::hitCount);
+        registry.gauge(name + ".misses", this::missCount);
+        registry.gauge(name + ".size", this::size);
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long createdAt;
+
+        Entry(V value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
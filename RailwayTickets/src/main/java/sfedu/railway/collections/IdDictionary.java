@@ -0,0 +1,116 @@
+package sfedu.railway.collections;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Словарь идентификаторов: каждому идентификатору назначается постоянный код int
+ * и хранится один экземпляр строки. Внешние ключи в строках таблиц заменяются этим
+ * экземпляром, поэтому одинаковые идентификаторы не дублируются в памяти, а их сравнение
+ * сводится к сравнению ссылок. Индексы в памяти могут хранить коды вместо строк.
+ *
+ * Поиск кода и идентификатора по коду выполняются без блокировок: коды хранятся
+ * в {@link ConcurrentHashMap}, а идентификаторы по кодам - в массиве блоков, который
+ * только дополняется. Блокировка берется лишь при назначении кода новому идентификатору.
+ *
+ * Коды не освобождаются: словарь рассчитан на идентификаторы, которые только добавляются,
+ * и растет на каждый новый идентификатор (в том числе удаленных билетов) до перезапуска
+ * процесса. Словарь хранится только в памяти и при запуске строится заново по текущим данным.
+ */
+public class IdDictionary {
+
+    private static final int NO_CODE = -1;
+    private static final int BLOCK_BITS = 10;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+    // Блоки заполняются до публикации кода в codes, поэтому читатель, получивший код, видит идентификатор
+    private volatile String[][] blocks = new String[1][];
+    private volatile int size;
+
+    /**
+     * Код идентификатора, назначаемый при первом обращении
+     * @param id идентификатор
+     * @return код идентификатора
+     */
+    public int intern(String id) {
+        Integer code = codes.get(id);
+        if (code != null) {
+            return code;
+        }
+        return append(id);
+    }
+
+    /**
+     * Общий экземпляр строки идентификатора
+     * @param id идентификатор
+     * @return экземпляр, хранящийся в словаре, или null для null
+     */
+    public String canonical(String id) {
+        if (id == null) {
+            return null;
+        }
+        return idAt(intern(id));
+    }
+
+    /**
+     * Код уже известного идентификатора
+     * @param id идентификатор
+     * @return код или -1, если идентификатор не встречался
+     */
+    public int code(String id) {
+        if (id == null) {
+            return NO_CODE;
+        }
+        Integer code = codes.get(id);
+        return code != null ? code : NO_CODE;
+    }
+
+    /**
+     * Идентификатор по коду
+     * @param code код идентификатора
+     * @return идентификатор
+     */
+    public String id(int code) {
+        if (code < 0 || code >= size) {
+            throw new IllegalArgumentException("Unknown id code " + code);
+        }
+        return idAt(code);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private String idAt(int code) {
+        return blocks[code >>> BLOCK_BITS][code & (BLOCK_SIZE - 1)];
+    }
+
+    private synchronized int append(String id) {
+        // Повторная проверка: код мог назначить другой поток, пока этот ждал блокировки
+        Integer existing = codes.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        int code = size;
+        int block = code >>> BLOCK_BITS;
+        String[][] current = blocks;
+        if (block == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[block] == null) {
+            current[block] = new String[BLOCK_SIZE];
+        }
+        current[block][code & (BLOCK_SIZE - 1)] = id;
+        blocks = current;
+        size = code + 1;
+        codes.put(id, code);
+        return code;
+    }
+
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,99 @@
+package sfedu.railway.collections;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица int -> int с открытой адресацией без упаковки ключей и значений в объекты.
+ * Ключи должны быть неотрицательными (например, коды {@link IdDictionary}),
+ * отрицательное значение ключа используется как признак пустой ячейки.
+ * Таблица не синхронизирована и не берет блокировок: изменения выполняет владелец
+ * под своей блокировкой, а после публикации (как в раскладке мест поезда) таблица только читается.
+ */
+public class IntIntHashMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize ожидаемое количество элементов
+     */
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Значение по ключу
+     * @param key ключ
+     * @param defaultValue значение, возвращаемое при отсутствии ключа
+     * @return значение или defaultValue
+     */
+    public int get(int key, int defaultValue) {
+        if (key < 0) {
+            return defaultValue;
+        }
+        int slot = slot(key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Добавление или замена значения
+     * @param key неотрицательный ключ
+     * @param value значение
+     */
+    public void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        int slot = slot(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return key >= 0 && keys[slot(key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = IdDictionary.mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
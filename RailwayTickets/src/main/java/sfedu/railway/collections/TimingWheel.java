@@ -0,0 +1,149 @@
+package sfedu.railway.collections;
+
+import java.util.*;
+
+/**
+ * Иерархическое колесо таймеров для идентификаторов с моментом срабатывания.
+ * Колесо из нескольких уровней по 256 ячеек: нулевой уровень делится на шаги,
+ * каждый следующий охватывает в 256 раз больший интервал. При повороте колеса ячейка
+ * верхнего уровня раскладывается по нижним, поэтому добавление и срабатывание стоят O(1)
+ * на запись независимо от их количества. Запись хранится в ячейке как идентификатор и
+ * момент срабатывания в параллельных массивах, без отдельного объекта на каждый таймер.
+ * Отмена таймера не поддерживается: получатель сам проверяет, актуальна ли сработавшая запись.
+ */
+public class TimingWheel {
+
+    private static final int LEVEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << LEVEL_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = 1L << (LEVEL_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    // Записи, срок которых уже наступил к моменту добавления
+    private final Bucket due = new Bucket();
+    // Номер последнего обработанного шага
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis длительность шага в миллисекундах
+     * @param nowMillis текущее время в миллисекундах
+     */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Добавление таймера
+     * @param id идентификатор
+     * @param deadlineMillis момент срабатывания в миллисекундах
+     */
+    public synchronized void add(String id, long deadlineMillis) {
+        place(id, deadlineMillis);
+        size++;
+    }
+
+    /**
+     * Поворот колеса до заданного момента
+     * @param nowMillis текущее время в миллисекундах
+     * @return идентификаторы, срок которых наступил
+     */
+    public synchronized List<String> advance(long nowMillis) {
+        List<String> expired = new ArrayList<>();
+        due.drainTo(expired);
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Ячейки верхних уровней раскладываются, когда младшие разряды шага обнуляются
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (LEVEL_BITS * level)) - 1)) == 0; level++) {
+                Bucket bucket = wheels[level][slot(currentTick, level)];
+                if (bucket != null && bucket.size > 0) {
+                    wheels[level][slot(currentTick, level)] = null;
+                    for (int i = 0; i < bucket.size; i++) {
+                        place(bucket.ids[i], bucket.deadlines[i]);
+                    }
+                }
+            }
+            // Запись со сроком ровно на текущем шаге при раскладке попадает в список наступивших
+            due.drainTo(expired);
+            Bucket bucket = wheels[0][slot(currentTick, 0)];
+            if (bucket != null) {
+                // Ячейка освобождается целиком, чтобы пик броней не удерживал память
+                wheels[0][slot(currentTick, 0)] = null;
+                bucket.drainTo(expired);
+            }
+            // Текущие записи уже разложены по шагам: дальше нет смысла крутить пустое колесо
+            if (size == expired.size()) {
+                currentTick = targetTick;
+            }
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return количество таймеров
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(String id, long deadlineMillis) {
+        // Округление вверх: таймер не должен сработать раньше срока
+        long tick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        long delta = tick - currentTick;
+        if (delta <= 0) {
+            due.add(id, deadlineMillis);
+            return;
+        }
+        if (delta >= MAX_DELTA) {
+            // Слишком далекий срок откладывается в последнюю ячейку и раскладывается повторно
+            tick = currentTick + MAX_DELTA - 1;
+            delta = MAX_DELTA - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (LEVEL_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = slot(tick, level);
+        Bucket bucket = wheels[level][slot];
+        if (bucket == null) {
+            bucket = new Bucket();
+            wheels[level][slot] = bucket;
+        }
+        bucket.add(id, deadlineMillis);
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) (tick >>> (LEVEL_BITS * level)) & (WHEEL_SIZE - 1);
+    }
+
+    /**
+     * Ячейка колеса: растущие параллельные массивы идентификаторов и сроков
+     */
+    private static final class Bucket {
+        private String[] ids = new String[4];
+        private long[] deadlines = new long[4];
+        private int size;
+
+        void add(String id, long deadline) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            ids[size] = id;
+            deadlines[size] = deadline;
+            size++;
+        }
+
+        void drainTo(List<String> target) {
+            for (int i = 0; i < size; i++) {
+                target.add(ids[i]);
+                ids[i] = null;
+            }
+            size = 0;
+        }
+    }
+}
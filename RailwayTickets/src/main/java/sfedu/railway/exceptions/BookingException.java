@@ -0,0 +1,30 @@
+package sfedu.railway.exceptions;
+
+/**
+ * Ошибка операции бронирования, которую можно показать пользователю
+ */
+public class BookingException extends Exception {
+
+    /**
+     * Причина ошибки
+     */
+    public enum Reason {
+        INVALID_REQUEST,
+        UNAUTHORIZED,
+        FORBIDDEN,
+        NOT_FOUND,
+        CONFLICT,
+        UNAVAILABLE
+    }
+
+    private final Reason reason;
+
+    public BookingException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,124 @@
+package sfedu.railway.inventory;
+
+import java.util.*;
+
+/**
+ * Свободные места поезда на одном маршруте: по одной битовой карте long[] на вагон.
+ * Установленный бит означает, что место доступно для продажи и не занято на маршруте.
+ * Количество свободных мест хранится отдельно и поддерживается при каждом изменении.
+ */
+public class RouteSeatMap {
+
+    private final TrainSeatLayout layout;
+    private final long[][] free;
+    private int freeCount;
+
+    /**
+     * @param layout раскладка мест поезда
+     * @param takenSeatIds идентификаторы мест, уже занятых на маршруте
+     */
+    public RouteSeatMap(TrainSeatLayout layout, Collection<String> takenSeatIds) {
+        this.layout = layout;
+        this.free = layout.sellableCopy();
+        for (String seatId : takenSeatIds) {
+            int position = layout.position(seatId);
+            if (position >= 0) {
+                clear(TrainSeatLayout.wagonOf(position), TrainSeatLayout.seatOf(position));
+            }
+        }
+        int count = 0;
+        for (long[] wagon : free) {
+            for (long word : wagon) {
+                count += Long.bitCount(word);
+            }
+        }
+        this.freeCount = count;
+    }
+
+    /**
+     * Количество свободных мест на маршруте
+     * @return количество свободных мест
+     */
+    public synchronized int freeCount() {
+        return freeCount;
+    }
+
+    /**
+     * Проверка, свободно ли место на маршруте
+     * @param seatId идентификатор места
+     * @return true, если место принадлежит поезду маршрута и свободно
+     */
+    public synchronized boolean isFree(String seatId) {
+        int position = layout.position(seatId);
+        return position >= 0 && isSet(TrainSeatLayout.wagonOf(position), TrainSeatLayout.seatOf(position));
+    }
+
+    /**
+     * Первые свободные места в порядке вагонов и мест
+     * @param limit максимальное количество мест
+     * @return идентификаторы свободных мест
+     */
+    public synchronized List<String> firstFree(int limit) {
+        List<String> seats = new ArrayList<>(Math.min(limit, freeCount));
+        for (int wagon = 0; wagon < free.length && seats.size() < limit; wagon++) {
+            long[] words = free[wagon];
+            for (int i = 0; i < words.length && seats.size() < limit; i++) {
+                long word = words[i];
+                while (word != 0 && seats.size() < limit) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    seats.add(layout.seatId(wagon, (i << 6) + bit));
+                    word &= word - 1;
+                }
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * Отметить место занятым
+     * @param seatId идентификатор места
+     * @return было ли место свободно
+     */
+    public synchronized boolean claim(String seatId) {
+        int position = layout.position(seatId);
+        if (position < 0) {
+            return false;
+        }
+        int wagon = TrainSeatLayout.wagonOf(position);
+        int seat = TrainSeatLayout.seatOf(position);
+        if (!isSet(wagon, seat)) {
+            return false;
+        }
+        clear(wagon, seat);
+        freeCount--;
+        return true;
+    }
+
+    /**
+     * Отметить место свободным. Места, выведенные из продажи, остаются недоступными
+     * @param seatId идентификатор места
+     * @return было ли место занято
+     */
+    public synchronized boolean release(String seatId) {
+        int position = layout.position(seatId);
+        if (position < 0) {
+            return false;
+        }
+        int wagon = TrainSeatLayout.wagonOf(position);
+        int seat = TrainSeatLayout.seatOf(position);
+        if (isSet(wagon, seat) || !layout.isSellable(wagon, seat)) {
+            return false;
+        }
+        free[wagon][seat >>> 6] |= 1L << seat;
+        freeCount++;
+        return true;
+    }
+
+    private boolean isSet(int wagon, int seat) {
+        return (free[wagon][seat >>> 6] & (1L << seat)) != 0;
+    }
+
+    private void clear(int wagon, int seat) {
+        free[wagon][seat >>> 6] &= ~(1L << seat);
+    }
+}
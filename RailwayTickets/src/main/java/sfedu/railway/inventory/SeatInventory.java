@@ -0,0 +1,117 @@
+package sfedu.railway.inventory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Карты свободных мест маршрутов, загружаемые из хранилища при первом обращении
+ * и затем обновляемые на месте при бронировании и отмене билетов.
+ * Раскладка мест загружается один раз на поезд и разделяется между его маршрутами.
+ * Карты хранятся в {@link ConcurrentHashMap}: обращения к разным маршрутам не ждут друг друга,
+ * а загрузка карты одного маршрута выполняется один раз. Отметка места на загружаемой
+ * карте ждет окончания загрузки, поэтому изменение не теряется.
+ */
+public class SeatInventory {
+
+    /**
+     * Источник данных для построения карт мест
+     */
+    public interface Loader {
+        /**
+         * Загрузка раскладки мест поезда
+         * @param trainId идентификатор поезда
+         * @return раскладка мест
+         * @throws Exception
+         */
+        TrainSeatLayout loadLayout(String trainId) throws Exception;
+
+        /**
+         * Загрузка мест, занятых на маршруте
+         * @param routeId идентификатор маршрута
+         * @return идентификаторы занятых мест
+         * @throws Exception
+         */
+        Collection<String> loadTakenSeats(String routeId) throws Exception;
+    }
+
+    private final Loader loader;
+    private final ConcurrentMap<String, TrainSeatLayout> layouts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RouteSeatMap> routes = new ConcurrentHashMap<>();
+
+    public SeatInventory(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Карта мест маршрута, загружаемая при первом обращении
+     * @param routeId идентификатор маршрута
+     * @param trainId идентификатор поезда маршрута
+     * @return карта мест
+     * @throws Exception
+     */
+    public RouteSeatMap routeMap(String routeId, String trainId) throws Exception {
+        RouteSeatMap map = routes.get(routeId);
+        if (map != null) {
+            return map;
+        }
+        try {
+            return routes.computeIfAbsent(routeId, key -> {
+                TrainSeatLayout layout = layouts.computeIfAbsent(trainId, train -> load(() -> loader.loadLayout(train)));
+                return new RouteSeatMap(layout, load(() -> loader.loadTakenSeats(key)));
+            });
+        } catch (LoadException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Отметить место занятым, если карта маршрута уже загружена
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     */
+    public void seatClaimed(String routeId, String seatId) {
+        routes.computeIfPresent(routeId, (key, map) -> {
+            map.claim(seatId);
+            return map;
+        });
+    }
+
+    /**
+     * Отметить место свободным, если карта маршрута уже загружена
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     */
+    public void seatReleased(String routeId, String seatId) {
+        routes.computeIfPresent(routeId, (key, map) -> {
+            map.release(seatId);
+            return map;
+        });
+    }
+
+    /**
+     * Сбросить все загруженные карты, чтобы при следующем обращении они были построены заново
+     */
+    public void clear() {
+        layouts.clear();
+        routes.clear();
+    }
+
+    private static <T> T load(Callable<T> call) {
+        try {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LoadException(e);
+        }
+    }
+
+    /**
+     * Проверяемое исключение загрузчика, переданное через {@link ConcurrentHashMap#computeIfAbsent}
+     */
+    private static final class LoadException extends RuntimeException {
+        LoadException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package sfedu.railway.inventory;
+
+import sfedu.railway.collections.*;
+
+import java.util.*;
+
+/**
+ * Расположение мест в вагонах поезда. Каждому месту соответствует бит в битовой
+ * карте своего вагона; карта {@link #sellable} отмечает места, не выведенные из продажи.
+ * Места хранятся кодами из {@link IdDictionary}, а позиции ищутся в {@link IntIntHashMap},
+ * поэтому раскладка не хранит собственных копий строк идентификаторов.
+ * Объект неизменяем и разделяется между картами мест всех маршрутов поезда.
+ */
+public class TrainSeatLayout {
+
+    private final IdDictionary ids;
+    private final int[][] seatCodes;
+    private final long[][] sellable;
+    private final IntIntHashMap positions;
+
+    private TrainSeatLayout(IdDictionary ids, int[][] seatCodes, long[][] sellable, IntIntHashMap positions) {
+        this.ids = ids;
+        this.seatCodes = seatCodes;
+        this.sellable = sellable;
+        this.positions = positions;
+    }
+
+    /**
+     * Количество вагонов
+     * @return количество вагонов
+     */
+    public int wagonCount() {
+        return seatCodes.length;
+    }
+
+    /**
+     * Количество мест в вагоне
+     * @param wagon порядковый номер вагона в раскладке
+     * @return количество мест
+     */
+    public int seatCount(int wagon) {
+        return seatCodes[wagon].length;
+    }
+
+    /**
+     * Идентификатор места по его позиции
+     * @param wagon порядковый номер вагона в раскладке
+     * @param seat порядковый номер места в вагоне
+     * @return идентификатор места
+     */
+    public String seatId(int wagon, int seat) {
+        return ids.id(seatCodes[wagon][seat]);
+    }
+
+    /**
+     * Позиция места в раскладке
+     * @param seatId идентификатор места
+     * @return позиция, закодированная как (вагон << 16) | место, или -1, если места нет в поезде
+     */
+    public int position(String seatId) {
+        return positions.get(ids.code(seatId), -1);
+    }
+
+    /**
+     * Копия битовых карт мест, доступных для продажи
+     * @return битовые карты по вагонам
+     */
+    long[][] sellableCopy() {
+        long[][] copy = new long[sellable.length][];
+        for (int i = 0; i < sellable.length; i++) {
+            copy[i] = sellable[i].clone();
+        }
+        return copy;
+    }
+
+    boolean isSellable(int wagon, int seat) {
+        return (sellable[wagon][seat >>> 6] & (1L << seat)) != 0;
+    }
+
+    static int wagonOf(int position) {
+        return position >>> 16;
+    }
+
+    static int seatOf(int position) {
+        return position & 0xFFFF;
+    }
+
+    /**
+     * Построитель раскладки: вагоны и места добавляются в порядке их отображения
+     */
+    public static class Builder {
+        private final IdDictionary ids;
+        private final List<List<String>> wagons = new ArrayList<>();
+        private final List<BitSet> sellableSeats = new ArrayList<>();
+        private int seatTotal;
+
+        /**
+         * @param ids словарь, в котором регистрируются идентификаторы мест
+         */
+        public Builder(IdDictionary ids) {
+            this.ids = ids;
+        }
+
+        /**
+         * Начать следующий вагон
+         * @return построитель
+         */
+        public Builder wagon() {
+            wagons.add(new ArrayList<>());
+            sellableSeats.add(new BitSet());
+            return this;
+        }
+
+        /**
+         * Добавить место в текущий вагон
+         * @param seatId идентификатор места
+         * @param isSellable доступно ли место для продажи
+         * @return построитель
+         */
+        public Builder seat(String seatId, boolean isSellable) {
+            if (wagons.isEmpty()) {
+                throw new IllegalStateException("Seat added before any wagon");
+            }
+            List<String> seats = wagons.get(wagons.size() - 1);
+            if (seats.size() > 0xFFFF) {
+                throw new IllegalStateException("Too many seats in wagon");
+            }
+            if (isSellable) {
+                sellableSeats.get(sellableSeats.size() - 1).set(seats.size());
+            }
+            seats.add(seatId);
+            seatTotal++;
+            return this;
+        }
+
+        public TrainSeatLayout build() {
+            int[][] seatCodes = new int[wagons.size()][];
+            long[][] sellable = new long[wagons.size()][];
+            IntIntHashMap positions = new IntIntHashMap(seatTotal);
+            for (int wagon = 0; wagon < wagons.size(); wagon++) {
+                List<String> seats = wagons.get(wagon);
+                seatCodes[wagon] = new int[seats.size()];
+                sellable[wagon] = Arrays.copyOf(sellableSeats.get(wagon).toLongArray(), (seats.size() + 63) >>> 6);
+                for (int seat = 0; seat < seats.size(); seat++) {
+                    int code = ids.intern(seats.get(seat));
+                    seatCodes[wagon][seat] = code;
+                    positions.put(code, (wagon << 16) | seat);
+                }
+            }
+            return new TrainSeatLayout(ids, seatCodes, sellable, positions);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package sfedu.railway.metrics;
+
+import java.io.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Поток чтения, добавляющий количество прочитанных байтов к счетчику
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private final LongAdder bytes;
+
+    /**
+     * @param in исходный поток
+     * @param bytes счетчик прочитанных байтов
+     */
+    public CountingInputStream(InputStream in, LongAdder bytes) {
+        super(in);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            bytes.increment();
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            bytes.add(read);
+        }
+        return read;
+    }
+}
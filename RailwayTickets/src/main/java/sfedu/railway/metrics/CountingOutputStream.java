@@ -0,0 +1,34 @@
+package sfedu.railway.metrics;
+
+import java.io.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Поток записи, добавляющий количество записанных байтов к счетчику
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private final LongAdder bytes;
+
+    /**
+     * @param out исходный поток
+     * @param bytes счетчик записанных байтов
+     */
+    public CountingOutputStream(OutputStream out, LongAdder bytes) {
+        super(out);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        out.write(value);
+        bytes.increment();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        // FilterOutputStream по умолчанию пишет побайтно, поэтому массив передается целиком
+        out.write(buffer, offset, length);
+        bytes.add(length);
+    }
+}
@@ -0,0 +1,107 @@
+package sfedu.railway.metrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Гистограмма неотрицательных значений с логарифмическими корзинами.
+ * Значения до 16 хранятся точно, каждая следующая степень двойки делится на 8 равных корзин,
+ * поэтому относительная погрешность перцентилей не превышает 12.5% при фиксированном
+ * объеме памяти (488 счетчиков) на любом диапазоне значений.
+ * Запись не блокирует потоки и может выполняться из нескольких потоков одновременно.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 16;
+    private static final int LINEAR_BITS = 4;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - LINEAR_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Запись значения. Отрицательные значения записываются как 0
+     * @param value значение
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return количество записанных значений
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return среднее значение или 0, если значений нет
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return максимальное значение
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Оценка перцентиля по верхней границе корзины
+     * @param percentile перцентиль от 0 до 100
+     * @return значение, не меньше которого оказались заданная доля записей, или 0, если значений нет
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // Верхняя граница корзины не может превышать фактический максимум
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + subBucket * width;
+        return lower + width - 1;
+    }
+}
@@ -0,0 +1,70 @@
+package sfedu.railway.metrics;
+
+import javax.management.*;
+import java.util.*;
+
+/**
+ * Представление реестра метрик в JMX. Каждое значение снимка реестра доступно
+ * как атрибут только для чтения; набор атрибутов пополняется по мере появления метрик.
+ * Операция dump возвращает все значения одним текстом.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private final MetricsRegistry registry;
+
+    public MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        SortedMap<String, Number> snapshot = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("dump".equals(actionName)) {
+            return MetricsReporter.format(registry.snapshot());
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        registry.snapshot().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(
+                name, value.getClass().getName(), name, true, false, false)));
+        MBeanOperationInfo dump = new MBeanOperationInfo("dump", "All metrics as text",
+                new MBeanParameterInfo[0], String.class.getName(), MBeanOperationInfo.INFO);
+        return new MBeanInfo(MetricsMBean.class.getName(), "Railway tickets metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), new MBeanConstructorInfo[0],
+                new MBeanOperationInfo[]{dump}, new MBeanNotificationInfo[0]);
+    }
+}
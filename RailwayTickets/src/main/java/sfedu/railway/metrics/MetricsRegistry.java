@@ -0,0 +1,113 @@
+package sfedu.railway.metrics;
+
+import org.slf4j.*;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Реестр метрик приложения: счетчики, датчики (значение вычисляется при чтении),
+ * гистограммы и таймеры по именам. Метрика создается при первом обращении к имени,
+ * повторные обращения возвращают ту же метрику, поэтому ссылку на нее можно хранить в поле.
+ * Все метрики читаются одним снимком для JMX и текстового отчета.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @return общий реестр приложения
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Регистрация датчика. Датчик с тем же именем заменяется
+     * @param name имя метрики
+     * @param value функция чтения текущего значения
+     */
+    public void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> new Timer());
+    }
+
+    /**
+     * Текущие значения всех метрик. Гистограмма раскрывается в значения count, mean,
+     * p50, p90, p99 и max, таймер дополнительно в errors; длительности в микросекундах
+     * @return значения по именам в алфавитном порядке
+     */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> {
+            try {
+                Number value = gauge.get();
+                if (value != null) {
+                    values.put(name, value instanceof Double || value instanceof Float
+                            ? (Number) value.doubleValue() : (Number) value.longValue());
+                }
+            } catch (RuntimeException e) {
+                // Датчик закрытого ресурса пропускается до следующего снимка
+                logger.debug("Cannot read gauge {}: {}", name, e.getMessage());
+            }
+        });
+        histograms.forEach((name, histogram) -> putHistogram(values, name, histogram));
+        timers.forEach((name, timer) -> {
+            putHistogram(values, name, timer.getLatency());
+            values.put(name + ".errors", timer.errorCount());
+        });
+        return values;
+    }
+
+    /**
+     * Регистрация реестра в JMX сервере платформы
+     * @param objectName имя MBean
+     * @return true, если MBean зарегистрирован
+     */
+    public boolean registerMBean(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new MetricsMBean(this), name);
+            return true;
+        } catch (JMException e) {
+            logger.error(e.getMessage());
+            return false;
+        }
+    }
+
+    private static void putHistogram(Map<String, Number> values, String name, Histogram histogram) {
+        values.put(name + ".count", histogram.count());
+        values.put(name + ".mean", histogram.mean());
+        values.put(name + ".p50", histogram.percentile(50));
+        values.put(name + ".p90", histogram.percentile(90));
+        values.put(name + ".p99", histogram.percentile(99));
+        values.put(name + ".max", histogram.max());
+    }
+}
@@ -0,0 +1,96 @@
+package sfedu.railway.metrics;
+
+import org.slf4j.*;
+import sfedu.railway.storage.CsvStreams;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Периодическая запись снимка метрик в текстовый файл. Файл каждый раз заменяется целиком,
+ * поэтому в нем всегда последний снимок; отчет не смешивается с выводом консольного меню.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    Logger logger = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private final MetricsRegistry registry;
+    private final Path file;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param registry реестр метрик
+     * @param filePath путь к файлу отчета
+     */
+    public MetricsReporter(MetricsRegistry registry, String filePath) {
+        this.registry = registry;
+        this.file = Paths.get(filePath);
+    }
+
+    /**
+     * Запуск периодической записи отчета
+     * @param intervalMillis период записи в миллисекундах
+     */
+    public void start(long intervalMillis) {
+        timer.scheduleWithFixedDelay(this::dump, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Запись текущего снимка метрик в файл
+     * @return true, если отчет записан
+     */
+    public boolean dump() {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, format(registry.snapshot()).getBytes(StandardCharsets.UTF_8));
+            CsvStreams.moveAtomically(temp, file);
+            return true;
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Текстовое представление снимка: по одной метрике на строку, имена выровнены по ширине
+     * @param snapshot значения метрик по именам
+     * @return текст отчета
+     */
+    public static String format(SortedMap<String, Number> snapshot) {
+        int width = 0;
+        for (String name : snapshot.keySet()) {
+            width = Math.max(width, name.length());
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("# Metrics at ")
+                .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()))
+                .append(", latency in microseconds\n");
+        for (Map.Entry<String, Number> entry : snapshot.entrySet()) {
+            Number value = entry.getValue();
+            text.append(String.format("%-" + width + "s  ", entry.getKey()))
+                    .append(value instanceof Double ? String.format(Locale.ROOT, "%.1f", value.doubleValue()) : value)
+                    .append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Остановка записи. Последний снимок записывается перед остановкой
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        dump();
+    }
+}
@@ -0,0 +1,28 @@
+package sfedu.railway.metrics;
+
+/**
+ * Счетчик строк, прочитанных текущим потоком из хранилища. Хранилища увеличивают его
+ * при каждом чтении строк, а декоратор метрик берет разность до и после вызова,
+ * чтобы получить количество строк, просмотренных одним запросом.
+ */
+public final class RowCounter {
+
+    private static final ThreadLocal<long[]> ROWS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private RowCounter() {
+    }
+
+    /**
+     * @param rows количество прочитанных строк
+     */
+    public static void add(long rows) {
+        ROWS.get()[0] += rows;
+    }
+
+    /**
+     * @return количество строк, прочитанных текущим потоком с момента его запуска
+     */
+    public static long current() {
+        return ROWS.get()[0];
+    }
+}
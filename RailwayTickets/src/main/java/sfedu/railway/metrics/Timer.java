@@ -0,0 +1,47 @@
+package sfedu.railway.metrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Время выполнения операции: гистограмма длительностей в микросекундах
+ * и количество вызовов, завершившихся исключением
+ */
+public class Timer {
+
+    private final Histogram latency = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Выполнение операции с замером времени. Время неудачных вызовов тоже записывается
+     * @param operation операция
+     * @return результат операции
+     * @throws Exception исключение операции
+     */
+    public <T> T time(Callable<T> operation) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return operation.call();
+        } catch (Exception e) {
+            errors.increment();
+            throw e;
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param nanos длительность в наносекундах
+     */
+    public void record(long nanos) {
+        latency.record(nanos / 1000);
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long errorCount() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,16 @@
+package sfedu.railway.models;
+
+import lombok.*;
+
+@Getter
+@Setter
+public class TicketDetails {
+    private Ticket ticket;
+    private RouteInfo route;
+    private String wagonNumber;
+    private String seatNumber;
+    
+    // Билет вместе с информацией о маршруте и месте для отображения истории билетов
+    public TicketDetails() {
+    }
+}
@@ -0,0 +1,21 @@
+package sfedu.railway.payment;
+
+import sfedu.railway.models.Transaction;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Платежный шлюз. Списание выполняется асинхронно: метод сразу возвращает
+ * будущий результат и не занимает вызывающий поток на время ожидания ответа.
+ */
+public interface PaymentGateway {
+
+    /**
+     * Списание суммы транзакции. Идентификатор транзакции служит ключом идемпотентности:
+     * повторный запрос той же транзакции после таймаута не должен списывать деньги второй раз
+     * @param transaction транзакция оплаты
+     * @return true - платеж подтвержден, false - отклонен; исключение означает временный
+     * сбой, после которого запрос можно повторить
+     */
+    CompletableFuture<Boolean> charge(Transaction transaction);
+}
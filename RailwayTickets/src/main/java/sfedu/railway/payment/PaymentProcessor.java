@@ -0,0 +1,206 @@
+package sfedu.railway.payment;
+
+import org.slf4j.*;
+import sfedu.railway.api.IDataProvider;
+import sfedu.railway.exceptions.BookingException;
+import sfedu.railway.exceptions.BookingException.Reason;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Status;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Асинхронная обработка платежей. Запрос на оплату ставится в очередь и сразу возвращает
+ * будущий результат; билет остается забронированным, пока шлюз не подтвердит платеж.
+ * После подтверждения транзакция записывается в источник данных и билет становится оплаченным.
+ * Ответ шлюза ограничен таймаутом, временные сбои повторяются с растущей паузой.
+ * Потоки обработки заняты только отправкой запроса и записью результата,
+ * поэтому задержка шлюза не удерживает ни потоки запросов пользователей, ни собственные потоки.
+ */
+public class PaymentProcessor implements AutoCloseable {
+
+    Logger logger = LoggerFactory.getLogger(PaymentProcessor.class);
+
+    private final IDataProvider dataProvider;
+    private final PaymentGateway gateway;
+    private final int queueSize;
+    private final long timeoutMillis;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryTimer;
+    // Платежи в обработке по идентификатору билета: защищает от двойной оплаты и ограничивает очередь
+    private final Map<String, CompletableFuture<Transaction>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataProvider провайдер данных для записи транзакций
+     * @param gateway платежный шлюз
+     * @param threads количество потоков обработки
+     * @param queueSize максимальное количество платежей в обработке
+     * @param timeoutMillis таймаут ответа шлюза на одну попытку
+     * @param maxAttempts максимальное количество попыток
+     * @param retryDelayMillis пауза перед первым повтором
+     */
+    public PaymentProcessor(IDataProvider dataProvider, PaymentGateway gateway, int threads, int queueSize,
+                            long timeoutMillis, int maxAttempts, long retryDelayMillis) {
+        this.dataProvider = dataProvider;
+        this.gateway = gateway;
+        this.queueSize = queueSize;
+        this.timeoutMillis = timeoutMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+        this.workers = Executors.newFixedThreadPool(threads, daemonThreads("payment"));
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("payment-retry"));
+    }
+
+    /**
+     * Постановка оплаты билета в очередь
+     * @param ticket забронированный билет
+     * @param paymentMethod способ оплаты
+     * @return транзакция, завершающаяся после записи оплаты, или исключение
+     * {@link BookingException}, если платеж отклонен или шлюз недоступен
+     * @throws BookingException если оплата билета уже выполняется или очередь заполнена
+     */
+    public CompletableFuture<Transaction> submit(Ticket ticket, String paymentMethod) throws BookingException {
+        if (pending.size() >= queueSize) {
+            throw new BookingException(Reason.UNAVAILABLE, "Payment queue is full");
+        }
+        CompletableFuture<Transaction> result = new CompletableFuture<>();
+        if (pending.putIfAbsent(ticket.getId(), result) != null) {
+            throw new BookingException(Reason.CONFLICT, "Payment is already in progress for ticket " + ticket.getId());
+        }
+        result.whenComplete((transaction, error) -> pending.remove(ticket.getId(), result));
+        Transaction transaction = new Transaction(ticket.getId(), ticket.getPrice(), paymentMethod);
+        dispatch(() -> attempt(transaction, 1, result), result);
+        return result;
+    }
+
+    /**
+     * Выполняется ли оплата билета
+     * @param ticketId идентификатор билета
+     * @return true, если платеж в очереди или ожидает ответа шлюза
+     */
+    public boolean isPending(String ticketId) {
+        return pending.containsKey(ticketId);
+    }
+
+    /**
+     * Одна попытка списания. Ответ шлюза обрабатывается в потоках обработки,
+     * а не в потоке шлюза
+     */
+    private void attempt(Transaction transaction, int attempt, CompletableFuture<Transaction> result) {
+        CompletableFuture<Boolean> charge;
+        try {
+            charge = gateway.charge(transaction);
+        } catch (RuntimeException e) {
+            charge = CompletableFuture.failedFuture(e);
+        }
+        charge.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((approved, error) ->
+                dispatch(() -> {
+                    if (error != null) {
+                        retry(transaction, attempt, result, error instanceof CompletionException ? error.getCause() : error);
+                    } else if (!Boolean.TRUE.equals(approved)) {
+                        logger.info("Payment {} for ticket {} was declined", transaction.getId(), transaction.getTicketId());
+                        result.completeExceptionally(new BookingException(Reason.CONFLICT,
+                                "Payment was declined for ticket " + transaction.getTicketId()));
+                    } else {
+                        record(transaction, result);
+                    }
+                }, result));
+    }
+
+    private void retry(Transaction transaction, int attempt, CompletableFuture<Transaction> result, Throwable error) {
+        String reason = error instanceof TimeoutException ? "timeout" : error.getMessage();
+        if (attempt >= maxAttempts) {
+            logger.error("Payment {} for ticket {} failed after {} attempts: {}",
+                    transaction.getId(), transaction.getTicketId(), attempt, reason);
+            result.completeExceptionally(new BookingException(Reason.UNAVAILABLE,
+                    "Payment gateway is unavailable for ticket " + transaction.getTicketId()));
+            return;
+        }
+        long delay = retryDelayMillis << (attempt - 1);
+        logger.warn("Payment {} attempt {} failed ({}), retrying in {} ms", transaction.getId(), attempt, reason, delay);
+        try {
+            retryTimer.schedule(() -> dispatch(() -> attempt(transaction, attempt + 1, result), result),
+                    delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new BookingException(Reason.UNAVAILABLE, "Payment processing is stopped"));
+        }
+    }
+
+    /**
+     * Запись подтвержденной транзакции; билет становится оплаченным, если бронь еще действует
+     */
+    private void record(Transaction transaction, CompletableFuture<Transaction> result) {
+        try {
+            Ticket ticket = dataProvider.readTicket(transaction.getTicketId());
+            if (ticket == null || ticket.getStatus() != Status.BOOKED) {
+                // Бронь истекла или отменена, пока шлюз обрабатывал платеж: место могло уйти другому
+                logger.error("Payment {} for ticket {} was charged after the booking ended, refund required",
+                        transaction.getId(), transaction.getTicketId());
+                result.completeExceptionally(new BookingException(Reason.CONFLICT,
+                        "Ticket " + transaction.getTicketId() + " is no longer booked"));
+                return;
+            }
+            if (dataProvider.createTransaction(transaction)) {
+                result.complete(transaction);
+                return;
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+        }
+        logger.error("Payment {} for ticket {} was charged but not recorded", transaction.getId(), transaction.getTicketId());
+        result.completeExceptionally(new BookingException(Reason.UNAVAILABLE,
+                "Payment was not recorded for ticket " + transaction.getTicketId()));
+    }
+
+    private void dispatch(Runnable task, CompletableFuture<Transaction> result) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new BookingException(Reason.UNAVAILABLE, "Payment processing is stopped"));
+        }
+    }
+
+    /**
+     * Остановка обработки. Платежи в обработке дожидаются завершения не дольше
+     * суммарного времени всех попыток
+     */
+    @Override
+    public void close() {
+        try {
+            // Отказ одного платежа не должен прерывать ожидание остальных
+            CompletableFuture.allOf(pending.values().stream()
+                    .map(payment -> payment.handle((transaction, error) -> null))
+                    .toArray(CompletableFuture[]::new))
+                    .get(timeoutMillis * maxAttempts, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Payments still pending on shutdown: {}", pending.size());
+        }
+        retryTimer.shutdownNow();
+        workers.shutdown();
+        if (gateway instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) gateway).close();
+            } catch (Exception e) {
+                logger.error(e.getMessage());
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return new ThreadFactory() {
+            private int counter;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + (++counter));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
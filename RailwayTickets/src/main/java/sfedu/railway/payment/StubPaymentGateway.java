@@ -0,0 +1,38 @@
+package sfedu.railway.payment;
+
+import sfedu.railway.models.Transaction;
+
+import java.util.concurrent.*;
+
+/**
+ * Локальная заглушка платежного шлюза: подтверждает любой платеж с положительной суммой
+ * через заданную задержку. Ожидание реализовано таймером, поэтому потоки не блокируются.
+ */
+public class StubPaymentGateway implements PaymentGateway, AutoCloseable {
+
+    private final long delayMillis;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "payment-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param delayMillis задержка ответа в миллисекундах
+     */
+    public StubPaymentGateway(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> charge(Transaction transaction) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        timer.schedule(() -> result.complete(transaction.getAmount() > 0), delayMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,285 @@
+package sfedu.railway.server;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.*;
+import org.slf4j.*;
+import sfedu.railway.exceptions.BookingException;
+import sfedu.railway.exceptions.BookingException.Reason;
+import sfedu.railway.models.User;
+import sfedu.railway.service.BookingService;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * HTTP сервер с JSON протоколом для одновременной работы многих пользователей.
+ * Запросы обрабатываются ограниченным пулом потоков; когда очередь пула заполнена,
+ * поток приема соединений выполняет запрос сам и тем самым притормаживает прием новых.
+ * Пользователь получает токен при входе и передает его в заголовке
+ * {@code Authorization: Bearer <токен>}.
+ *
+ * <pre>
+ * POST /login                 {"email", "password"} -> {"token", "user"}
+ * POST /logout
+ * GET  /routes?from=&amp;to=&amp;date=yyyy-MM-dd
+ * GET  /routes/{id}/seats
+ * GET  /tickets
+ * POST /tickets               {"routeId", "seatId"}
+ * POST /tickets/{id}/pay      {"paymentMethod"} -> 202, оплата подтверждается асинхронно
+ * POST /tickets/{id}/cancel
+ * </pre>
+ */
+public class BookingServer {
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String BEARER = "Bearer ";
+
+    Logger logger = LoggerFactory.getLogger(BookingServer.class);
+
+    private final BookingService service;
+    private final SessionManager sessions;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService sessionCleaner;
+
+    /**
+     * @param service сервис бронирования
+     * @param sessions хранилище сессий
+     * @param port порт (0 - любой свободный)
+     * @param threads количество потоков обработки запросов
+     * @param queueSize размер очереди запросов
+     * @throws IOException если порт занят
+     */
+    public BookingServer(BookingService service, SessionManager sessions, int port, int threads, int queueSize)
+            throws IOException {
+        this.service = service;
+        this.sessions = sessions;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads("booking-server"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.sessionCleaner = Executors.newSingleThreadScheduledExecutor(daemonThreads("session-cleaner"));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Запуск приема запросов
+     */
+    public void start() {
+        server.start();
+        sessionCleaner.scheduleWithFixedDelay(sessions::evictExpired, 1, 1, TimeUnit.MINUTES);
+        logger.info("Booking server started on port {}", getPort());
+    }
+
+    /**
+     * Остановка сервера с ожиданием завершения текущих запросов
+     * @param delaySeconds максимальное время ожидания в секундах
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        sessionCleaner.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Booking server stopped");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Object result = route(exchange);
+            if (result instanceof Accepted) {
+                respond(exchange, 202, ((Accepted) result).body);
+            } else {
+                respond(exchange, 200, result != null ? result : Collections.emptyMap());
+            }
+        } catch (BookingException e) {
+            respond(exchange, status(e.getReason()), Collections.singletonMap("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Request {} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage());
+            respond(exchange, 500, Collections.singletonMap("error", "Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Выбор операции по методу и пути запроса
+     */
+    private Object route(HttpExchange exchange) throws BookingException, IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        boolean get = "GET".equals(method);
+        boolean post = "POST".equals(method);
+
+        if (post && path.length == 1 && path[0].equals("login")) {
+            Map<String, String> body = body(exchange);
+            User user = service.login(body.get("email"), body.get("password"));
+            Session session = sessions.open(user);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("token", session.getToken());
+            result.put("user", publicUser(user));
+            return result;
+        }
+        if (post && path.length == 1 && path[0].equals("logout")) {
+            sessions.close(token(exchange));
+            return null;
+        }
+        if (get && path.length == 1 && path[0].equals("routes")) {
+            Map<String, String> query = query(exchange.getRequestURI());
+            return service.searchRoutes(query.get("from"), query.get("to"), parseDate(query.get("date")));
+        }
+        if (get && path.length == 3 && path[0].equals("routes") && path[2].equals("seats")) {
+            return service.availableSeats(path[1]);
+        }
+        if (path.length >= 1 && path[0].equals("tickets")) {
+            User user = session(exchange).getUser();
+            if (get && path.length == 1) {
+                return service.userTickets(user);
+            }
+            if (post && path.length == 1) {
+                Map<String, String> body = body(exchange);
+                return service.bookTicket(user, body.get("routeId"), body.get("seatId"));
+            }
+            if (post && path.length == 3 && path[2].equals("pay")) {
+                return new Accepted(service.payTicket(user, path[1], body(exchange).get("paymentMethod")));
+            }
+            if (post && path.length == 3 && path[2].equals("cancel")) {
+                return service.cancelTicket(user, path[1]);
+            }
+        }
+        throw new BookingException(Reason.NOT_FOUND, "Unknown operation " + method + " " + exchange.getRequestURI().getPath());
+    }
+
+    private Session session(HttpExchange exchange) throws BookingException {
+        Session session = sessions.find(token(exchange));
+        if (session == null) {
+            throw new BookingException(Reason.UNAUTHORIZED, "Login required");
+        }
+        return session;
+    }
+
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith(BEARER) ? header.substring(BEARER.length()).trim() : null;
+    }
+
+    private Map<String, String> body(HttpExchange exchange) throws BookingException {
+        try (InputStream input = exchange.getRequestBody()) {
+            byte[] bytes = input.readAllBytes();
+            if (bytes.length == 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> body = mapper.readValue(bytes, new TypeReference<Map<String, String>>() {});
+            return body != null ? body : Collections.emptyMap();
+        } catch (IOException e) {
+            throw new BookingException(Reason.INVALID_REQUEST, "Malformed JSON body");
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static Date parseDate(String value) throws BookingException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setLenient(false);
+            return format.parse(value);
+        } catch (ParseException e) {
+            throw new BookingException(Reason.INVALID_REQUEST, "Date must be in yyyy-MM-dd format");
+        }
+    }
+
+    /**
+     * Данные пользователя для ответа, без хеша пароля
+     */
+    private static Map<String, String> publicUser(User user) {
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("id", user.getId());
+        result.put("surname", user.getSurname());
+        result.put("name", user.getName());
+        result.put("phoneNumber", user.getPhoneNumber());
+        result.put("email", user.getEmail());
+        return result;
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static int status(Reason reason) {
+        switch (reason) {
+            case INVALID_REQUEST:
+                return 400;
+            case UNAUTHORIZED:
+                return 401;
+            case FORBIDDEN:
+                return 403;
+            case NOT_FOUND:
+                return 404;
+            case CONFLICT:
+                return 409;
+            default:
+                return 503;
+        }
+    }
+
+    /**
+     * Ответ на операцию, принятую к асинхронному выполнению
+     */
+    private static final class Accepted {
+        private final Object body;
+
+        private Accepted(Object body) {
+            this.body = body;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return new ThreadFactory() {
+            private int counter;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + (++counter));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package sfedu.railway.server;
+
+import sfedu.railway.models.User;
+
+/**
+ * Сессия пользователя сервера: токен доступа и вошедший пользователь.
+ * Заменяет статическое поле текущего пользователя консольного приложения,
+ * поэтому у каждого подключенного клиента свое состояние.
+ */
+public class Session {
+
+    private final String token;
+    private final User user;
+    private volatile long lastAccess;
+
+    public Session(String token, User user, long now) {
+        this.token = token;
+        this.user = user;
+        this.lastAccess = now;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch(long now) {
+        lastAccess = now;
+    }
+}
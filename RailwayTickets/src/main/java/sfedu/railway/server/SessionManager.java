@@ -0,0 +1,87 @@
+package sfedu.railway.server;
+
+import sfedu.railway.models.User;
+
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище сессий сервера. Токены - случайные 256-битные строки, сессия истекает,
+ * если к ней не обращались дольше заданного времени. Истекшие сессии удаляются
+ * при обращении и при периодической очистке.
+ */
+public class SessionManager {
+
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMillis время жизни сессии без обращений в миллисекундах
+     */
+    public SessionManager(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Создание сессии для вошедшего пользователя
+     * @param user пользователь
+     * @return новая сессия
+     */
+    public Session open(User user) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, user, System.currentTimeMillis());
+        sessions.put(token, session);
+        return session;
+    }
+
+    /**
+     * Поиск действующей сессии по токену с продлением ее времени жизни
+     * @param token токен доступа
+     * @return сессия или null, если токен неизвестен или сессия истекла
+     */
+    public Session find(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.getLastAccess() > ttlMillis) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.touch(now);
+        return session;
+    }
+
+    /**
+     * Завершение сессии
+     * @param token токен доступа
+     */
+    public void close(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Удаление истекших сессий
+     * @return количество удаленных сессий
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = sessions.size();
+        sessions.values().removeIf(session -> now - session.getLastAccess() > ttlMillis);
+        return before - sessions.size();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,231 @@
+package sfedu.railway.service;
+
+import org.slf4j.*;
+import sfedu.railway.api.IDataProvider;
+import sfedu.railway.exceptions.BookingException;
+import sfedu.railway.exceptions.BookingException.Reason;
+import sfedu.railway.models.*;
+import sfedu.railway.payment.PaymentProcessor;
+import sfedu.railway.utils.Status;
+
+import java.util.*;
+
+/**
+ * Операции пользователя над билетами без привязки к способу взаимодействия.
+ * Сервис не хранит состояния: текущий пользователь передается в каждый вызов,
+ * поэтому один экземпляр обслуживает любое количество одновременных сессий.
+ * Провайдер данных должен быть потокобезопасным.
+ */
+public class BookingService {
+
+    Logger logger = LoggerFactory.getLogger(BookingService.class);
+
+    private final IDataProvider dataProvider;
+    private final PaymentProcessor payments;
+    private final HoldExpiryScheduler holds;
+
+    /**
+     * @param dataProvider провайдер данных
+     * @param payments обработчик платежей
+     * @param holds отмена неоплаченных броней
+     */
+    public BookingService(IDataProvider dataProvider, PaymentProcessor payments, HoldExpiryScheduler holds) {
+        this.dataProvider = dataProvider;
+        this.payments = payments;
+        this.holds = holds;
+    }
+
+    /**
+     * Вход пользователя
+     * @param email почта пользователя
+     * @param password пароль
+     * @return пользователь
+     * @throws BookingException если email или пароль неверны
+     */
+    public User login(String email, String password) throws BookingException {
+        require(email, "email");
+        require(password, "password");
+        try {
+            User user = dataProvider.authenticateUser(email, password);
+            if (user == null || user.getId() == null) {
+                throw new BookingException(Reason.UNAUTHORIZED, "Invalid email or password");
+            }
+            return user;
+        } catch (BookingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BookingException(Reason.UNAUTHORIZED, "Invalid email or password");
+        }
+    }
+
+    /**
+     * Поиск маршрутов
+     * @param departureCity город отправления
+     * @param arrivalCity город прибытия
+     * @param date дата отправления
+     * @return найденные маршруты
+     * @throws BookingException
+     */
+    public List<RouteInfo> searchRoutes(String departureCity, String arrivalCity, Date date) throws BookingException {
+        require(departureCity, "from");
+        require(arrivalCity, "to");
+        if (date == null) {
+            throw new BookingException(Reason.INVALID_REQUEST, "Missing date");
+        }
+        try {
+            return dataProvider.searchRoutes(departureCity, arrivalCity, date);
+        } catch (Exception e) {
+            throw unavailable("search routes", e);
+        }
+    }
+
+    /**
+     * Свободные места маршрута
+     * @param routeId идентификатор маршрута
+     * @return свободные места
+     * @throws BookingException
+     */
+    public List<Seat> availableSeats(String routeId) throws BookingException {
+        require(routeId, "routeId");
+        try {
+            return dataProvider.getAvailableSeats(routeId);
+        } catch (Exception e) {
+            throw unavailable("load seats", e);
+        }
+    }
+
+    /**
+     * Бронирование места. Цена считается по базовой цене маршрута и коэффициенту места.
+     * Неоплаченная бронь отменяется автоматически по истечении срока брони
+     * @param user текущий пользователь
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     * @return забронированный билет
+     * @throws BookingException если маршрут не найден или место уже занято
+     */
+    public Ticket bookTicket(User user, String routeId, String seatId) throws BookingException {
+        require(routeId, "routeId");
+        require(seatId, "seatId");
+        try {
+            RouteInfo route = dataProvider.getRouteDetails(routeId);
+            if (route == null || route.getId() == null) {
+                throw new BookingException(Reason.NOT_FOUND, "Route not found: " + routeId);
+            }
+            // Место читается только ради коэффициента цены: свободно ли оно на маршруте
+            // и относится ли к поезду маршрута, атомарно решает createTicket
+            Seat seat = dataProvider.readSeat(seatId);
+            if (seat == null) {
+                throw new BookingException(Reason.NOT_FOUND, "Seat not found: " + seatId);
+            }
+            Ticket ticket = new Ticket(user.getId(), routeId, seatId, route.getPrice() * seat.getPriceMultiplier());
+            if (!dataProvider.createTicket(ticket)) {
+                throw new BookingException(Reason.CONFLICT, "Seat is not available: " + seatId);
+            }
+            holds.hold(ticket);
+            return ticket;
+        } catch (BookingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw unavailable("book ticket", e);
+        }
+    }
+
+    /**
+     * Билеты пользователя с информацией о маршрутах
+     * @param user текущий пользователь
+     * @return билеты пользователя
+     * @throws BookingException
+     */
+    public List<TicketDetails> userTickets(User user) throws BookingException {
+        try {
+            return dataProvider.getUserTicketsWithRouteDetails(user.getId());
+        } catch (Exception e) {
+            throw unavailable("load tickets", e);
+        }
+    }
+
+    /**
+     * Оплата забронированного билета пользователя. Платеж ставится в очередь, и метод
+     * возвращается сразу; билет станет оплаченным после подтверждения платежным шлюзом
+     * @param user текущий пользователь
+     * @param ticketId идентификатор билета
+     * @param paymentMethod способ оплаты
+     * @return билет, ожидающий подтверждения оплаты
+     * @throws BookingException если билет не найден, принадлежит другому пользователю,
+     * уже не ожидает оплаты или его оплата уже выполняется
+     */
+    public Ticket payTicket(User user, String ticketId, String paymentMethod) throws BookingException {
+        require(paymentMethod, "paymentMethod");
+        Ticket ticket = ownTicket(user, ticketId);
+        if (ticket.getStatus() != Status.BOOKED) {
+            throw new BookingException(Reason.CONFLICT, "Ticket is " + ticket.getStatus());
+        }
+        payments.submit(ticket, paymentMethod).whenComplete((transaction, error) -> {
+            if (error == null) {
+                logger.info("Ticket {} paid, transaction {}", ticketId, transaction.getId());
+            }
+        });
+        return ticket;
+    }
+
+    /**
+     * Отмена билета пользователя
+     * @param user текущий пользователь
+     * @param ticketId идентификатор билета
+     * @return отмененный билет
+     * @throws BookingException если билет не найден, принадлежит другому пользователю, уже отменен
+     * или ожидает подтверждения оплаты
+     */
+    public Ticket cancelTicket(User user, String ticketId) throws BookingException {
+        Ticket ticket = ownTicket(user, ticketId);
+        if (ticket.getStatus() == Status.CANCELED) {
+            throw new BookingException(Reason.CONFLICT, "Ticket is already canceled");
+        }
+        if (payments.isPending(ticketId)) {
+            // Иначе подтвержденный после отмены платеж снова сделает билет оплаченным
+            throw new BookingException(Reason.CONFLICT, "Payment is in progress for ticket " + ticketId);
+        }
+        try {
+            if (!dataProvider.updateTicketStatus(ticketId, Status.CANCELED)) {
+                throw new BookingException(Reason.CONFLICT, "Ticket was not canceled: " + ticketId);
+            }
+            ticket.setStatus(Status.CANCELED);
+            return ticket;
+        } catch (BookingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw unavailable("cancel ticket", e);
+        }
+    }
+
+    /**
+     * Билет, принадлежащий пользователю
+     */
+    private Ticket ownTicket(User user, String ticketId) throws BookingException {
+        require(ticketId, "ticketId");
+        Ticket ticket;
+        try {
+            ticket = dataProvider.readTicket(ticketId);
+        } catch (Exception e) {
+            throw new BookingException(Reason.NOT_FOUND, "Ticket not found: " + ticketId);
+        }
+        if (ticket == null || ticket.getUserId() == null) {
+            throw new BookingException(Reason.NOT_FOUND, "Ticket not found: " + ticketId);
+        }
+        if (!ticket.getUserId().equals(user.getId())) {
+            throw new BookingException(Reason.FORBIDDEN, "Ticket belongs to another user");
+        }
+        return ticket;
+    }
+
+    private static void require(String value, String name) throws BookingException {
+        if (value == null || value.trim().isEmpty()) {
+            throw new BookingException(Reason.INVALID_REQUEST, "Missing " + name);
+        }
+    }
+
+    private BookingException unavailable(String operation, Exception e) {
+        logger.error("Cannot {}: {}", operation, e.getMessage());
+        return new BookingException(Reason.UNAVAILABLE, "Cannot " + operation);
+    }
+}
@@ -0,0 +1,133 @@
+package sfedu.railway.service;
+
+import org.slf4j.*;
+import sfedu.railway.api.IDataProvider;
+import sfedu.railway.collections.TimingWheel;
+import sfedu.railway.models.Ticket;
+import sfedu.railway.utils.Status;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Автоматическая отмена неоплаченных броней. Срок каждой брони хранится в колесе таймеров;
+ * при запуске колесо заполняется забронированными билетами из источника данных.
+ * Раз в шаг колеса истекшие брони отменяются пачкой через
+ * {@link IDataProvider#updateTicketStatus(String, Status, Status)} с ожидаемым статусом BOOKED,
+ * и места возвращаются в продажу. Оплаченные и отмененные за это время билеты пропускаются,
+ * а билеты с оплатой в процессе проверяются повторно на следующем шаге. Если отменить бронь
+ * не удалось из-за ошибки источника данных, она ставится в колесо повторно.
+ */
+public class HoldExpiryScheduler implements AutoCloseable {
+
+    // Наибольшая задержка повторной проверки брони после ошибки, в шагах колеса
+    private static final long MAX_RETRY_TICKS = 64;
+
+    Logger logger = LoggerFactory.getLogger(HoldExpiryScheduler.class);
+
+    private final IDataProvider dataProvider;
+    private final long holdMillis;
+    private final long tickMillis;
+    private final Predicate<String> paymentPending;
+    private final TimingWheel wheel;
+    // Количество ошибок подряд при отмене брони
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hold-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param dataProvider провайдер данных
+     * @param holdMillis срок брони в миллисекундах
+     * @param tickMillis шаг проверки в миллисекундах
+     * @param paymentPending проверка, выполняется ли оплата билета по его идентификатору
+     */
+    public HoldExpiryScheduler(IDataProvider dataProvider, long holdMillis, long tickMillis,
+                               Predicate<String> paymentPending) {
+        this.dataProvider = dataProvider;
+        this.holdMillis = holdMillis;
+        this.tickMillis = tickMillis;
+        this.paymentPending = paymentPending;
+        this.wheel = new TimingWheel(tickMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * Загрузка существующих броней и запуск периодической проверки
+     * @throws Exception если брони не удалось прочитать
+     */
+    public void start() throws Exception {
+        dataProvider.forEachTicketWithStatus(Status.BOOKED, this::hold);
+        logger.info("Hold expiry started with {} booked tickets", wheel.size());
+        timer.scheduleWithFixedDelay(this::expireDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Постановка брони на отсчет срока
+     * @param ticket забронированный билет
+     */
+    public void hold(Ticket ticket) {
+        wheel.add(ticket.getId(), ticket.getBookingDate().getTime() + holdMillis);
+    }
+
+    /**
+     * Отмена броней, срок которых наступил
+     * @return количество отмененных билетов
+     */
+    public int expireDue() {
+        List<String> expired = wheel.advance(System.currentTimeMillis());
+        int canceled = 0;
+        for (String ticketId : expired) {
+            try {
+                if (paymentPending.test(ticketId)) {
+                    // Если оплата не пройдет, бронь будет отменена на одном из следующих шагов
+                    wheel.add(ticketId, System.currentTimeMillis() + tickMillis);
+                    continue;
+                }
+                // Отменяется только билет, все еще находящийся в статусе BOOKED: проверка статуса
+                // и отмена выполняются провайдером атомарно, поэтому билет, оплаченный
+                // непосредственно перед отменой, остается оплаченным
+                if (dataProvider.updateTicketStatus(ticketId, Status.BOOKED, Status.CANCELED)) {
+                    failures.remove(ticketId);
+                    canceled++;
+                    continue;
+                }
+                // Провайдеры возвращают false и при ошибке хранилища: бронь, оставшаяся в статусе BOOKED,
+                // проверяется повторно, иначе место осталось бы занятым до перезапуска
+                Ticket ticket = dataProvider.readTicket(ticketId);
+                if (ticket != null && ticket.getStatus() == Status.BOOKED) {
+                    logger.error("Cannot expire ticket {}, will retry", ticketId);
+                    retry(ticketId);
+                } else {
+                    failures.remove(ticketId);
+                }
+            } catch (Exception e) {
+                // Ошибка источника данных: бронь проверяется повторно с увеличивающейся задержкой
+                logger.error("Cannot expire ticket {}, will retry: {}", ticketId, e.getMessage());
+                retry(ticketId);
+            }
+        }
+        if (canceled > 0) {
+            logger.info("Canceled {} expired bookings", canceled);
+        }
+        return canceled;
+    }
+
+    /**
+     * Повторная постановка брони после ошибки. Задержка удваивается с каждой ошибкой подряд
+     * до {@link #MAX_RETRY_TICKS} шагов; попытки не ограничены, поэтому бронь удаленного
+     * билета тоже проверяется с максимальной задержкой
+     */
+    private void retry(String ticketId) {
+        int attempt = failures.merge(ticketId, 1, Integer::sum);
+        long ticks = Math.min(1L << Math.min(attempt - 1, 30), MAX_RETRY_TICKS);
+        wheel.add(ticketId, System.currentTimeMillis() + ticks * tickMillis);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,471 @@
+package sfedu.railway.storage;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Двоичный снимок таблицы в колоночном формате.
+ * Каждый столбец хранится целиком: строки - словарем уникальных значений и массивом
+ * кодов, логические значения - байтами, числа и время - значениями фиксированной ширины.
+ * В заголовке записаны количество строк и столбцов, а также время модификации и размер
+ * CSV файла, из которого построен снимок, что позволяет понять, актуален ли снимок.
+ *
+ * Формат файла (big-endian):
+ * <pre>
+ * int magic, short version, long sourceModified, long sourceSize, int rowCount, int columnCount,
+ * далее для каждого столбца: byte type и данные столбца
+ *   STRING:    int dictionarySize, (int length, byte[] utf8) * dictionarySize, int code * rowCount
+ *   BOOLEAN:   byte * rowCount
+ *   DOUBLE:    double * rowCount
+ *   TIMESTAMP: long epochSecond * rowCount
+ * int magic
+ * </pre>
+ */
+public class ColumnarSnapshot {
+
+    /**
+     * Тип столбца снимка
+     */
+    public enum ColumnType {
+        STRING,
+        BOOLEAN,
+        DOUBLE,
+        TIMESTAMP
+    }
+
+    private static final int MAGIC = 0x52544353; // "RTCS"
+    private static final short VERSION = 1;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String TRUE = "true";
+    private static final String FALSE = "false";
+
+    private final long sourceModified;
+    private final long sourceSize;
+    private final int rowCount;
+    private final ColumnType[] types;
+    private final Object[] columns;
+
+    private ColumnarSnapshot(long sourceModified, long sourceSize, int rowCount, ColumnType[] types, Object[] columns) {
+        this.sourceModified = sourceModified;
+        this.sourceSize = sourceSize;
+        this.rowCount = rowCount;
+        this.types = types;
+        this.columns = columns;
+    }
+
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return types.length;
+    }
+
+    public ColumnType columnType(int column) {
+        return types[column];
+    }
+
+    /**
+     * Значение ячейки в текстовом виде, совпадающем с исходным CSV
+     * @param row номер строки
+     * @param column номер столбца
+     * @return значение ячейки
+     */
+    public String getString(int row, int column) {
+        switch (types[column]) {
+            case STRING:
+                StringColumn strings = (StringColumn) columns[column];
+                return strings.dictionary[strings.codes[row]];
+            case BOOLEAN:
+                return ((boolean[]) columns[column])[row] ? TRUE : FALSE;
+            case DOUBLE:
+                return String.valueOf(((double[]) columns[column])[row]);
+            default:
+                return formatTimestamp(((long[]) columns[column])[row]);
+        }
+    }
+
+    /**
+     * Значение логического столбца
+     * @param row номер строки
+     * @param column номер столбца типа BOOLEAN
+     * @return значение ячейки
+     */
+    public boolean getBoolean(int row, int column) {
+        return ((boolean[]) columns[column])[row];
+    }
+
+    /**
+     * Значение числового столбца
+     * @param row номер строки
+     * @param column номер столбца типа DOUBLE
+     * @return значение ячейки
+     */
+    public double getDouble(int row, int column) {
+        return ((double[]) columns[column])[row];
+    }
+
+    /**
+     * Значение столбца времени
+     * @param row номер строки
+     * @param column номер столбца типа TIMESTAMP
+     * @return количество секунд от начала эпохи для локального времени из CSV
+     */
+    public long getTimestamp(int row, int column) {
+        return ((long[]) columns[column])[row];
+    }
+
+    /**
+     * Строки снимка в текстовом виде. Одинаковые значения строковых и числовых столбцов
+     * разделяют один экземпляр String
+     * @return список строк
+     */
+    public List<String[]> toRows() {
+        // Числовых значений обычно немного (коэффициенты цен, тарифы), поэтому
+        // каждое из них переводится в строку один раз
+        List<Map<Double, String>> doubleStrings = new ArrayList<>(types.length);
+        for (ColumnType type : types) {
+            doubleStrings.add(type == ColumnType.DOUBLE ? new HashMap<>() : null);
+        }
+        List<String[]> rows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            String[] values = new String[types.length];
+            for (int column = 0; column < types.length; column++) {
+                if (types[column] == ColumnType.DOUBLE) {
+                    values[column] = doubleStrings.get(column).computeIfAbsent(
+                            ((double[]) columns[column])[row], String::valueOf);
+                } else {
+                    values[column] = getString(row, column);
+                }
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    /**
+     * Чтение снимка из файла
+     * @param file путь к файлу снимка
+     * @return снимок
+     * @throws IOException если файл поврежден или имеет неизвестный формат
+     */
+    public static ColumnarSnapshot read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of snapshot " + file);
+                }
+            }
+            buffer.flip();
+        }
+        CsvStreams.bytesRead.add(buffer.limit());
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                throw new IOException("Unknown snapshot format: " + file);
+            }
+            long sourceModified = buffer.getLong();
+            long sourceSize = buffer.getLong();
+            int rowCount = buffer.getInt();
+            int columnCount = buffer.getInt();
+            ColumnType[] types = new ColumnType[columnCount];
+            Object[] columns = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                types[column] = ColumnType.values()[buffer.get()];
+                columns[column] = readColumn(buffer, types[column], rowCount);
+            }
+            if (buffer.getInt() != MAGIC || buffer.hasRemaining()) {
+                throw new IOException("Corrupted snapshot: " + file);
+            }
+            return new ColumnarSnapshot(sourceModified, sourceSize, rowCount, types, columns);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted snapshot " + file + ": " + e, e);
+        }
+    }
+
+    /**
+     * Запись снимка строк в файл. Если значения столбца не записываются в заданном типе
+     * без потерь (например, число в CSV записано как "1.50"), столбец сохраняется как STRING.
+     * Файл сначала пишется во временный файл и затем заменяет существующий
+     * @param file путь к файлу снимка
+     * @param preferredTypes желаемые типы столбцов
+     * @param rows строки таблицы; каждая должна содержать ровно preferredTypes.length значений
+     * @param sourceModified время модификации исходного CSV файла
+     * @param sourceSize размер исходного CSV файла
+     * @throws IOException
+     */
+    public static void write(Path file, ColumnType[] preferredTypes, Collection<String[]> rows,
+                             long sourceModified, long sourceSize) throws IOException {
+        int columnCount = preferredTypes.length;
+        for (String[] row : rows) {
+            if (row.length != columnCount) {
+                throw new IOException("Row width " + row.length + " does not match snapshot schema of "
+                        + columnCount + " columns");
+            }
+        }
+        List<String[]> rowList = rows instanceof List ? (List<String[]>) rows : new ArrayList<>(rows);
+        int rowCount = rowList.size();
+
+        ColumnType[] types = new ColumnType[columnCount];
+        Object[] columns = new Object[columnCount];
+        long size = 4 + 2 + 8 + 8 + 4 + 4 + 4;
+        for (int column = 0; column < columnCount; column++) {
+            Object encoded = encodeColumn(rowList, column, preferredTypes[column]);
+            if (encoded == null) {
+                encoded = encodeColumn(rowList, column, ColumnType.STRING);
+                types[column] = ColumnType.STRING;
+            } else {
+                types[column] = preferredTypes[column];
+            }
+            columns[column] = encoded;
+            size += 1 + encodedSize(types[column], encoded, rowCount);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot is too large: " + file);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(sourceModified).putLong(sourceSize)
+                .putInt(rowCount).putInt(columnCount);
+        for (int column = 0; column < columnCount; column++) {
+            buffer.put((byte) types[column].ordinal());
+            writeColumn(buffer, types[column], columns[column]);
+        }
+        buffer.putInt(MAGIC);
+        buffer.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        CsvStreams.bytesWritten.add(buffer.limit());
+        CsvStreams.moveAtomically(temp, file);
+    }
+
+    /**
+     * Преобразование CSV файла в снимок
+     * @param csvFile путь к CSV файлу
+     * @param snapshotFile путь к файлу снимка
+     * @param preferredTypes желаемые типы столбцов
+     * @throws IOException
+     * @throws CsvException
+     */
+    public static void fromCsv(Path csvFile, Path snapshotFile, ColumnType[] preferredTypes)
+            throws IOException, CsvException {
+        List<String[]> rows = new ArrayList<>();
+        CsvStreams.forEach(csvFile, row -> {
+            if (row.length > 0 && !row[0].isEmpty()) {
+                rows.add(row);
+            }
+        });
+        write(snapshotFile, preferredTypes, rows,
+                Files.getLastModifiedTime(csvFile).toMillis(), Files.size(csvFile));
+    }
+
+    /**
+     * Преобразование снимка обратно в CSV файл
+     * @param snapshotFile путь к файлу снимка
+     * @param csvFile путь к CSV файлу
+     * @throws IOException
+     */
+    public static void toCsv(Path snapshotFile, Path csvFile) throws IOException {
+        ColumnarSnapshot snapshot = read(snapshotFile);
+        try (CSVWriter csvWriter = new CSVWriter(CsvStreams.writer(csvFile))) {
+            csvWriter.writeAll(snapshot.toRows());
+        }
+    }
+
+    private static Object encodeColumn(List<String[]> rows, int column, ColumnType type) {
+        int rowCount = rows.size();
+        switch (type) {
+            case STRING: {
+                Map<String, Integer> codesByValue = new HashMap<>();
+                List<String> dictionary = new ArrayList<>();
+                int[] codes = new int[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    String value = rows.get(row)[column];
+                    Integer code = codesByValue.get(value);
+                    if (code == null) {
+                        code = dictionary.size();
+                        codesByValue.put(value, code);
+                        dictionary.add(value);
+                    }
+                    codes[row] = code;
+                }
+                return new StringColumn(dictionary.toArray(new String[0]), codes);
+            }
+            case BOOLEAN: {
+                boolean[] values = new boolean[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    String value = rows.get(row)[column];
+                    if (TRUE.equals(value)) {
+                        values[row] = true;
+                    } else if (!FALSE.equals(value)) {
+                        return null;
+                    }
+                }
+                return values;
+            }
+            case DOUBLE: {
+                double[] values = new double[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    String value = rows.get(row)[column];
+                    try {
+                        values[row] = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    if (!String.valueOf(values[row]).equals(value)) {
+                        return null;
+                    }
+                }
+                return values;
+            }
+            default: {
+                long[] values = new long[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    String value = rows.get(row)[column];
+                    try {
+                        values[row] = LocalDateTime.parse(value, TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+                    } catch (RuntimeException e) {
+                        return null;
+                    }
+                    if (!formatTimestamp(values[row]).equals(value)) {
+                        return null;
+                    }
+                }
+                return values;
+            }
+        }
+    }
+
+    private static long encodedSize(ColumnType type, Object column, int rowCount) {
+        switch (type) {
+            case STRING:
+                StringColumn strings = (StringColumn) column;
+                long size = 4 + 4L * rowCount;
+                for (String value : strings.dictionary) {
+                    size += 4 + value.getBytes(StandardCharsets.UTF_8).length;
+                }
+                return size;
+            case BOOLEAN:
+                return rowCount;
+            default:
+                return 8L * rowCount;
+        }
+    }
+
+    private static void writeColumn(ByteBuffer buffer, ColumnType type, Object column) {
+        switch (type) {
+            case STRING:
+                StringColumn strings = (StringColumn) column;
+                buffer.putInt(strings.dictionary.length);
+                for (String value : strings.dictionary) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    buffer.putInt(bytes.length).put(bytes);
+                }
+                buffer.asIntBuffer().put(strings.codes);
+                buffer.position(buffer.position() + 4 * strings.codes.length);
+                break;
+            case BOOLEAN:
+                for (boolean value : (boolean[]) column) {
+                    buffer.put((byte) (value ? 1 : 0));
+                }
+                break;
+            case DOUBLE:
+                double[] doubles = (double[]) column;
+                buffer.asDoubleBuffer().put(doubles);
+                buffer.position(buffer.position() + 8 * doubles.length);
+                break;
+            default:
+                long[] longs = (long[]) column;
+                buffer.asLongBuffer().put(longs);
+                buffer.position(buffer.position() + 8 * longs.length);
+        }
+    }
+
+    private static Object readColumn(ByteBuffer buffer, ColumnType type, int rowCount) {
+        switch (type) {
+            case STRING: {
+                String[] dictionary = new String[buffer.getInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                int[] codes = new int[rowCount];
+                buffer.asIntBuffer().get(codes);
+                buffer.position(buffer.position() + 4 * rowCount);
+                for (int code : codes) {
+                    if (code < 0 || code >= dictionary.length) {
+                        throw new IllegalStateException("Dictionary code out of range: " + code);
+                    }
+                }
+                return new StringColumn(dictionary, codes);
+            }
+            case BOOLEAN: {
+                boolean[] values = new boolean[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    values[row] = buffer.get() != 0;
+                }
+                return values;
+            }
+            case DOUBLE: {
+                double[] values = new double[rowCount];
+                buffer.asDoubleBuffer().get(values);
+                buffer.position(buffer.position() + 8 * rowCount);
+                return values;
+            }
+            default: {
+                long[] values = new long[rowCount];
+                buffer.asLongBuffer().get(values);
+                buffer.position(buffer.position() + 8 * rowCount);
+                return values;
+            }
+        }
+    }
+
+    private static String formatTimestamp(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+    }
+
+    /**
+     * Строковый столбец: словарь уникальных значений и код значения для каждой строки
+     */
+    private static final class StringColumn {
+        final String[] dictionary;
+        final int[] codes;
+
+        StringColumn(String[] dictionary, int[] codes) {
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+    }
+}
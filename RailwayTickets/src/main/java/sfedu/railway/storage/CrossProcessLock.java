@@ -0,0 +1,89 @@
+package sfedu.railway.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Межпроцессная блокировка файла данных через {@link FileChannel#lock} на отдельном файле
+ * блокировки рядом с ним. Блокировки файлов принадлежат процессу, поэтому внутри JVM
+ * захват дополнительно сериализуется общим для пути {@link ReentrantLock}; повторный захват
+ * тем же потоком не блокирует файл второй раз.
+ */
+final class CrossProcessLock {
+
+    private static final Map<Path, CrossProcessLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path lockFile;
+    private final ReentrantLock jvmLock = new ReentrantLock();
+    // Канал и блокировка файла внешнего захвата, доступны только потоку, владеющему jvmLock
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private CrossProcessLock(Path lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Блокировка для файла данных, общая для всех объектов этой JVM
+     * @param file файл данных
+     * @param suffix суффикс файла блокировки
+     * @return блокировка
+     */
+    static CrossProcessLock forFile(Path file, String suffix) {
+        Path lockFile = Paths.get(file.toAbsolutePath().normalize() + suffix);
+        return LOCKS.computeIfAbsent(lockFile, CrossProcessLock::new);
+    }
+
+    /**
+     * Захват блокировки. Каждый захват освобождается вызовом {@link #unlock()} в блоке finally
+     * @param shared разделяемая блокировка (чтение) или исключительная (запись)
+     * @throws IOException
+     */
+    void lock(boolean shared) throws IOException {
+        jvmLock.lock();
+        if (jvmLock.getHoldCount() > 1) {
+            return;
+        }
+        FileChannel opened = null;
+        try {
+            if (lockFile.getParent() != null) {
+                Files.createDirectories(lockFile.getParent());
+            }
+            opened = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileLock = opened.lock(0, Long.MAX_VALUE, shared);
+            channel = opened;
+        } catch (IOException | RuntimeException e) {
+            if (opened != null) {
+                opened.close();
+            }
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Освобождение блокировки. Файл освобождается при выходе из внешнего захвата
+     * @throws IOException
+     */
+    void unlock() throws IOException {
+        try {
+            if (jvmLock.getHoldCount() == 1) {
+                try {
+                    fileLock.release();
+                } finally {
+                    channel.close();
+                    fileLock = null;
+                    channel = null;
+                }
+            }
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package sfedu.railway.storage;
+
+import org.slf4j.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Фоновый перенос журналов изменений CSV таблиц в основные файлы
+ */
+public class CsvCompactor {
+
+    Logger logger = LoggerFactory.getLogger(CsvCompactor.class);
+
+    private final List<CsvTable> tables;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "csv-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CsvCompactor(List<CsvTable> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Запуск периодического уплотнения
+     * @param intervalSeconds период запуска в секундах
+     */
+    public void start(long intervalSeconds) {
+        executor.scheduleWithFixedDelay(this::compactAll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Уплотнение всех таблиц
+     */
+    public void compactAll() {
+        for (CsvTable table : tables) {
+            try {
+                table.compact();
+            } catch (Exception e) {
+                logger.error("Error compacting {}: {}", table.getFilePath(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Остановка фонового потока с финальным уплотнением
+     */
+    public void stop() {
+        executor.shutdown();
+        compactAll();
+    }
+}
@@ -0,0 +1,92 @@
+package sfedu.railway.storage;
+
+import sfedu.railway.collections.IdDictionary;
+import sfedu.railway.utils.Constants;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Набор CSV таблиц приложения с индексами, используемыми провайдером данных
+ */
+public class CsvStore {
+
+    // Номера индексируемых столбцов
+    public static final int USER_EMAIL = 4;
+    public static final int WAGON_TRAIN_ID = 1;
+    public static final int SEAT_WAGON_ID = 1;
+    public static final int TICKET_USER_ID = 1;
+
+    // Общий словарь идентификаторов: ключи и внешние ключи всех таблиц разделяют одни экземпляры строк
+    private final IdDictionary ids = new IdDictionary();
+
+    private final CsvTable users = new CsvTable(Constants.csvUserFilePath, USER_EMAIL).withIds(ids, 0);
+    private final CsvTable stations = new CsvTable(Constants.csvStationFilePath).withIds(ids, 0);
+    private final CsvTable trains = new CsvTable(Constants.csvTrainFilePath).withIds(ids, 0);
+    private final CsvTable routes = new CsvTable(Constants.csvRouteFilePath)
+            .withSnapshot(SnapshotSchemas.ROUTES).withIds(ids, 0, 1, 2, 3);
+    private final CsvTable wagons = new CsvTable(Constants.csvWagonFilePath, WAGON_TRAIN_ID).withIds(ids, 0, 1);
+    private final CsvTable seats = new CsvTable(Constants.csvSeatFilePath, SEAT_WAGON_ID)
+            .withSnapshot(SnapshotSchemas.SEATS).withIds(ids, 0, 1);
+    private final CsvTable tickets = new CsvTable(Constants.csvTicketFilePath, TICKET_USER_ID)
+            .withSnapshot(SnapshotSchemas.TICKETS).withIds(ids, 0, 1, 2, 3);
+    private final CsvTable transactions = new CsvTable(Constants.csvTransactionFilePath).withIds(ids, 0, 1);
+    // Состояния мест на маршрутах хранятся в отображаемом в память файле с записями фиксированной длины
+    private final SeatStateFile seatStates = new SeatStateFile(Constants.csvSeatStateFilePath, ids);
+
+    /**
+     * Все таблицы хранилища
+     * @return список таблиц
+     */
+    public List<CsvTable> tables() {
+        return Arrays.asList(users, stations, trains, routes, wagons, seats, tickets, transactions);
+    }
+
+    public CsvTable users() {
+        return users;
+    }
+
+    public CsvTable stations() {
+        return stations;
+    }
+
+    public CsvTable trains() {
+        return trains;
+    }
+
+    public CsvTable routes() {
+        return routes;
+    }
+
+    public CsvTable wagons() {
+        return wagons;
+    }
+
+    public CsvTable seats() {
+        return seats;
+    }
+
+    public CsvTable tickets() {
+        return tickets;
+    }
+
+    public CsvTable transactions() {
+        return transactions;
+    }
+
+    public IdDictionary ids() {
+        return ids;
+    }
+
+    public SeatStateFile seatStates() {
+        return seatStates;
+    }
+
+    /**
+     * Закрытие файлов хранилища, которые остаются открытыми между обращениями
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        seatStates.close();
+    }
+}
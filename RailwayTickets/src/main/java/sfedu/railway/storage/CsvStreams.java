@@ -0,0 +1,135 @@
+package sfedu.railway.storage;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import sfedu.railway.metrics.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.*;
+
+/**
+ * Потоковое чтение и атомарная запись CSV файлов. При чтении строки разбираются по одной
+ * по мере потребления, поэтому поиск может остановиться на первом совпадении, а фильтрация
+ * работает в постоянной памяти независимо от размера файла.
+ * Поток держит файл открытым и должен закрываться (try-with-resources).
+ * Ошибки чтения и разбора внутри потока передаются как {@link UncheckedIOException}.
+ * Прочитанные и записанные байты учитываются в общих счетчиках хранилища.
+ */
+public final class CsvStreams {
+
+    static final LongAdder bytesRead = MetricsRegistry.getDefault().counter("storage.bytesRead");
+    static final LongAdder bytesWritten = MetricsRegistry.getDefault().counter("storage.bytesWritten");
+
+    private CsvStreams() {
+    }
+
+    /**
+     * Поток строк CSV файла. Для отсутствующего файла возвращается пустой поток
+     * @param file путь к файлу
+     * @return поток строк
+     * @throws IOException если файл не удалось открыть
+     */
+    public static Stream<String[]> lines(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Stream.empty();
+        }
+        CSVReader csvReader = new CSVReader(new BufferedReader(new InputStreamReader(
+                new CountingInputStream(Files.newInputStream(file), bytesRead), StandardCharsets.UTF_8)));
+        Spliterator<String[]> rows = new Spliterators.AbstractSpliterator<String[]>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super String[]> action) {
+                String[] row;
+                try {
+                    row = csvReader.readNext();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (CsvException e) {
+                    throw new UncheckedIOException(new IOException(file + ": " + e.getMessage(), e));
+                }
+                if (row == null) {
+                    return false;
+                }
+                RowCounter.add(1);
+                action.accept(row);
+                return true;
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                csvReader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Чтение всех строк файла с передачей каждой строки обработчику без накопления списка
+     * @param file путь к файлу
+     * @param action обработчик строки
+     * @return количество прочитанных строк
+     * @throws IOException
+     */
+    public static long forEach(Path file, Consumer<String[]> action) throws IOException {
+        long count = 0;
+        try (Stream<String[]> lines = lines(file)) {
+            Iterator<String[]> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                count++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count;
+    }
+
+    /**
+     * Запись строк во временный файл рядом с целевым и замена целевого файла переименованием.
+     * Читатели видят либо старое, либо новое содержимое файла целиком
+     * @param file путь к файлу
+     * @param rows строки данных
+     * @throws IOException
+     */
+    public static void writeAtomically(Path file, Iterable<String[]> rows) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (CSVWriter csvWriter = new CSVWriter(writer(temp))) {
+            csvWriter.writeAll(rows);
+        }
+        moveAtomically(temp, file);
+    }
+
+    /**
+     * Буферизованная запись в файл с учетом записанных байтов
+     * @param file путь к файлу
+     * @param options параметры открытия файла
+     * @return поток записи
+     * @throws IOException если файл не удалось открыть
+     */
+    static Writer writer(Path file, OpenOption... options) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new CountingOutputStream(Files.newOutputStream(file, options), bytesWritten), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Замена файла переименованием. Если файловая система не поддерживает атомарное
+     * переименование, файл заменяется обычным переименованием
+     * @param source временный файл
+     * @param target целевой файл
+     * @throws IOException
+     */
+    public static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
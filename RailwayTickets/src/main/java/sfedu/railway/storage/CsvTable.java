@@ -0,0 +1,520 @@
+package sfedu.railway.storage;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import org.slf4j.*;
+import sfedu.railway.collections.IdDictionary;
+import sfedu.railway.metrics.RowCounter;
+import sfedu.railway.utils.Constants;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+/**
+ * Содержимое одного CSV файла, загруженное в память.
+ * Строки индексируются по ключу (первый столбец) и по дополнительным столбцам.
+ * Изменения и удаления записываются не в сам файл, а в журнал рядом с ним
+ * (записи "U" - вставка/замена строки, "D" - удаление по ключу).
+ * При загрузке журнал накладывается на основной файл, а {@link #compact()}
+ * переносит накопленные изменения в основной файл и очищает журнал.
+ * Данные перечитываются только при изменении времени модификации или размера файлов,
+ * либо после явного вызова {@link #invalidate()}.
+ * Для таблиц со схемой снимка ({@link #withSnapshot}) при уплотнении дополнительно
+ * записывается двоичный {@link ColumnarSnapshot}, который читается вместо CSV файла,
+ * пока CSV файл не изменился.
+ * Для таблиц со словарем идентификаторов ({@link #withIds}) значения столбцов-идентификаторов
+ * заменяются общими экземплярами строк из словаря, поэтому внешние ключи не дублируются в памяти.
+ * Возвращаемые массивы строк разделяются между вызовами и не должны изменяться.
+ *
+ * Таблица потокобезопасна: чтения из памяти выполняются параллельно под блокировкой чтения,
+ * перечитывание файлов и изменения - под блокировкой записи. Для работы нескольких процессов
+ * с одними файлами изменения, уплотнение и перечитывание выполняются под блокировкой файла
+ * {@link CrossProcessLock} (разделяемой для чтения, исключительной для записи), а основной файл
+ * при уплотнении заменяется атомарно, поэтому читатели не видят наполовину записанных файлов.
+ */
+public class CsvTable {
+
+    private static final String UPSERT = "U";
+    private static final String DELETE = "D";
+
+    Logger logger = LoggerFactory.getLogger(CsvTable.class);
+
+    private final Path path;
+    private final Path logPath;
+    private final int[] indexedColumns;
+    private Path snapshotPath;
+    private ColumnarSnapshot.ColumnType[] snapshotColumns;
+    private FileStamp snapshotSource = FileStamp.MISSING;
+    private IdDictionary ids;
+    private int[] idColumns = new int[0];
+
+    private Map<String, String[]> rowsById = new LinkedHashMap<>();
+    private Map<Integer, Map<String, List<String[]>>> indexes = new HashMap<>();
+    private FileStamp loadedBase = FileStamp.MISSING;
+    private FileStamp loadedLog = FileStamp.MISSING;
+    private boolean stale = true;
+    private long generation = 0;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CrossProcessLock fileLock;
+
+    /**
+     * @param filePath путь к CSV файлу
+     * @param indexedColumns номера столбцов, по которым строятся хеш-индексы
+     */
+    public CsvTable(String filePath, int... indexedColumns) {
+        this.path = Paths.get(filePath);
+        this.logPath = Paths.get(filePath + Constants.csvLogSuffix);
+        this.indexedColumns = indexedColumns;
+        this.fileLock = CrossProcessLock.forFile(path, Constants.csvLockSuffix);
+    }
+
+    /**
+     * Включение двоичного снимка таблицы
+     * @param columns типы столбцов снимка
+     * @return эта таблица
+     */
+    public CsvTable withSnapshot(ColumnarSnapshot.ColumnType[] columns) {
+        this.snapshotPath = Paths.get(path + Constants.csvSnapshotSuffix);
+        this.snapshotColumns = columns;
+        return this;
+    }
+
+    /**
+     * Включение общего словаря для столбцов-идентификаторов
+     * @param dictionary словарь идентификаторов
+     * @param columns номера столбцов, содержащих идентификаторы
+     * @return эта таблица
+     */
+    public CsvTable withIds(IdDictionary dictionary, int... columns) {
+        this.ids = dictionary;
+        this.idColumns = columns;
+        return this;
+    }
+
+    public String getFilePath() {
+        return path.toString();
+    }
+
+    /**
+     * Номер загрузки данных с диска. Увеличивается при каждом перечитывании файлов,
+     * но не при изменениях, внесенных через эту таблицу, что позволяет производным
+     * индексам понять, когда их нужно перестроить полностью.
+     * @return номер загрузки
+     * @throws IOException
+     * @throws CsvException
+     */
+    public long generation() throws IOException, CsvException {
+        return read(() -> generation);
+    }
+
+    /**
+     * Все строки файла в порядке их следования
+     * @return копия списка строк
+     * @throws IOException
+     * @throws CsvException
+     */
+    public List<String[]> rows() throws IOException, CsvException {
+        return read(() -> {
+            RowCounter.add(rowsById.size());
+            return new ArrayList<>(rowsById.values());
+        });
+    }
+
+    /**
+     * Поиск строки по ключу
+     * @param id ключ записи
+     * @return строка или null, если запись не найдена
+     * @throws IOException
+     * @throws CsvException
+     */
+    public String[] findById(String id) throws IOException, CsvException {
+        return read(() -> {
+            String[] row = rowsById.get(id);
+            if (row != null) {
+                RowCounter.add(1);
+            }
+            return row;
+        });
+    }
+
+    /**
+     * Поиск строк по значению индексированного столбца
+     * @param column номер столбца
+     * @param value искомое значение
+     * @return список найденных строк
+     * @throws IOException
+     * @throws CsvException
+     */
+    public List<String[]> findBy(int column, String value) throws IOException, CsvException {
+        return read(() -> {
+            Map<String, List<String[]>> index = indexes.get(column);
+            if (index == null) {
+                throw new IllegalArgumentException("Column " + column + " is not indexed in " + path);
+            }
+            List<String[]> found = index.get(value);
+            if (found == null) {
+                return Collections.<String[]>emptyList();
+            }
+            RowCounter.add(found.size());
+            return new ArrayList<>(found);
+        });
+    }
+
+    /**
+     * Дописывание строки в конец файла без перезаписи остального содержимого.
+     * Индексы в памяти обновляются сразу, повторного чтения файла не требуется.
+     * @param row новая строка
+     * @throws IOException
+     * @throws CsvException
+     */
+    public void append(String[] row) throws IOException, CsvException {
+        write(() -> {
+            appendLine(path, row);
+            if (!rowsById.containsKey(keyOf(row))) {
+                put(rowsById, indexes, row);
+            }
+            loadedBase = FileStamp.of(path);
+            return null;
+        });
+    }
+
+    /**
+     * Вставка или замена строки с тем же ключом через запись в журнал
+     * @param row новое содержимое строки
+     * @throws IOException
+     * @throws CsvException
+     */
+    public void upsert(String[] row) throws IOException, CsvException {
+        write(() -> {
+            writeUpsert(row);
+            return null;
+        });
+    }
+
+    /**
+     * Атомарное условное изменение строки. Функция получает текущее содержимое строки
+     * (или null, если ее нет) и возвращает новое содержимое либо null, если изменение
+     * выполнять не нужно. После записи изменения вызывается обработчик с прежним содержимым строки.
+     * Пока функция и обработчик выполняются, другие изменения таблицы невозможны.
+     * @param id ключ записи
+     * @param change функция изменения строки
+     * @param changed обработчик выполненного изменения
+     * @return было ли выполнено изменение
+     * @throws IOException
+     * @throws CsvException
+     */
+    public boolean compute(String id, UnaryOperator<String[]> change, Consumer<String[]> changed)
+            throws IOException, CsvException {
+        return write(() -> {
+            String[] previous = rowsById.get(id);
+            String[] updated = change.apply(previous);
+            if (updated == null) {
+                return false;
+            }
+            writeUpsert(updated);
+            changed.accept(previous);
+            return true;
+        });
+    }
+
+    private void writeUpsert(String[] row) throws IOException {
+        String[] record = new String[row.length + 1];
+        record[0] = UPSERT;
+        System.arraycopy(row, 0, record, 1, row.length);
+        appendLine(logPath, record);
+        put(rowsById, indexes, row);
+        loadedLog = FileStamp.of(logPath);
+    }
+
+    /**
+     * Удаление строки через запись в журнал
+     * @param id ключ записи
+     * @return была ли найдена строка
+     * @throws IOException
+     * @throws CsvException
+     */
+    public boolean delete(String id) throws IOException, CsvException {
+        return write(() -> {
+            appendLine(logPath, new String[]{DELETE, id});
+            boolean found = remove(rowsById, indexes, id);
+            loadedLog = FileStamp.of(logPath);
+            return found;
+        });
+    }
+
+    /**
+     * Перенос изменений из журнала в основной файл
+     * @return были ли перенесены изменения
+     * @throws IOException
+     * @throws CsvException
+     */
+    public boolean compact() throws IOException, CsvException {
+        return write(() -> {
+            if (loadedLog.size == 0) {
+                if (snapshotPath != null && !snapshotSource.equals(loadedBase)) {
+                    writeSnapshot();
+                }
+                return false;
+            }
+            // Сначала заменяем основной файл: если процесс прервется до удаления журнала,
+            // повторное наложение журнала на уже обновленные данные ничего не изменит
+            CsvStreams.writeAtomically(path, rowsById.values());
+            Files.deleteIfExists(logPath);
+            loadedBase = FileStamp.of(path);
+            loadedLog = FileStamp.MISSING;
+            if (snapshotPath != null) {
+                writeSnapshot();
+            }
+            logger.debug("Compacted {} ({} rows)", path, rowsById.size());
+            return true;
+        });
+    }
+
+    /**
+     * Пометить данные как устаревшие, чтобы при следующем обращении файл был перечитан
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            stale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Действие с таблицей, которое может обращаться к файлам
+     */
+    private interface TableAction<T> {
+        T run() throws IOException, CsvException;
+    }
+
+    /**
+     * Выполнение чтения. Если данные в памяти актуальны, чтение выполняется под блокировкой
+     * чтения параллельно с другими читателями, иначе файлы перечитываются под блокировкой записи
+     */
+    private <T> T read(TableAction<T> action) throws IOException, CsvException {
+        lock.readLock().lock();
+        try {
+            if (isFresh()) {
+                return action.run();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            refreshIfStale();
+            return action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Выполнение изменения под блокировкой записи и исключительной блокировкой файла
+     */
+    private <T> T write(TableAction<T> action) throws IOException, CsvException {
+        lock.writeLock().lock();
+        try {
+            fileLock.lock(false);
+            try {
+                refreshIfStale();
+                return action.run();
+            } finally {
+                fileLock.unlock();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isFresh() throws IOException {
+        return !stale && FileStamp.of(path).equals(loadedBase) && FileStamp.of(logPath).equals(loadedLog);
+    }
+
+    /**
+     * Перечитывание файлов, если они изменились. Вызывается под блокировкой записи
+     */
+    private void refreshIfStale() throws IOException, CsvException {
+        if (isFresh()) {
+            return;
+        }
+        // Разделяемая блокировка файла: другие процессы не изменяют файлы во время чтения
+        fileLock.lock(true);
+        try {
+            FileStamp base = FileStamp.of(path);
+            FileStamp log = FileStamp.of(logPath);
+            load(base);
+            loadedBase = base;
+            loadedLog = log;
+            stale = false;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private void load(FileStamp base) throws IOException, CsvException {
+        Map<String, String[]> loaded = new LinkedHashMap<>();
+        Map<Integer, Map<String, List<String[]>>> loadedIndexes = new HashMap<>();
+        for (int column : indexedColumns) {
+            loadedIndexes.put(column, new HashMap<>());
+        }
+        // CSV файл и журнал разбираются построчно, без промежуточного списка всех строк
+        Consumer<String[]> addBaseRow = row -> {
+            if (row.length > 0 && !row[0].isEmpty() && !loaded.containsKey(keyOf(row))) {
+                put(loaded, loadedIndexes, row);
+            }
+        };
+        List<String[]> snapshotRows = readSnapshot(base);
+        if (snapshotRows != null) {
+            RowCounter.add(snapshotRows.size());
+            snapshotRows.forEach(addBaseRow);
+        } else {
+            CsvStreams.forEach(path, addBaseRow);
+        }
+        long logRecords = CsvStreams.forEach(logPath, record -> {
+            if (record.length < 2) {
+                return;
+            }
+            if (UPSERT.equals(record[0])) {
+                put(loaded, loadedIndexes, Arrays.copyOfRange(record, 1, record.length));
+            } else if (DELETE.equals(record[0])) {
+                remove(loaded, loadedIndexes, record[1]);
+            }
+        });
+        rowsById = loaded;
+        indexes = loadedIndexes;
+        generation++;
+        logger.debug("Loaded {} rows from {} ({} log records)", loaded.size(), path, logRecords);
+    }
+
+    /**
+     * Чтение строк из снимка, если он построен из текущей версии CSV файла
+     * @param base время модификации и размер CSV файла
+     * @return строки или null, если снимка нет, он устарел или поврежден
+     */
+    private List<String[]> readSnapshot(FileStamp base) {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return null;
+        }
+        try {
+            ColumnarSnapshot snapshot = ColumnarSnapshot.read(snapshotPath);
+            FileStamp source = new FileStamp(snapshot.getSourceModified(), snapshot.getSourceSize());
+            if (!source.equals(base)) {
+                return null;
+            }
+            snapshotSource = source;
+            return snapshot.toRows();
+        } catch (IOException e) {
+            logger.error("Cannot read snapshot {}: {}", snapshotPath, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot() {
+        try {
+            ColumnarSnapshot.write(snapshotPath, snapshotColumns, rowsById.values(), loadedBase.modified, loadedBase.size);
+            snapshotSource = loadedBase;
+            logger.debug("Wrote snapshot {} ({} rows)", snapshotPath, rowsById.size());
+        } catch (IOException e) {
+            // Без снимка таблица по-прежнему читается из CSV файла
+            logger.error("Cannot write snapshot {}: {}", snapshotPath, e.getMessage());
+            snapshotSource = loadedBase;
+        }
+    }
+
+    private void put(Map<String, String[]> rows, Map<Integer, Map<String, List<String[]>>> target, String[] row) {
+        for (int column : idColumns) {
+            if (column < row.length) {
+                row[column] = ids.canonical(row[column]);
+            }
+        }
+        String[] previous = rows.put(keyOf(row), row);
+        if (previous != null) {
+            removeFromIndexes(target, previous);
+        }
+        for (int column : indexedColumns) {
+            if (column < row.length) {
+                target.get(column).computeIfAbsent(row[column], key -> new ArrayList<>(1)).add(row);
+            }
+        }
+    }
+
+    private static String keyOf(String[] row) {
+        return row[0];
+    }
+
+    private boolean remove(Map<String, String[]> rows, Map<Integer, Map<String, List<String[]>>> target, String id) {
+        String[] previous = rows.remove(id);
+        if (previous == null) {
+            return false;
+        }
+        removeFromIndexes(target, previous);
+        return true;
+    }
+
+    private void removeFromIndexes(Map<Integer, Map<String, List<String[]>>> target, String[] row) {
+        for (int column : indexedColumns) {
+            if (column < row.length) {
+                List<String[]> bucket = target.get(column).get(row[column]);
+                if (bucket != null) {
+                    bucket.remove(row);
+                    if (bucket.isEmpty()) {
+                        target.get(column).remove(row[column]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void appendLine(Path file, String[] row) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(CsvStreams.writer(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND))) {
+            csvWriter.writeNext(row);
+        }
+    }
+
+    /**
+     * Время модификации и размер файла на момент последнего чтения
+     */
+    private static final class FileStamp {
+        static final FileStamp MISSING = new FileStamp(0, 0);
+
+        final long modified;
+        final long size;
+
+        FileStamp(long modified, long size) {
+            this.modified = modified;
+            this.size = size;
+        }
+
+        static FileStamp of(Path file) throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime().toMillis(), attributes.size());
+            } catch (NoSuchFileException e) {
+                return MISSING;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) o;
+            return modified == other.modified && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(modified, size);
+        }
+    }
+}
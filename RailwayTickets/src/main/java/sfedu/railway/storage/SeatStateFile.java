@@ -0,0 +1,320 @@
+package sfedu.railway.storage;
+
+import sfedu.railway.collections.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Файл состояний мест на маршрутах с записями фиксированной длины, отображаемый в память.
+ * Каждая пара (маршрут, место) получает постоянный номер записи при первом бронировании,
+ * после чего бронирование и отмена меняют один байт состояния прямо в отображении
+ * и сбрасывают его на диск через force(), не переписывая остальной файл.
+ *
+ * С одним файлом могут работать несколько процессов: изменения выполняются под исключительной
+ * блокировкой заголовка, чтение — под разделяемой, а счетчик изменений в заголовке позволяет
+ * заметить записи других процессов.
+ *
+ * Формат файла (big-endian):
+ * <pre>
+ * заголовок: int magic, int version, int recordCount, int reserved, long modCount, long reserved
+ * запись:    byte state, byte routeIdLength, byte seatIdLength, byte reserved,
+ *            byte[62] routeId, byte[62] seatId (UTF-8, дополнены нулями)
+ * </pre>
+ */
+public class SeatStateFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x52545353; // "RTSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_COUNT_OFFSET = 8;
+    private static final int MOD_COUNT_OFFSET = 16;
+    private static final int RECORD_SIZE = 128;
+    private static final int ROUTE_ID_OFFSET = 4;
+    private static final int SEAT_ID_OFFSET = ROUTE_ID_OFFSET + 62;
+    private static final int MAX_ID_LENGTH = 62;
+    // Файл растет блоками, чтобы не переотображать его при каждой новой записи
+    private static final int GROWTH_RECORDS = 4096;
+
+    private static final byte FREE = 0;
+    private static final byte BOOKED = 1;
+
+    // Блокировка файла действует на весь процесс, поэтому экземпляры с одним путем
+    // внутри одной JVM дополнительно синхронизируются на общем мониторе
+    private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Object monitor;
+    private final IdDictionary ids;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int knownRecords;
+    private long lastModCount;
+    private long generation;
+
+    // Номера записей по маршруту: код места в словаре -> номер записи
+    private final Map<String, IntIntHashMap> slots = new HashMap<>();
+    private final Map<String, List<Integer>> routeSlots = new HashMap<>();
+
+    /**
+     * @param filePath путь к файлу состояний
+     * @param ids словарь, из которого берутся экземпляры идентификаторов, прочитанных из файла
+     */
+    public SeatStateFile(String filePath, IdDictionary ids) {
+        this.path = Paths.get(filePath).toAbsolutePath().normalize();
+        this.ids = ids;
+        this.monitor = MONITORS.computeIfAbsent(path, p -> new Object());
+    }
+
+    /**
+     * Бронирование места на маршруте. Проверка и запись выполняются под блокировкой файла
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     * @return было ли место свободно и занято этим вызовом
+     * @throws IOException
+     */
+    public boolean claim(String routeId, String seatId) throws IOException {
+        return update(routeId, seatId, FREE, BOOKED);
+    }
+
+    /**
+     * Освобождение места на маршруте
+     * @param routeId идентификатор маршрута
+     * @param seatId идентификатор места
+     * @return было ли место занято
+     * @throws IOException
+     */
+    public boolean release(String routeId, String seatId) throws IOException {
+        return update(routeId, seatId, BOOKED, FREE);
+    }
+
+    /**
+     * Занятые места маршрута, прочитанные из отображения файла
+     * @param routeId идентификатор маршрута
+     * @return идентификаторы занятых мест
+     * @throws IOException
+     */
+    public List<String> bookedSeats(String routeId) throws IOException {
+        synchronized (monitor) {
+            ensureOpen();
+            FileLock lock = channel.lock(0, HEADER_SIZE, true);
+            try {
+                refresh();
+                List<String> booked = new ArrayList<>();
+                for (int slot : routeSlots.getOrDefault(routeId, Collections.emptyList())) {
+                    int position = recordPosition(slot);
+                    if (buffer.get(position) == BOOKED) {
+                        booked.add(readId(position + SEAT_ID_OFFSET, buffer.get(position + 2)));
+                    }
+                }
+                return booked;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Номер поколения, который увеличивается, когда файл изменяет другой экземпляр или процесс.
+     * Собственные изменения экземпляра поколение не меняют
+     * @return номер поколения
+     * @throws IOException
+     */
+    public long generation() throws IOException {
+        synchronized (monitor) {
+            ensureOpen();
+            FileLock lock = channel.lock(0, HEADER_SIZE, true);
+            try {
+                refresh();
+                return generation;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (monitor) {
+            if (channel != null) {
+                channel.close();
+            }
+            channel = null;
+            buffer = null;
+            capacity = 0;
+            knownRecords = 0;
+            slots.clear();
+            routeSlots.clear();
+        }
+    }
+
+    private boolean update(String routeId, String seatId, byte expected, byte next) throws IOException {
+        synchronized (monitor) {
+            ensureOpen();
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                refresh();
+                int slot = slotOf(routeId, seatId);
+                if (slot < 0) {
+                    if (expected != FREE) {
+                        return false;
+                    }
+                    slot = append(routeId, seatId);
+                }
+                int position = recordPosition(slot);
+                if (buffer.get(position) != expected) {
+                    return false;
+                }
+                buffer.put(position, next);
+                lastModCount = buffer.getLong(MOD_COUNT_OFFSET) + 1;
+                buffer.putLong(MOD_COUNT_OFFSET, lastModCount);
+                buffer.force();
+                return true;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Добавление записи для новой пары (маршрут, место) в конец файла. Вызывается под блокировкой
+     */
+    private int append(String routeId, String seatId) throws IOException {
+        byte[] route = encodeId(routeId);
+        byte[] seat = encodeId(seatId);
+        int slot = knownRecords;
+        ensureCapacity(slot + 1);
+        int position = recordPosition(slot);
+        buffer.put(position, FREE);
+        buffer.put(position + 1, (byte) route.length);
+        buffer.put(position + 2, (byte) seat.length);
+        for (int i = 0; i < route.length; i++) {
+            buffer.put(position + ROUTE_ID_OFFSET + i, route[i]);
+        }
+        for (int i = 0; i < seat.length; i++) {
+            buffer.put(position + SEAT_ID_OFFSET + i, seat[i]);
+        }
+        buffer.putInt(RECORD_COUNT_OFFSET, slot + 1);
+        index(slot, routeId, seatId);
+        knownRecords = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Открытие файла и создание заголовка, если файл новый
+     */
+    private void ensureOpen() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = opened.lock(0, HEADER_SIZE, false);
+            try {
+                channel = opened;
+                if (opened.size() < HEADER_SIZE) {
+                    map(0);
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, VERSION);
+                    buffer.putInt(RECORD_COUNT_OFFSET, 0);
+                    buffer.putLong(MOD_COUNT_OFFSET, 0);
+                    buffer.force();
+                } else {
+                    map((int) ((opened.size() - HEADER_SIZE) / RECORD_SIZE));
+                    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                        throw new IOException("Unknown seat state file format: " + path);
+                    }
+                }
+                lastModCount = buffer.getLong(MOD_COUNT_OFFSET);
+                refresh();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel = null;
+            buffer = null;
+            opened.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Индексирование записей, добавленных другими процессами, и проверка счетчика изменений
+     */
+    private void refresh() throws IOException {
+        int recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        if (recordCount > capacity) {
+            map(recordCount);
+        }
+        for (int slot = knownRecords; slot < recordCount; slot++) {
+            int position = recordPosition(slot);
+            index(slot, readId(position + ROUTE_ID_OFFSET, buffer.get(position + 1)),
+                    readId(position + SEAT_ID_OFFSET, buffer.get(position + 2)));
+        }
+        knownRecords = Math.max(knownRecords, recordCount);
+        long modCount = buffer.getLong(MOD_COUNT_OFFSET);
+        if (modCount != lastModCount) {
+            lastModCount = modCount;
+            generation++;
+        }
+    }
+
+    private void ensureCapacity(int records) throws IOException {
+        if (records > capacity) {
+            map(records);
+        }
+    }
+
+    /**
+     * Отображение файла в память с запасом до следующего блока записей
+     */
+    private void map(int records) throws IOException {
+        int blocks = (records + GROWTH_RECORDS - 1) / GROWTH_RECORDS;
+        int mapped = Math.max(blocks, 1) * GROWTH_RECORDS;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) mapped * RECORD_SIZE);
+        capacity = mapped;
+    }
+
+    private int slotOf(String routeId, String seatId) {
+        IntIntHashMap routeSeats = slots.get(routeId);
+        return routeSeats != null ? routeSeats.get(ids.code(seatId), -1) : -1;
+    }
+
+    private void index(int slot, String routeId, String seatId) {
+        String route = ids.canonical(routeId);
+        slots.computeIfAbsent(route, id -> new IntIntHashMap()).put(ids.intern(seatId), slot);
+        routeSlots.computeIfAbsent(route, id -> new ArrayList<>()).add(slot);
+    }
+
+    private String readId(int position, byte length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return ids.canonical(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] encodeId(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Identifier is too long for seat state file: " + id);
+        }
+        return bytes;
+    }
+
+    private static int recordPosition(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
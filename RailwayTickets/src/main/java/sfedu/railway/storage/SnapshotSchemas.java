@@ -0,0 +1,18 @@
+package sfedu.railway.storage;
+
+import static sfedu.railway.storage.ColumnarSnapshot.ColumnType.*;
+
+/**
+ * Типы столбцов двоичных снимков CSV таблиц
+ */
+public class SnapshotSchemas {
+
+    // id, wagonId, number, isAvailable, priceMultiplier
+    public static final ColumnarSnapshot.ColumnType[] SEATS = {STRING, STRING, STRING, BOOLEAN, DOUBLE};
+
+    // id, departureStationId, arrivalStationId, trainId, departureTime, arrivalTime, basePrice
+    public static final ColumnarSnapshot.ColumnType[] ROUTES = {STRING, STRING, STRING, STRING, TIMESTAMP, TIMESTAMP, DOUBLE};
+
+    // id, userId, routeId, seatId, bookingDate, status, price
+    public static final ColumnarSnapshot.ColumnType[] TICKETS = {STRING, STRING, STRING, STRING, TIMESTAMP, STRING, DOUBLE};
+}
@@ -12,8 +12,11 @@ public class Constants {
     public static String insertUser = "INSERT INTO users (id, surname, name, phoneNumber, email, password) VALUES (?,?,?,?,?,?)";
     public static String readUser = "SELECT * FROM users WHERE id = ?";
     public static String readUserByEmail = "SELECT * FROM users WHERE email = ?";
+    public static String readUserPassword = "SELECT password FROM users WHERE id = ?";
     public static String updateUser = "UPDATE users SET surname = ?, name = ?, phoneNumber = ?, email = ?, password = ? WHERE id = ?";
     public static String deleteUser = "DELETE FROM users WHERE id = ?";
+    // Замена пароля новым хешем, только если пароль не изменился с момента проверки
+    public static String upgradeUserPassword = "UPDATE users SET password = ? WHERE id = ? AND password = ?";
     
     // Таблица Station
     public static String insertStation = "INSERT INTO stations (id, name, city, address) VALUES (?,?,?,?)";
@@ -32,13 +35,33 @@ public class Constants {
     public static String readRoute = "SELECT * FROM routes WHERE id = ?";
     public static String updateRoute = "UPDATE routes SET departureStationId = ?, arrivalStationId = ?, trainId = ?, departureTime = ?, arrivalTime = ?, basePrice = ? WHERE id = ?";
     public static String deleteRoute = "DELETE FROM routes WHERE id = ?";
-    public static String searchRoutes = "SELECT r.id, ds.name as departureStation, ds.city as departureCity, as.name as arrivalStation, " +
-                                       "as.city as arrivalCity, t.number as trainNumber, r.departureTime, r.arrivalTime, r.basePrice " +
+    // Количество свободных мест считается в том же запросе, отдельно для каждого маршрута:
+    // место свободно, если оно не выведено из продажи и не занято на этом маршруте
+    public static String searchRoutes = "SELECT r.id, ds.name as departureStation, ds.city as departureCity, ars.name as arrivalStation, " +
+                                       "ars.city as arrivalCity, t.number as trainNumber, r.departureTime, r.arrivalTime, r.basePrice, " +
+                                       "sc.availableSeats " +
                                        "FROM routes r " +
                                        "JOIN stations ds ON r.departureStationId = ds.id " +
-                                       "JOIN stations as ON r.arrivalStationId = as.id " +
+                                       "JOIN stations ars ON r.arrivalStationId = ars.id " +
                                        "JOIN trains t ON r.trainId = t.id " +
-                                       "WHERE ds.city LIKE ? AND as.city LIKE ? AND DATE(r.departureTime) = ?";
+                                       "CROSS JOIN LATERAL (SELECT COUNT(*) as availableSeats FROM seats s " +
+                                       "JOIN wagons w ON s.wagonId = w.id " +
+                                       "WHERE w.trainId = r.trainId AND s.isAvailable = true " +
+                                       "AND NOT EXISTS (SELECT 1 FROM route_seats rs WHERE rs.routeId = r.id " +
+                                       "AND rs.seatId = s.id AND rs.state <> 'FREE')) sc " +
+                                       "WHERE ds.city LIKE ? AND ars.city LIKE ? AND r.departureTime >= ? AND r.departureTime < ?";
+    public static String readRouteDetails = "SELECT r.id, ds.name as departureStation, ds.city as departureCity, " +
+                                           "ars.name as arrivalStation, ars.city as arrivalCity, " +
+                                           "t.number as trainNumber, r.departureTime, r.arrivalTime, r.basePrice " +
+                                           "FROM routes r " +
+                                           "JOIN stations ds ON r.departureStationId = ds.id " +
+                                           "JOIN stations ars ON r.arrivalStationId = ars.id " +
+                                           "JOIN trains t ON r.trainId = t.id " +
+                                           "WHERE r.id = ?";
+    // Индекс по времени отправления, используемый поиском маршрутов за день
+    public static String createRouteDepartureTimeIndex = "CREATE INDEX IF NOT EXISTS routes_departure_time_idx ON routes (departureTime)";
+    public static String createUserEmailIndex = "CREATE INDEX IF NOT EXISTS users_email_idx ON users (email)";
+    public static String createTicketStatusIndex = "CREATE INDEX IF NOT EXISTS tickets_status_idx ON tickets (status)";
     
     // Таблица Wagon
     public static String insertWagon = "INSERT INTO wagons (id, trainId, number, type, totalSeats) VALUES (?,?,?,?,?)";
@@ -54,6 +77,27 @@ public class Constants {
     public static String deleteSeat = "DELETE FROM seats WHERE id = ?";
     public static String getSeatsByWagon = "SELECT * FROM seats WHERE wagonId = ?";
     public static String updateSeatAvailability = "UPDATE seats SET isAvailable = ? WHERE id = ?";
+
+    // Таблица RouteSeat: состояние места на конкретном маршруте.
+    // Строка появляется при первой продаже места, отсутствие строки означает свободное место
+    public static String createRouteSeatsTable = "CREATE TABLE IF NOT EXISTS route_seats (" +
+                                                "routeId VARCHAR(36) NOT NULL, " +
+                                                "seatId VARCHAR(36) NOT NULL, " +
+                                                "state VARCHAR(16) NOT NULL DEFAULT 'FREE', " +
+                                                "version INTEGER NOT NULL DEFAULT 0, " +
+                                                "PRIMARY KEY (routeId, seatId))";
+    // Занять место можно только если оно принадлежит поезду маршрута, не выведено из продажи
+    // и свободно на маршруте: условие в ON CONFLICT ... WHERE проверяется и применяется атомарно
+    // под блокировкой строки
+    public static String claimRouteSeat = "INSERT INTO route_seats (routeId, seatId, state, version) " +
+                                         "SELECT r.id, s.id, 'BOOKED', 1 FROM seats s " +
+                                         "JOIN wagons w ON w.id = s.wagonId " +
+                                         "JOIN routes r ON r.trainId = w.trainId AND r.id = ? " +
+                                         "WHERE s.id = ? AND s.isAvailable = true " +
+                                         "ON CONFLICT (routeId, seatId) DO UPDATE SET state = 'BOOKED', version = route_seats.version + 1 " +
+                                         "WHERE route_seats.state = 'FREE'";
+    public static String releaseRouteSeat = "UPDATE route_seats SET state = 'FREE', version = version + 1 " +
+                                           "WHERE routeId = ? AND seatId = ? AND state <> 'FREE'";
     
     // Таблица Ticket
     public static String insertTicket = "INSERT INTO tickets (id, userId, routeId, seatId, bookingDate, status, price) VALUES (?,?,?,?,?,?,?)";
@@ -61,7 +105,27 @@ public class Constants {
     public static String updateTicket = "UPDATE tickets SET userId = ?, routeId = ?, seatId = ?, bookingDate = ?, status = ?, price = ? WHERE id = ?";
     public static String deleteTicket = "DELETE FROM tickets WHERE id = ?";
     public static String getUserTickets = "SELECT * FROM tickets WHERE userId = ?";
-    public static String updateTicketStatus = "UPDATE tickets SET status = ? WHERE id = ?";
+    // Статус меняется, только если текущий статус входит в список допустимых, одним условным запросом
+    public static String updateTicketStatus = "UPDATE tickets SET status = ? WHERE id = ? AND status = ANY (?) " +
+                                              "RETURNING routeId, seatId";
+    public static String getTicketsByStatus = "SELECT * FROM tickets WHERE status = ?";
+    // Количество строк, читаемых курсором за одно обращение к базе
+    public static int ticketFetchSize = 1000;
+    // История билетов пользователя вместе с маршрутом, станциями, поездом, вагоном и местом одним запросом
+    public static String getUserTicketsWithRouteDetails = "SELECT t.id, t.userId, t.routeId, t.seatId, t.bookingDate, t.status, t.price, " +
+                                                          "ds.name as departureStation, ds.city as departureCity, " +
+                                                          "ars.name as arrivalStation, ars.city as arrivalCity, " +
+                                                          "tr.number as trainNumber, r.departureTime, r.arrivalTime, r.basePrice, " +
+                                                          "w.number as wagonNumber, s.number as seatNumber " +
+                                                          "FROM tickets t " +
+                                                          "JOIN routes r ON t.routeId = r.id " +
+                                                          "JOIN stations ds ON r.departureStationId = ds.id " +
+                                                          "JOIN stations ars ON r.arrivalStationId = ars.id " +
+                                                          "JOIN trains tr ON r.trainId = tr.id " +
+                                                          "LEFT JOIN seats s ON t.seatId = s.id " +
+                                                          "LEFT JOIN wagons w ON s.wagonId = w.id " +
+                                                          "WHERE t.userId = ? " +
+                                                          "ORDER BY t.bookingDate";
     
     // Таблица Transaction
     public static String insertTransaction = "INSERT INTO transactions (id, ticketId, date, amount, paymentMethod) VALUES (?,?,?,?,?)";
@@ -69,6 +133,26 @@ public class Constants {
     public static String updateTransaction = "UPDATE transactions SET ticketId = ?, date = ?, amount = ?, paymentMethod = ? WHERE id = ?";
     public static String deleteTransaction = "DELETE FROM transactions WHERE id = ?";
     
+    // Бронирование с оплатой одним запросом: место занимается, билет создается сразу оплаченным
+    // и к нему добавляется транзакция. Если место уже занято, ни одна строка не вставляется
+    public static String bookAndPay = "WITH claimed AS (" +
+                                     "INSERT INTO route_seats (routeId, seatId, state, version) " +
+                                     "SELECT r.id, s.id, 'BOOKED', 1 FROM seats s " +
+                                     "JOIN wagons w ON w.id = s.wagonId " +
+                                     "JOIN routes r ON r.trainId = w.trainId AND r.id = ? " +
+                                     "WHERE s.id = ? AND s.isAvailable = true " +
+                                     "ON CONFLICT (routeId, seatId) DO UPDATE SET state = 'BOOKED', version = route_seats.version + 1 " +
+                                     "WHERE route_seats.state = 'FREE' " +
+                                     "RETURNING routeId, seatId), " +
+                                     "ticket AS (" +
+                                     "INSERT INTO tickets (id, userId, routeId, seatId, bookingDate, status, price) " +
+                                     "SELECT ?, ?, c.routeId, c.seatId, ?, ?, ? FROM claimed c " +
+                                     "RETURNING id) " +
+                                     "INSERT INTO transactions (id, ticketId, date, amount, paymentMethod) " +
+                                     "SELECT ?, t.id, ?, ?, ? FROM ticket t";
+    // Количество попыток бронирования при конфликте сериализации или взаимной блокировке
+    public static int bookingMaxAttempts = 3;
+    
     /**
      * Пути к CSV файлам
      */
@@ -80,7 +164,73 @@ public class Constants {
     public static String csvSeatFilePath = "src/main/resources/csvFiles/seats.csv";
     public static String csvTicketFilePath = "src/main/resources/csvFiles/tickets.csv";
     public static String csvTransactionFilePath = "src/main/resources/csvFiles/transactions.csv";
+    public static String csvSeatStateFilePath = "src/main/resources/csvFiles/route_seats.dat";
+    // Журнал изменений хранится рядом с CSV файлом с этим суффиксом
+    public static String csvLogSuffix = ".log";
+    // Двоичный колоночный снимок хранится рядом с CSV файлом с этим суффиксом
+    public static String csvSnapshotSuffix = ".snapshot";
+    // Файл межпроцессной блокировки хранится рядом с CSV файлом с этим суффиксом
+    public static String csvLockSuffix = ".lock";
+    public static long csvCompactionIntervalSeconds = 60;
+    
+    /**
+     * Кеш маршрутов и деталей маршрутов
+     */
+    public static int routeCacheMaxSize = 1000;
+    public static long routeCacheTtlMillis = 60_000;
     
+    /**
+     * Хранение паролей и вход пользователей
+     */
+    // Количество итераций PBKDF2: чем больше, тем дороже перебор паролей и каждая полная проверка
+    public static int passwordHashIterations = 120_000;
+    public static int passwordSaltBytes = 16;
+    // Успешные проверки пароля запоминаются, чтобы повторный вход не пересчитывал хеш
+    public static int loginCacheMaxSize = 10_000;
+    public static long loginCacheTtlMillis = 300_000;
+    // После стольких неудачных попыток вход по email блокируется до конца окна
+    public static int loginMaxFailures = 5;
+    public static long loginFailureWindowMillis = 60_000;
+    
+    /**
+     * Серверный режим
+     */
+    public static int serverPort = 8080;
+    // Запросы обрабатываются ограниченным пулом потоков, лишние запросы ждут в очереди
+    public static int serverThreads = 64;
+    public static int serverQueueSize = 10_000;
+    public static long sessionTtlMillis = 30 * 60_000;
+
+    /**
+     * Обработка платежей
+     */
+    // Потоки только отправляют запросы в шлюз и записывают результат, ожидание ответа их не занимает
+    public static int paymentThreads = 4;
+    public static int paymentQueueSize = 10_000;
+    // Запрос без ответа шлюза дольше этого времени считается неудачной попыткой
+    public static long paymentTimeoutMillis = 10_000;
+    public static int paymentMaxAttempts = 3;
+    // Пауза перед повтором удваивается с каждой попыткой
+    public static long paymentRetryDelayMillis = 500;
+    // Задержка ответа локальной заглушки платежного шлюза
+    public static long paymentStubDelayMillis = 1500;
+
+    /**
+     * Срок брони
+     */
+    // Неоплаченный билет отменяется автоматически по истечении этого времени с момента бронирования
+    public static long ticketHoldMillis = 15 * 60_000;
+    // Шаг колеса таймеров: точность срабатывания и период проверки истекших броней
+    public static long holdWheelTickMillis = 1000;
+    /**
+     * Метрики
+     */
+    public static String metricsObjectName = "sfedu.railway:type=Metrics";
+    // Период записи текстового отчета о метриках, 0 отключает отчет
+    public static long metricsDumpIntervalMillis = 60_000;
+    // Файл отчета заменяется целиком при каждой записи
+    public static String metricsDumpFilePath = "src/main/logs/metrics.txt";
+
     /**
      * MongoDB Collections
      */
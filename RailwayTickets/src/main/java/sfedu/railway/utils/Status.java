@@ -3,5 +3,22 @@ package sfedu.railway.utils;
 public enum Status {
     BOOKED,
     PAID,
-    CANCELED
+    CANCELED;
+
+    /**
+     * Проверка допустимости смены статуса билета: оплатить можно только забронированный билет,
+     * отменить - забронированный или оплаченный, отмененный билет больше не меняется
+     * @param next новый статус
+     * @return разрешен ли переход
+     */
+    public boolean canChangeTo(Status next) {
+        switch (this) {
+            case BOOKED:
+                return next == PAID || next == CANCELED;
+            case PAID:
+                return next == CANCELED;
+            default:
+                return false;
+        }
+    }
 }
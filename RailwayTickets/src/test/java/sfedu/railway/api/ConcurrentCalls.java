@@ -0,0 +1,44 @@
+package sfedu.railway.api;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Одновременный запуск одного вызова из нескольких потоков для проверки гонок
+ */
+final class ConcurrentCalls {
+
+    private ConcurrentCalls() {
+    }
+
+    /**
+     * Запуск вызова в нескольких потоках, стартующих одновременно
+     * @param threads количество потоков
+     * @param call вызов
+     * @return количество вызовов, вернувших true
+     * @throws Exception если вызов завершился исключением
+     */
+    static int countSuccesses(int threads, Callable<Boolean> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return call.call();
+                }));
+            }
+            start.countDown();
+            int successes = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) {
+                    successes++;
+                }
+            }
+            return successes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package sfedu.railway.api;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Constants;
+import sfedu.railway.utils.Status;
+
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataProviderCsvTest {
+
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, String> originalPaths = new HashMap<>();
+    private DataProviderCsv provider;
+    private Route route;
+    private Seat seat;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        redirect("csvUserFilePath", "users.csv");
+        redirect("csvStationFilePath", "stations.csv");
+        redirect("csvTrainFilePath", "trains.csv");
+        redirect("csvRouteFilePath", "routes.csv");
+        redirect("csvWagonFilePath", "wagons.csv");
+        redirect("csvSeatFilePath", "seats.csv");
+        redirect("csvTicketFilePath", "tickets.csv");
+        redirect("csvTransactionFilePath", "transactions.csv");
+        redirect("csvSeatStateFilePath", "route_seats.dat");
+
+        Station departure = new Station("Главный", "Ростов-на-Дону", "Привокзальная, 1");
+        Station arrival = new Station("Казанский", "Москва", "Комсомольская, 2");
+        Train train = new Train("001А", "Скорый", 1);
+        Wagon wagon = new Wagon(train.getId(), "1", "ECONOMY", 1);
+        seat = new Seat(wagon.getId(), "1", 1.0);
+        DataProviderCsv.writeToCsv(List.of(
+                new String[]{departure.getId(), departure.getName(), departure.getCity(), departure.getAddress()},
+                new String[]{arrival.getId(), arrival.getName(), arrival.getCity(), arrival.getAddress()}),
+                Constants.csvStationFilePath);
+        DataProviderCsv.writeToCsv(List.<String[]>of(new String[]{train.getId(), train.getNumber(), train.getType(), "1"}),
+                Constants.csvTrainFilePath);
+        DataProviderCsv.writeToCsv(List.<String[]>of(new String[]{wagon.getId(), train.getId(), "1", "ECONOMY", "1"}),
+                Constants.csvWagonFilePath);
+        DataProviderCsv.writeToCsv(List.<String[]>of(new String[]{seat.getId(), wagon.getId(), "1", "true", "1.0"}),
+                Constants.csvSeatFilePath);
+
+        provider = new DataProviderCsv();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        route = new Route(departure.getId(), arrival.getId(), train.getId(),
+                format.parse("2026-11-01 08:00:00"), format.parse("2026-11-01 20:00:00"), 1000);
+        assertTrue(provider.createRoute(route));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        provider.close();
+        for (Map.Entry<String, String> entry : originalPaths.entrySet()) {
+            Constants.class.getField(entry.getKey()).set(null, entry.getValue());
+        }
+    }
+
+    @Test
+    void concurrentCancelsReleaseSeatOnce() throws Exception {
+        Ticket first = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(first));
+
+        int canceled = ConcurrentCalls.countSuccesses(THREADS,
+                () -> provider.updateTicketStatus(first.getId(), Status.CANCELED));
+        assertEquals(1, canceled);
+
+        // Место продано повторно: поздняя отмена первого билета не должна его освободить
+        Ticket resold = new Ticket("user-2", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(resold));
+        assertFalse(provider.updateTicketStatus(first.getId(), Status.CANCELED));
+        assertFalse(provider.createTicket(new Ticket("user-3", route.getId(), seat.getId(), 1000)));
+        assertTrue(provider.getAvailableSeats(route.getId()).isEmpty());
+    }
+
+    @Test
+    void canceledTicketCannotBePaid() throws Exception {
+        Ticket ticket = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(ticket));
+        assertTrue(provider.updateTicketStatus(ticket.getId(), Status.CANCELED));
+
+        assertFalse(provider.updateTicketStatus(ticket.getId(), Status.PAID));
+        assertEquals(Status.CANCELED, provider.readTicket(ticket.getId()).getStatus());
+    }
+
+    @Test
+    void bookedSeatIsStillReadable() throws Exception {
+        assertTrue(provider.createTicket(new Ticket("user-1", route.getId(), seat.getId(), 1000)));
+
+        Seat read = provider.readSeat(seat.getId());
+        assertEquals(seat.getWagonId(), read.getWagonId());
+        assertEquals(1.0, read.getPriceMultiplier());
+        assertNull(provider.readSeat("missing"));
+    }
+
+    @Test
+    void expiryDoesNotCancelPaidTicket() throws Exception {
+        Ticket ticket = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(ticket));
+        assertTrue(provider.createTransaction(new Transaction(ticket.getId(), 1000, "card")));
+
+        assertFalse(provider.updateTicketStatus(ticket.getId(), Status.BOOKED, Status.CANCELED));
+        assertEquals(Status.PAID, provider.readTicket(ticket.getId()).getStatus());
+        assertTrue(provider.getAvailableSeats(route.getId()).isEmpty());
+    }
+
+    @Test
+    void expiredTicketCannotBePaid() throws Exception {
+        Ticket ticket = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(ticket));
+        assertTrue(provider.updateTicketStatus(ticket.getId(), Status.BOOKED, Status.CANCELED));
+
+        assertFalse(provider.createTransaction(new Transaction(ticket.getId(), 1000, "card")));
+        assertEquals(Status.CANCELED, provider.readTicket(ticket.getId()).getStatus());
+        assertEquals(1, provider.getAvailableSeats(route.getId()).size());
+    }
+
+    @Test
+    void legacyPasswordIsUpgradedWithoutLosingRowChanges() throws Exception {
+        DataProviderCsv.writeToCsv(List.<String[]>of(
+                new String[]{"user-1", "Иванов", "Иван", "+70000000000", "ivan@mail.ru", "secret"}),
+                Constants.csvUserFilePath);
+
+        User user = provider.authenticateUser("ivan@mail.ru", "secret");
+        assertNotEquals("secret", user.getPassword());
+        assertEquals("+70000000000", user.getPhoneNumber());
+
+        user.setPhoneNumber("+71111111111");
+        assertTrue(provider.updateUser(user));
+        User again = provider.authenticateUser("ivan@mail.ru", "secret");
+        assertEquals("+71111111111", again.getPhoneNumber());
+        assertEquals(user.getPassword(), again.getPassword());
+    }
+
+    private void redirect(String field, String fileName) throws Exception {
+        originalPaths.put(field, (String) Constants.class.getField(field).get(null));
+        Constants.class.getField(field).set(null, directory.resolve(fileName).toString());
+    }
+}
@@ -0,0 +1,168 @@
+package sfedu.railway.api;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.*;
+import sfedu.railway.models.*;
+import sfedu.railway.utils.Status;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataProviderPSQLTest {
+
+    private static final int THREADS = 8;
+
+    private static EmbeddedPostgres postgres;
+    private static DataProviderPSQL provider;
+    private static Route route;
+    private static Seat seat;
+    private static Seat foreignSeat;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+        String schema;
+        try (InputStream input = DataProviderPSQLTest.class.getClassLoader().getResourceAsStream("schema.sql")) {
+            schema = new String(input.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^--.*$", "");
+        }
+        Station departure = new Station("Главный", "Ростов-на-Дону", "Привокзальная, 1");
+        Station arrival = new Station("Казанский", "Москва", "Комсомольская, 2");
+        Train train = new Train("001А", "Скорый", 1);
+        Wagon wagon = new Wagon(train.getId(), "1", "ECONOMY", 1);
+        seat = new Seat(wagon.getId(), "1", 1.0);
+        // Место поезда, не обслуживающего маршрут
+        Train foreignTrain = new Train("002А", "Скорый", 1);
+        Wagon foreignWagon = new Wagon(foreignTrain.getId(), "1", "ECONOMY", 1);
+        foreignSeat = new Seat(foreignWagon.getId(), "1", 1.0);
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : schema.split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+            statement.execute("INSERT INTO stations VALUES ('" + departure.getId() + "', 'Главный', 'Ростов-на-Дону', '')");
+            statement.execute("INSERT INTO stations VALUES ('" + arrival.getId() + "', 'Казанский', 'Москва', '')");
+            statement.execute("INSERT INTO trains VALUES ('" + train.getId() + "', '001А', 'Скорый', 1)");
+            statement.execute("INSERT INTO wagons VALUES ('" + wagon.getId() + "', '" + train.getId() + "', '1', 'ECONOMY', 1)");
+            statement.execute("INSERT INTO seats VALUES ('" + seat.getId() + "', '" + wagon.getId() + "', '1', true, 1.0)");
+            statement.execute("INSERT INTO trains VALUES ('" + foreignTrain.getId() + "', '002А', 'Скорый', 1)");
+            statement.execute("INSERT INTO wagons VALUES ('" + foreignWagon.getId() + "', '" + foreignTrain.getId()
+                    + "', '1', 'ECONOMY', 1)");
+            statement.execute("INSERT INTO seats VALUES ('" + foreignSeat.getId() + "', '" + foreignWagon.getId()
+                    + "', '1', true, 1.0)");
+        }
+        System.setProperty("db.url", postgres.getJdbcUrl("postgres", "postgres"));
+        System.setProperty("db.user", "postgres");
+        System.setProperty("db.password", "postgres");
+        provider = new DataProviderPSQL();
+        provider.initDataSource();
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        route = new Route(departure.getId(), arrival.getId(), train.getId(),
+                format.parse("2026-11-01 08:00:00"), format.parse("2026-11-01 20:00:00"), 1000);
+        assertTrue(provider.createRoute(route));
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        DataProviderPSQL.closeDataSource();
+        System.clearProperty("db.url");
+        System.clearProperty("db.user");
+        System.clearProperty("db.password");
+        postgres.close();
+    }
+
+    @AfterEach
+    void clearTickets() throws Exception {
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM transactions");
+            statement.execute("DELETE FROM tickets");
+            statement.execute("DELETE FROM route_seats");
+        }
+    }
+
+    @Test
+    void concurrentCancelsReleaseSeatOnce() throws Exception {
+        Ticket first = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(first));
+
+        int canceled = ConcurrentCalls.countSuccesses(THREADS,
+                () -> provider.updateTicketStatus(first.getId(), Status.CANCELED));
+        assertEquals(1, canceled);
+
+        // Место продано повторно: поздняя отмена первого билета не должна его освободить
+        Ticket resold = new Ticket("user-2", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(resold));
+        assertFalse(provider.updateTicketStatus(first.getId(), Status.CANCELED));
+        assertFalse(provider.createTicket(new Ticket("user-3", route.getId(), seat.getId(), 1000)));
+        assertTrue(provider.getAvailableSeats(route.getId()).isEmpty());
+    }
+
+    @Test
+    void canceledTicketCannotBePaid() throws Exception {
+        Ticket ticket = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(ticket));
+        assertTrue(provider.updateTicketStatus(ticket.getId(), Status.CANCELED));
+
+        assertFalse(provider.updateTicketStatus(ticket.getId(), Status.PAID));
+        assertEquals(Status.CANCELED, provider.readTicket(ticket.getId()).getStatus());
+    }
+
+    @Test
+    void bookedSeatIsStillReadable() throws Exception {
+        assertTrue(provider.createTicket(new Ticket("user-1", route.getId(), seat.getId(), 1000)));
+
+        Seat read = provider.readSeat(seat.getId());
+        assertEquals(seat.getWagonId(), read.getWagonId());
+        assertEquals(1.0, read.getPriceMultiplier());
+        assertNull(provider.readSeat("missing"));
+    }
+
+    @Test
+    void seatOfAnotherTrainCannotBeBooked() throws Exception {
+        assertFalse(provider.createTicket(new Ticket("user-1", route.getId(), foreignSeat.getId(), 1000)));
+        Ticket paid = new Ticket("user-1", route.getId(), foreignSeat.getId(), 1000);
+        assertFalse(provider.bookAndPay(paid, new Transaction(paid.getId(), 1000, "card")));
+
+        assertEquals(1, provider.getAvailableSeats(route.getId()).size());
+        assertEquals(0, countTransactions());
+    }
+
+    @Test
+    void expiryDoesNotCancelPaidTicket() throws Exception {
+        Ticket ticket = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(ticket));
+        assertTrue(provider.createTransaction(new Transaction(ticket.getId(), 1000, "card")));
+
+        assertFalse(provider.updateTicketStatus(ticket.getId(), Status.BOOKED, Status.CANCELED));
+        assertEquals(Status.PAID, provider.readTicket(ticket.getId()).getStatus());
+        assertTrue(provider.getAvailableSeats(route.getId()).isEmpty());
+    }
+
+    @Test
+    void expiredTicketCannotBePaid() throws Exception {
+        Ticket ticket = new Ticket("user-1", route.getId(), seat.getId(), 1000);
+        assertTrue(provider.createTicket(ticket));
+        assertTrue(provider.updateTicketStatus(ticket.getId(), Status.BOOKED, Status.CANCELED));
+
+        assertFalse(provider.createTransaction(new Transaction(ticket.getId(), 1000, "card")));
+        assertEquals(Status.CANCELED, provider.readTicket(ticket.getId()).getStatus());
+        assertEquals(1, provider.getAvailableSeats(route.getId()).size());
+        assertEquals(0, countTransactions());
+    }
+
+    private static int countTransactions() throws Exception {
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM transactions")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
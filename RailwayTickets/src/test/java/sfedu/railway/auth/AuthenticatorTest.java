@@ -0,0 +1,33 @@
+package sfedu.railway.auth;
+
+import org.junit.jupiter.api.Test;
+import sfedu.railway.cache.LruCache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthenticatorTest {
+
+    private final Authenticator authenticator = new Authenticator(new PasswordHasher(1000, 16),
+            new LoginRateLimiter(5, 60_000, 100), new LruCache<>(100, 60_000));
+
+    @Test
+    void passwordInHashFormatIsHashedToo() {
+        String typed = "pbkdf2$2000000000$c2FsdA==$aGFzaA==";
+        String stored = authenticator.toStored(typed, null);
+
+        assertNotEquals(typed, stored);
+        assertFalse(authenticator.needsRehash(stored));
+        assertTrue(authenticator.verify("user@mail.ru", typed, stored));
+    }
+
+    @Test
+    void unchangedStoredValueIsKept() {
+        String stored = authenticator.toStored("secret", null);
+
+        assertSame(stored, authenticator.toStored(stored, stored));
+        String changed = authenticator.toStored("other", stored);
+        assertNotEquals(stored, changed);
+        assertTrue(authenticator.verify("user@mail.ru", "other", changed));
+        assertNull(authenticator.toStored(null, stored));
+    }
+}
@@ -0,0 +1,43 @@
+package sfedu.railway.auth;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(1000, 16);
+
+    @Test
+    void hashVerifiesOnlyOriginalPassword() {
+        String stored = hasher.hash("secret");
+
+        assertTrue(PasswordHasher.isHashed(stored));
+        assertNotEquals(stored, hasher.hash("secret"));
+        assertTrue(hasher.verify("secret", stored));
+        assertFalse(hasher.verify("Secret", stored));
+        assertFalse(hasher.verify(null, stored));
+        assertFalse(hasher.verify("secret", null));
+    }
+
+    @Test
+    void legacyPlainPasswordIsComparedAsIs() {
+        assertTrue(hasher.verify("secret", "secret"));
+        assertFalse(hasher.verify("other", "secret"));
+    }
+
+    @Test
+    void malformedHashDoesNotVerify() {
+        assertFalse(hasher.verify("secret", "pbkdf2$1000$not-base64"));
+        assertFalse(hasher.verify("secret", "pbkdf2$x$c2FsdA==$aGFzaA=="));
+    }
+
+    @Test
+    void needsRehashForLegacyOrWeakerHashes() {
+        assertTrue(hasher.needsRehash("secret"));
+        assertTrue(hasher.needsRehash(new PasswordHasher(500, 16).hash("secret")));
+        assertTrue(hasher.needsRehash("pbkdf2$x$c2FsdA==$aGFzaA=="));
+        assertFalse(hasher.needsRehash(hasher.hash("secret")));
+        assertFalse(hasher.needsRehash(new PasswordHasher(2000, 16).hash("secret")));
+    }
+}
@@ -0,0 +1,67 @@
+package sfedu.railway.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+
+    private static final long LONG_TTL = 60_000;
+
+    @Test
+    void returnsStoredValueAndCountsHitsAndMisses() {
+        LruCache<String, Integer> cache = new LruCache<>(10, LONG_TTL);
+        assertNull(cache.get("a"));
+        cache.put("a", 1);
+
+        assertEquals(1, cache.get("a"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void expiredEntryIsRemoved() {
+        LruCache<String, Integer> cache = new LruCache<>(10, 0);
+        cache.put("a", 1);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        LruCache<String, Integer> cache = new LruCache<>(2, LONG_TTL);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        // Чтение делает "a" недавно использованной, поэтому вытесняется "b"
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    void invalidationDuringLoadCancelsPut() {
+        LruCache<String, Integer> cache = new LruCache<>(10, LONG_TTL);
+        long stamp = cache.stamp("a");
+        cache.invalidate("a");
+
+        assertFalse(cache.putIfUnchanged("a", 1, stamp));
+        assertNull(cache.get("a"));
+        assertTrue(cache.putIfUnchanged("a", 2, cache.stamp("a")));
+        assertEquals(2, cache.get("a"));
+    }
+
+    @Test
+    void invalidateAllCancelsPendingPuts() {
+        LruCache<String, Integer> cache = new LruCache<>(10, LONG_TTL);
+        long stamp = cache.stamp("a");
+        cache.invalidateAll();
+
+        assertFalse(cache.putIfUnchanged("a", 1, stamp));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,53 @@
+package sfedu.railway.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdDictionaryTest {
+
+    @Test
+    void sameIdGetsSameCodeAndInstance() {
+        IdDictionary dictionary = new IdDictionary();
+        String first = new String("route-1");
+        String second = new String("route-1");
+
+        assertEquals(dictionary.intern(first), dictionary.intern(second));
+        assertSame(first, dictionary.canonical(second));
+        assertEquals(-1, dictionary.code("unknown"));
+        assertNull(dictionary.canonical(null));
+    }
+
+    @Test
+    void concurrentInternAssignsUniqueDenseCodes() throws Exception {
+        IdDictionary dictionary = new IdDictionary();
+        int threads = 8;
+        int ids = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    int[] codes = new int[ids];
+                    for (int i = 0; i < ids; i++) {
+                        codes[i] = dictionary.intern("id-" + i);
+                    }
+                    return codes;
+                }));
+            }
+            int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(ids, dictionary.size());
+        for (int i = 0; i < ids; i++) {
+            assertEquals("id-" + i, dictionary.id(dictionary.code("id-" + i)));
+        }
+    }
+}
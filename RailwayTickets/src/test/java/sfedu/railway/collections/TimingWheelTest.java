@@ -0,0 +1,62 @@
+package sfedu.railway.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final long NOW = 1_000_000;
+
+    @Test
+    void timersFireOnTheirTickAndNotBefore() {
+        TimingWheel wheel = new TimingWheel(TICK, NOW);
+        wheel.add("a", NOW + 25);
+        wheel.add("b", NOW + 30);
+        wheel.add("c", NOW + 31);
+
+        assertEquals(Collections.emptyList(), wheel.advance(NOW + 20));
+        assertEquals(Arrays.asList("a", "b"), wheel.advance(NOW + 30));
+        assertEquals(Collections.singletonList("c"), wheel.advance(NOW + 40));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void upperLevelTimersCascadeDown() {
+        TimingWheel wheel = new TimingWheel(TICK, NOW);
+        // Второй уровень: больше 256 шагов, третий: больше 65536 шагов
+        wheel.add("level1", NOW + 5_000);
+        wheel.add("level2", NOW + 3_000_000);
+        assertEquals(2, wheel.size());
+
+        assertEquals(Collections.emptyList(), wheel.advance(NOW + 4_990));
+        assertEquals(Collections.singletonList("level1"), wheel.advance(NOW + 5_000));
+        assertEquals(Collections.emptyList(), wheel.advance(NOW + 2_999_990));
+        assertEquals(Collections.singletonList("level2"), wheel.advance(NOW + 3_000_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(TICK, NOW);
+        wheel.add("late", NOW - 1_000);
+        wheel.add("now", NOW);
+
+        assertEquals(Arrays.asList("late", "now"), wheel.advance(NOW));
+        assertEquals(Collections.emptyList(), wheel.advance(NOW));
+    }
+
+    @Test
+    void deadlineBeyondWheelRangeDoesNotFireEarly() {
+        TimingWheel wheel = new TimingWheel(TICK, NOW);
+        long range = (1L << 32) * TICK;
+        wheel.add("far", NOW + range + 1_000);
+        wheel.add("near", NOW + 100);
+
+        assertEquals(Collections.singletonList("near"), wheel.advance(NOW + 100_000));
+        assertEquals(1, wheel.size());
+    }
+}
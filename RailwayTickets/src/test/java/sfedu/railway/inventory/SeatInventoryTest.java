@@ -0,0 +1,112 @@
+package sfedu.railway.inventory;
+
+import org.junit.jupiter.api.Test;
+import sfedu.railway.collections.IdDictionary;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeatInventoryTest {
+
+    private final IdDictionary ids = new IdDictionary();
+
+    private TrainSeatLayout layout() {
+        return new TrainSeatLayout.Builder(ids).wagon().seat("s1", true).seat("s2", true).build();
+    }
+
+    @Test
+    void concurrentCallersLoadRouteMapOnce() throws Exception {
+        AtomicInteger layoutLoads = new AtomicInteger();
+        AtomicInteger routeLoads = new AtomicInteger();
+        SeatInventory inventory = new SeatInventory(new SeatInventory.Loader() {
+            @Override
+            public TrainSeatLayout loadLayout(String trainId) {
+                layoutLoads.incrementAndGet();
+                return layout();
+            }
+
+            @Override
+            public Collection<String> loadTakenSeats(String routeId) {
+                routeLoads.incrementAndGet();
+                return Collections.singletonList("s1");
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RouteSeatMap>> maps = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                maps.add(executor.submit(() -> inventory.routeMap("route", "train")));
+            }
+            RouteSeatMap first = maps.get(0).get();
+            for (Future<RouteSeatMap> map : maps) {
+                assertSame(first, map.get());
+            }
+            assertEquals(1, first.freeCount());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, layoutLoads.get());
+        assertEquals(1, routeLoads.get());
+    }
+
+    @Test
+    void claimDuringLoadIsNotLost() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch claimed = new CountDownLatch(1);
+        SeatInventory inventory = new SeatInventory(new SeatInventory.Loader() {
+            @Override
+            public TrainSeatLayout loadLayout(String trainId) {
+                return layout();
+            }
+
+            @Override
+            public Collection<String> loadTakenSeats(String routeId) throws Exception {
+                loading.countDown();
+                // Место занимается, пока загрузка уже прочитала состояния мест
+                claimed.await(200, TimeUnit.MILLISECONDS);
+                return Collections.emptyList();
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<RouteSeatMap> map = executor.submit(() -> inventory.routeMap("route", "train"));
+            loading.await();
+            Thread claim = new Thread(() -> {
+                inventory.seatClaimed("route", "s2");
+                claimed.countDown();
+            });
+            claim.start();
+            claim.join(5000);
+            assertFalse(map.get().isFree("s2"));
+            assertEquals(1, map.get().freeCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void loaderErrorIsRethrownAndNotCached() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        SeatInventory inventory = new SeatInventory(new SeatInventory.Loader() {
+            @Override
+            public TrainSeatLayout loadLayout(String trainId) throws Exception {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IOException("disk error");
+                }
+                return layout();
+            }
+
+            @Override
+            public Collection<String> loadTakenSeats(String routeId) {
+                return Collections.emptyList();
+            }
+        });
+        IOException error = assertThrows(IOException.class, () -> inventory.routeMap("route", "train"));
+        assertEquals("disk error", error.getMessage());
+        assertEquals(2, inventory.routeMap("route", "train").freeCount());
+    }
+}
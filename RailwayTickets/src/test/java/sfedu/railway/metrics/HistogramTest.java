@@ -0,0 +1,70 @@
+package sfedu.railway.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0.0, histogram.mean());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10, histogram.count());
+        assertEquals(5.5, histogram.mean());
+        assertEquals(10, histogram.max());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(9, histogram.percentile(90));
+        assertEquals(10, histogram.percentile(100));
+        assertEquals(1, histogram.percentile(0));
+    }
+
+    @Test
+    void percentilesStayWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(100_000 * percentile / 100.0);
+            long estimate = histogram.percentile(percentile);
+            // Оценка берется по верхней границе корзины: не меньше точного значения и не больше чем на 12.5%
+            assertTrue(estimate >= exact, percentile + ": " + estimate + " < " + exact);
+            assertTrue(estimate <= exact * 1.125, percentile + ": " + estimate + " > " + exact);
+        }
+        assertEquals(100_000, histogram.percentile(100));
+    }
+
+    @Test
+    void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(50));
+    }
+
+    @Test
+    void largestValueFitsLastBucket() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(Long.MAX_VALUE, histogram.max());
+        assertEquals(Long.MAX_VALUE, histogram.percentile(50));
+    }
+}
@@ -0,0 +1,108 @@
+package sfedu.railway.service;
+
+import org.junit.jupiter.api.Test;
+import sfedu.railway.api.ForwardingDataProvider;
+import sfedu.railway.models.Ticket;
+import sfedu.railway.utils.Status;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldExpirySchedulerTest {
+
+    private static final long TICK = 10;
+
+    /**
+     * Провайдер с одним билетом, отмена которого первые несколько раз завершается ошибкой
+     */
+    private static final class FailingProvider extends ForwardingDataProvider {
+        final Ticket ticket = new Ticket("user-1", "route-1", "seat-1", 1000);
+        final AtomicInteger attempts = new AtomicInteger();
+        private final int failures;
+        private final boolean throwOnFailure;
+
+        FailingProvider(int failures, boolean throwOnFailure) {
+            super(null);
+            this.failures = failures;
+            this.throwOnFailure = throwOnFailure;
+            ticket.setBookingDate(new Date(System.currentTimeMillis() - 1_000));
+        }
+
+        @Override
+        public boolean updateTicketStatus(String ticketId, Status expected, Status status) throws Exception {
+            if (attempts.incrementAndGet() <= failures) {
+                if (throwOnFailure) {
+                    throw new SQLException("Connection is not available");
+                }
+                // Провайдер сообщает об ошибке хранилища результатом false
+                return false;
+            }
+            if (ticket.getStatus() != expected) {
+                return false;
+            }
+            ticket.setStatus(status);
+            return true;
+        }
+
+        @Override
+        public Ticket readTicket(String id) {
+            return ticket;
+        }
+    }
+
+    @Test
+    void holdIsRetriedAfterProviderError() throws Exception {
+        FailingProvider provider = new FailingProvider(1, true);
+        HoldExpiryScheduler scheduler = new HoldExpiryScheduler(provider, 0, TICK, id -> false);
+        scheduler.hold(provider.ticket);
+
+        assertEquals(0, scheduler.expireDue());
+        assertEquals(Status.BOOKED, provider.ticket.getStatus());
+        assertEquals(1, expireWithin(scheduler, 1_000));
+        assertEquals(Status.CANCELED, provider.ticket.getStatus());
+        assertEquals(2, provider.attempts.get());
+        scheduler.close();
+    }
+
+    @Test
+    void holdIsRetriedWhenTicketStaysBooked() throws Exception {
+        FailingProvider provider = new FailingProvider(2, false);
+        HoldExpiryScheduler scheduler = new HoldExpiryScheduler(provider, 0, TICK, id -> false);
+        scheduler.hold(provider.ticket);
+
+        assertEquals(0, scheduler.expireDue());
+        assertEquals(1, expireWithin(scheduler, 1_000));
+        assertEquals(Status.CANCELED, provider.ticket.getStatus());
+        assertEquals(3, provider.attempts.get());
+        scheduler.close();
+    }
+
+    @Test
+    void paidTicketIsNotRetried() throws Exception {
+        FailingProvider provider = new FailingProvider(0, false);
+        provider.ticket.setStatus(Status.PAID);
+        HoldExpiryScheduler scheduler = new HoldExpiryScheduler(provider, 0, TICK, id -> false);
+        scheduler.hold(provider.ticket);
+
+        assertEquals(0, scheduler.expireDue());
+        Thread.sleep(TICK * 5);
+        assertEquals(0, scheduler.expireDue());
+        assertEquals(1, provider.attempts.get());
+        scheduler.close();
+    }
+
+    private static int expireWithin(HoldExpiryScheduler scheduler, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < deadline) {
+            int canceled = scheduler.expireDue();
+            if (canceled > 0) {
+                return canceled;
+            }
+            Thread.sleep(TICK);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,13 @@
+-- Схема основных таблиц для локального экземпляра PostgreSQL в тестах.
+-- Служебные таблицы и индексы создает DataProviderPSQL.initSchema
+CREATE TABLE users (id VARCHAR(64) PRIMARY KEY, surname VARCHAR, name VARCHAR, phoneNumber VARCHAR, email VARCHAR UNIQUE, password VARCHAR);
+CREATE TABLE stations (id VARCHAR(64) PRIMARY KEY, name VARCHAR, city VARCHAR, address VARCHAR);
+CREATE TABLE trains (id VARCHAR(64) PRIMARY KEY, number VARCHAR, type VARCHAR, totalWagons INTEGER);
+CREATE TABLE routes (id VARCHAR(64) PRIMARY KEY, departureStationId VARCHAR(64) REFERENCES stations, arrivalStationId VARCHAR(64) REFERENCES stations, trainId VARCHAR(64) REFERENCES trains, departureTime TIMESTAMP, arrivalTime TIMESTAMP, basePrice DOUBLE PRECISION);
+CREATE TABLE wagons (id VARCHAR(64) PRIMARY KEY, trainId VARCHAR(64) REFERENCES trains, number VARCHAR, type VARCHAR, totalSeats INTEGER);
+CREATE TABLE seats (id VARCHAR(64) PRIMARY KEY, wagonId VARCHAR(64) REFERENCES wagons, number VARCHAR, isAvailable BOOLEAN, priceMultiplier DOUBLE PRECISION);
+CREATE TABLE tickets (id VARCHAR(64) PRIMARY KEY, userId VARCHAR(64), routeId VARCHAR(64) REFERENCES routes, seatId VARCHAR(64) REFERENCES seats, bookingDate TIMESTAMP, status VARCHAR(16), price DOUBLE PRECISION);
+CREATE TABLE transactions (id VARCHAR(64) PRIMARY KEY, ticketId VARCHAR(64) REFERENCES tickets, date TIMESTAMP, amount DOUBLE PRECISION, paymentMethod VARCHAR);
+CREATE INDEX seats_wagon_idx ON seats (wagonId);
+CREATE INDEX wagons_train_idx ON wagons (trainId);
+CREATE INDEX tickets_user_idx ON tickets (userId);